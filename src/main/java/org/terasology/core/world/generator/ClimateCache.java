@@ -0,0 +1,244 @@
+// Copyright 2020 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.core.world.generator;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Persists the climate and humidity maps of a {@link ClimateSimulator} in a binary file, so they are computed only once
+ * per heightmap. The file starts with a header that holds a hash of the heightmap and of the simulation parameters.
+ * If it matches, the maps are memory mapped straight from the file without copying; otherwise they are recomputed
+ * and the file is rewritten.
+ * <p>
+ * Each map is mapped on its own. A single mapping holds at most 2 GiB, so larger maps are read into the heap instead.
+ * Maps loaded from the file are read-only.
+ */
+public class ClimateCache {
+
+    /**
+     * Changes whenever the layout of the file or the computed climate changes. Version 2: the latitude follows the map
+     * size instead of a fixed 512 rows.
+     */
+    static final int FORMAT_VERSION = 2;
+
+    private static final Logger logger = LoggerFactory.getLogger(ClimateCache.class);
+
+    private static final int MAGIC = 0x4D494C43; // "CLIM" in little-endian
+    private static final int HASH_BYTES = 16;
+    private static final int HEADER_BYTES = 32;
+
+    /**
+     * The largest map that is memory mapped, limited by the size of a {@link MappedByteBuffer}
+     */
+    private static final long MAX_MAPPED_BYTES = Integer.MAX_VALUE;
+
+    private static final int READ_CHUNK_BYTES = 1 << 20;
+
+    private final Path file;
+    private final long maxMappedBytes;
+
+    /**
+     * @param file the cache file; it does not need to exist
+     */
+    public ClimateCache(Path file) {
+        this(file, MAX_MAPPED_BYTES);
+    }
+
+    /**
+     * @param directory the directory that holds the cache files of all heightmaps
+     * @param heightmap the heightmap the climate is computed from
+     * @return the cache of that heightmap, in a file named after the {@link #hash(FloatGrid) hash} of the heightmap
+     */
+    public static ClimateCache inDirectory(Path directory, FloatGrid heightmap) {
+        return new ClimateCache(directory.resolve(hash(heightmap) + ".bin"));
+    }
+
+    /**
+     * @param maxMappedBytes maps larger than this are read into the heap instead of being mapped
+     */
+    ClimateCache(Path file, long maxMappedBytes) {
+        this.file = file;
+        this.maxMappedBytes = Math.min(maxMappedBytes, MAX_MAPPED_BYTES);
+    }
+
+    /**
+     * @return the cache file
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * @param heightmap the square heightmap
+     * @param pool the pool to compute the climate with if it is not cached, or null to compute it serially
+     * @return the cached climate if it was computed from the same heightmap and parameters, a new one otherwise
+     */
+    public ClimateSimulator getOrCompute(FloatGrid heightmap, ForkJoinPool pool) {
+        byte[] hash = hash(heightmap).asBytes();
+
+        ClimateSimulator cached = load(heightmap, hash);
+        if (cached != null) {
+            return cached;
+        }
+
+        ClimateSimulator simulator = new ClimateSimulator(heightmap, ClimateSimulatorData.Propagation.PRIORITY_QUEUE, pool);
+        logger.info("Computed climate for '{}': {}", file, simulator.getMetrics());
+        store(simulator, hash);
+        return simulator;
+    }
+
+    private ClimateSimulator load(FloatGrid heightmap, byte[] hash) {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+
+        int size = heightmap.getWidth();
+        long gridBytes = heightmap.sizeInBytes();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() != HEADER_BYTES + 2 * gridBytes) {
+                logger.info("Climate cache '{}' has the wrong size - recomputing", file);
+                return null;
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(header, 0);
+            header.flip();
+            byte[] storedHash = new byte[HASH_BYTES];
+            int magic = header.getInt();
+            int version = header.getInt();
+            int storedSize = header.getInt();
+            header.getInt();
+            header.get(storedHash);
+            if (magic != MAGIC || version != FORMAT_VERSION || storedSize != size || !Arrays.equals(hash, storedHash)) {
+                logger.info("Climate cache '{}' is outdated - recomputing", file);
+                return null;
+            }
+
+            FloatGrid climate = readGrid(channel, HEADER_BYTES, size);
+            FloatGrid humidity = readGrid(channel, HEADER_BYTES + gridBytes, size);
+            logger.info("Loaded climate from '{}'", file);
+            return new ClimateSimulator(heightmap, climate, humidity);
+        } catch (IOException e) {
+            logger.warn("Could not read climate cache '{}' - recomputing", file, e);
+            return null;
+        }
+    }
+
+    private void store(ClimateSimulator simulator, byte[] hash) {
+        FloatGrid climate = simulator.getClimate();
+        FloatGrid humidity = simulator.getHumidity();
+        int size = climate.getWidth();
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC);
+        header.putInt(FORMAT_VERSION);
+        header.putInt(size);
+        header.putInt(0);
+        header.put(hash);
+        header.rewind();
+
+        Path temp = null;
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                channel.write(header);
+                writeGrid(channel, climate);
+                writeGrid(channel, humidity);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            temp = null;
+        } catch (IOException e) {
+            logger.warn("Could not write climate cache '{}'", file, e);
+        } finally {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException e) {
+                    logger.warn("Could not delete '{}'", temp, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Maps a square grid from the file, or reads it if it is too large to be mapped.
+     */
+    private FloatGrid readGrid(FileChannel channel, long offset, int size) throws IOException {
+        long gridBytes = (long) size * size * Float.BYTES;
+        if (gridBytes <= maxMappedBytes) {
+            // the mapping stays valid after the channel is closed
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, offset, gridBytes);
+            return FloatGrid.wrap(data.order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer(), size, size);
+        }
+
+        FloatGrid grid = FloatGrid.onHeap(size, size);
+        ByteBuffer bytes = ByteBuffer.allocate(READ_CHUNK_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        int index = 0;
+        long position = offset;
+        while (index < grid.size()) {
+            bytes.clear();
+            bytes.limit((int) Math.min(bytes.capacity(), (long) (grid.size() - index) * Float.BYTES));
+            while (bytes.hasRemaining()) {
+                if (channel.read(bytes, position + bytes.position()) < 0) {
+                    throw new EOFException("Climate cache ended early: " + file);
+                }
+            }
+            position += bytes.limit();
+            bytes.flip();
+            while (bytes.hasRemaining()) {
+                grid.set(index++, bytes.getFloat());
+            }
+        }
+        return grid;
+    }
+
+    private static void writeGrid(FileChannel channel, FloatGrid grid) throws IOException {
+        float[] row = new float[grid.getWidth()];
+        ByteBuffer bytes = ByteBuffer.allocate(row.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        for (int y = 0; y < grid.getHeight(); y++) {
+            grid.getRow(y, row);
+            bytes.clear();
+            bytes.asFloatBuffer().put(row);
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        }
+    }
+
+    /**
+     * @return a hash over the heightmap content, its size and everything else that changes the computed climate
+     */
+    static HashCode hash(FloatGrid heightmap) {
+        Hasher hasher = Hashing.murmur3_128().newHasher();
+        hasher.putInt(FORMAT_VERSION);
+        hasher.putInt(heightmap.getWidth());
+        hasher.putInt(heightmap.getHeight());
+        hasher.putFloat(ClimateSimulator.POLES_HEIGHT_INFLUENCE);
+        hasher.putFloat(ClimateSimulator.EQUATOR_HEIGHT_INFLUENCE);
+        hasher.putFloat(ClimateSimulator.WATER_HEIGHT_INFLUENCE);
+        for (int i = 0; i < heightmap.size(); i++) {
+            hasher.putFloat(heightmap.get(i));
+        }
+        return hasher.hash();
+    }
+}
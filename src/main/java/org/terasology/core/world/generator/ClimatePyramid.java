@@ -0,0 +1,212 @@
+// Copyright 2020 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.core.world.generator;
+
+/**
+ * Solves climate distance fields coarse to fine. Each level halves the heightmap, solves it, and upsamples the result;
+ * the finer level then only recomputes the cells where the upsampled distances are not good enough.
+ * See {@link ClimateSimulatorData#distanceFields(float, ClimateSimulatorData.DistanceSpec...)}.
+ */
+final class ClimatePyramid {
+
+    /**
+     * The smallest level that is solved directly.
+     */
+    static final int MIN_SIZE = 64;
+
+    /**
+     * Marked cells are grown by this many cells, so that the recomputed regions have some room around the problem.
+     */
+    private static final int REFINE_MARGIN = 2;
+
+    /**
+     * How often the residuals are checked again after recomputing.
+     */
+    private static final int MAX_PASSES = 2;
+
+    /**
+     * A height step that changes the distance by more than this is treated as steep.
+     */
+    private static final float STEEP_STEP = 0.5f;
+
+    /**
+     * The propagation only assigns whole steps, so an interpolated value may be off by this much without being wrong.
+     */
+    private static final float ROUNDING = 1.41421f;
+
+    private ClimatePyramid() {
+        // no instances
+    }
+
+    /**
+     * Fills <code>dist</code> with the raw, not normalized distances.
+     */
+    static void solve(ClimateSimulatorData data, float[] dist, ClimateSimulatorData.DistanceSpec[] specs, float maxError) {
+        int size = data.getSize();
+        int channels = specs.length;
+        float[] heightInfluence = data.initDist(dist, specs);
+        if (size % 2 != 0 || size / 2 < MIN_SIZE) {
+            data.propagate(ClimateSimulatorData.Propagation.PRIORITY_QUEUE, dist, heightInfluence, size, size);
+            return;
+        }
+
+        // one coarse step spans two cells, and so does the height difference across it
+        ClimateSimulatorData coarse = new ClimateSimulatorData(downsample(data.getHeightmap()), data.getPool());
+        ClimateSimulatorData.DistanceSpec[] coarseSpecs = new ClimateSimulatorData.DistanceSpec[channels];
+        for (int channel = 0; channel < channels; channel++) {
+            coarseSpecs[channel] = new ClimateSimulatorData.DistanceSpec(specs[channel].getSource(), specs[channel].getHeightInfluence() / 2);
+        }
+        float[] coarseDist = new float[size * size / 4 * channels];
+        solve(coarse, coarseDist, coarseSpecs, maxError);
+
+        upsample(coarseDist, size / 2, channels, dist);
+        refine(data, dist, heightInfluence, maxError);
+    }
+
+    /**
+     * @return the heightmap at half the resolution, each cell being the mean of a 2x2 block
+     */
+    static FloatGrid downsample(FloatGrid heightmap) {
+        int width = heightmap.getWidth() / 2;
+        int height = heightmap.getHeight() / 2;
+        FloatGrid result = FloatGrid.onHeap(width, height);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                float sum = heightmap.get(2 * x, 2 * y) + heightmap.get(2 * x + 1, 2 * y)
+                        + heightmap.get(2 * x, 2 * y + 1) + heightmap.get(2 * x + 1, 2 * y + 1);
+                result.set(x, y, sum * 0.25f);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Interpolates the coarse distances bilinearly, wrapping around the map edges, and doubles them to account for the
+     * finer cells. Sources, which are 0, are kept.
+     */
+    private static void upsample(float[] coarseDist, int coarseSize, int channels, float[] dist) {
+        int size = coarseSize * 2;
+        for (int y = 0; y < size; y++) {
+            // the centre of the fine cell, in coarse cell coordinates
+            double cy = (y - 0.5) / 2;
+            int y0 = (int) Math.floor(cy);
+            float ty = (float) (cy - y0);
+            int row0 = Math.floorMod(y0, coarseSize) * coarseSize;
+            int row1 = Math.floorMod(y0 + 1, coarseSize) * coarseSize;
+            for (int x = 0; x < size; x++) {
+                double cx = (x - 0.5) / 2;
+                int x0 = (int) Math.floor(cx);
+                float tx = (float) (cx - x0);
+                int col0 = Math.floorMod(x0, coarseSize);
+                int col1 = Math.floorMod(x0 + 1, coarseSize);
+                for (int channel = 0; channel < channels; channel++) {
+                    int cell = (y * size + x) * channels + channel;
+                    if (dist[cell] == 0) {
+                        continue;
+                    }
+                    float top = lerp(coarseDist[(row0 + col0) * channels + channel], coarseDist[(row0 + col1) * channels + channel], tx);
+                    float bottom = lerp(coarseDist[(row1 + col0) * channels + channel], coarseDist[(row1 + col1) * channels + channel], tx);
+                    dist[cell] = 2 * lerp(top, bottom, ty);
+                }
+            }
+        }
+    }
+
+    private static float lerp(float a, float b, float t) {
+        return a + (b - a) * t;
+    }
+
+    /**
+     * Recomputes the cells that the upsampling cannot be trusted with: next to a source, across a steep step, or where
+     * the value differs from what the propagation would assign by more than the error bound.
+     */
+    private static void refine(ClimateSimulatorData data, float[] dist, float[] heightInfluence, float maxError) {
+        int size = data.getSize();
+        int channels = heightInfluence.length;
+        float unreached = size;
+        float[] tolerance = new float[channels];
+        for (int channel = 0; channel < channels; channel++) {
+            float max = 0;
+            for (int i = channel; i < dist.length; i += channels) {
+                max = Math.max(max, dist[i]);
+            }
+            tolerance[channel] = maxError * max + ROUNDING;
+        }
+
+        int[] neighbours = new int[ClimateSimulatorData.NEIGHBOURS];
+        float[] heightDiffs = new float[ClimateSimulatorData.NEIGHBOURS];
+        boolean[] marked = new boolean[dist.length];
+        for (int pass = 0; pass < MAX_PASSES; pass++) {
+            boolean any = false;
+            for (int index = 0; index < size * size; index++) {
+                data.loadNeighbours(index, neighbours, heightDiffs);
+                for (int channel = 0; channel < channels; channel++) {
+                    int cell = index * channels + channel;
+                    if (dist[cell] == 0) {
+                        continue;
+                    }
+                    boolean mark = pass == 0 && isFeature(dist, channel, channels, neighbours, heightDiffs, heightInfluence[channel]);
+                    if (!mark) {
+                        float expected = data.expectedValue(dist, channel, channels, neighbours, heightDiffs, heightInfluence[channel], unreached, size);
+                        mark = Math.abs(dist[cell] - expected) > tolerance[channel];
+                    }
+                    marked[cell] = mark;
+                    any |= mark;
+                }
+            }
+            if (!any) {
+                return;
+            }
+
+            dilate(marked, size, channels, REFINE_MARGIN);
+            for (int cell = 0; cell < dist.length; cell++) {
+                if (marked[cell] && dist[cell] != 0) {
+                    dist[cell] = unreached;
+                }
+            }
+            data.propagate(ClimateSimulatorData.Propagation.PRIORITY_QUEUE, dist, heightInfluence, unreached, size);
+        }
+    }
+
+    /**
+     * @return true if the cell touches a source or a steep step
+     */
+    private static boolean isFeature(float[] dist, int channel, int channels, int[] neighbours, float[] heightDiffs, float heightInfluence) {
+        for (int i = 0; i < neighbours.length; i++) {
+            if (dist[neighbours[i] * channels + channel] == 0 || Math.abs(heightDiffs[i] * heightInfluence) > STEEP_STEP) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Grows the marked cells of every channel by <code>radius</code> in x and y, wrapping around the map edges.
+     */
+    private static void dilate(boolean[] marked, int size, int channels, int radius) {
+        boolean[] rows = new boolean[marked.length];
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                for (int channel = 0; channel < channels; channel++) {
+                    boolean mark = false;
+                    for (int dx = -radius; dx <= radius && !mark; dx++) {
+                        mark = marked[(y * size + Math.floorMod(x + dx, size)) * channels + channel];
+                    }
+                    rows[(y * size + x) * channels + channel] = mark;
+                }
+            }
+        }
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                for (int channel = 0; channel < channels; channel++) {
+                    boolean mark = false;
+                    for (int dy = -radius; dy <= radius && !mark; dy++) {
+                        mark = rows[(Math.floorMod(y + dy, size) * size + x) * channels + channel];
+                    }
+                    marked[(y * size + x) * channels + channel] = mark;
+                }
+            }
+        }
+    }
+}
@@ -16,56 +16,148 @@
 
 package org.terasology.core.world.generator;
 
+import java.util.concurrent.ForkJoinPool;
+
 /**
  * Climate simulation based on weighted distances
  *
  */
 public class ClimateSimulator {
-    private float[][] climate;
-    private float[][] humidity;
+    static final float POLES_HEIGHT_INFLUENCE = 10;
+    static final float EQUATOR_HEIGHT_INFLUENCE = 10;
+    static final float WATER_HEIGHT_INFLUENCE = 5;
+
+    private FloatGrid climate;
+    private FloatGrid humidity;
     private ClimateSimulatorData climateDistanceData;
+    private ForkJoinPool pool;
+
+    ClimateSimulator(FloatGrid hm) {
+        this(hm, ClimateSimulatorData.Propagation.PRIORITY_QUEUE, null);
+    }
 
-    ClimateSimulator(float[][] hm) {
+    /**
+     * @param hm the square heightmap
+     * @param propagation how the distance fields are propagated
+     * @param pool if not null, the map is processed in row bands, and with {@link ClimateSimulatorData.Propagation#PRIORITY_QUEUE}
+     *         the cells of each distance round are processed in parallel. The result is identical to the serial computation.
+     */
+    ClimateSimulator(FloatGrid hm, ClimateSimulatorData.Propagation propagation, ForkJoinPool pool) {
 
-        climateDistanceData = new ClimateSimulatorData(hm, hm.length);
+        climateDistanceData = new ClimateSimulatorData(hm, pool);
+        this.pool = pool;
+
+        long start = System.nanoTime();
+        DistanceFields fields = climateDistanceData.distanceFields(propagation, distanceSpecs());
+        FloatGrid t1 = fields.getField(0);
+        FloatGrid t2 = fields.getField(1);
+        humidity = fields.getField(2);
+        climateDistanceData.getMetrics().recordPhase("distances", start);
+
+        combine(t1, t2);
+    }
+
+    /**
+     * Computes the distance fields with a resolution pyramid, see
+     * {@link ClimateSimulatorData#distanceFields(float, ClimateSimulatorData.DistanceSpec...)}.
+     *
+     * @param hm the square heightmap
+     * @param maxError the error bound for the distance fields, relative to their largest value
+     * @param pool if not null, the map is processed in row bands
+     */
+    ClimateSimulator(FloatGrid hm, float maxError, ForkJoinPool pool) {
+        climateDistanceData = new ClimateSimulatorData(hm, pool);
+        this.pool = pool;
+
+        long start = System.nanoTime();
+        DistanceFields fields = climateDistanceData.distanceFields(maxError, distanceSpecs());
+        humidity = fields.getField(2);
+        climateDistanceData.getMetrics().recordPhase("distances", start);
+
+        combine(fields.getField(0), fields.getField(1));
+    }
+
+    private static ClimateSimulatorData.DistanceSpec[] distanceSpecs() {
+        return new ClimateSimulatorData.DistanceSpec[] {
+            new ClimateSimulatorData.DistanceSpec(ClimateSimulatorData.DistanceSource.POLES, POLES_HEIGHT_INFLUENCE),
+            new ClimateSimulatorData.DistanceSpec(ClimateSimulatorData.DistanceSource.EQUATOR, EQUATOR_HEIGHT_INFLUENCE),
+            new ClimateSimulatorData.DistanceSpec(ClimateSimulatorData.DistanceSource.WATER, WATER_HEIGHT_INFLUENCE)
+        };
+    }
+
+    private void combine(FloatGrid t1, FloatGrid t2) {
+        ClimateSimulatorMetrics metrics = climateDistanceData.getMetrics();
 
         //Ready the Climate Map
-        climate = new float[climateDistanceData.getSize()][climateDistanceData.getSize()];
-        float[][] t1 = climateDistanceData.distanceFrom("poles", 10);
-        float[][] t2 = climateDistanceData.distanceFrom("equator", 10);
-        for (int width = 0; width < climateDistanceData.getSize(); width++) {
-            for (int height = 0; height < climateDistanceData.getSize(); height++) {
-                climate[width][height] = t1[width][height] + t2[width][height] - 1;
+        long combineStart = System.nanoTime();
+        int size = climateDistanceData.getSize();
+        climate = FloatGrid.onHeap(size, size);
+        RowBands.run(pool, size, (from, to) -> {
+            for (int index = from * size; index < to * size; index++) {
+                climate.set(index, t1.get(index) + t2.get(index) - 1);
             }
-        }
-        overlayHeight(0, 0);
+        });
+        metrics.recordPhase("combine", combineStart);
 
-        //Ready the HumidityMap
-        humidity = climateDistanceData.distanceFrom("water", 5);
+        long overlayStart = System.nanoTime();
+        overlayHeight(0, 0);
+        metrics.recordPhase("overlay", overlayStart);
+    }
 
+    /**
+     * Restores previously computed maps, see {@link ClimateCache}.
+     */
+    ClimateSimulator(FloatGrid hm, FloatGrid climate, FloatGrid humidity) {
+        this.climateDistanceData = new ClimateSimulatorData(hm);
+        this.climate = climate;
+        this.humidity = humidity;
     }
 
     private void overlayHeight(int strength, int locationInfluence) {
-        for (int width = 0; width < climateDistanceData.getSize(); width++) {
-            for (int height = 0; height < climateDistanceData.getSize(); height++) {
-                float distToEq = (float) (0.5f - Math.abs(((height / 512.) * 2) - 1)) * 2;
-                float heightFactor = climateDistanceData.getHeightmap()[height][width] - 1;
-
-                if (heightFactor < 0) {  // sea
-                    climate[height][width] = distToEq * 0.4f;
-                } else {                // land
-                    climate[height][width] = ((100 - strength) * climate[height][width]
-                            + strength * ((distToEq * locationInfluence + (100 - locationInfluence) * 0.5f) * 0.01f - heightFactor * 0.05f)) * 0.01f;
+        FloatGrid heightmap = climateDistanceData.getHeightmap();
+        int size = climateDistanceData.getSize();
+        RowBands.run(pool, size, (from, to) -> {
+            for (int y = from; y < to; y++) {
+                float distToEq = distanceToEquator(y / (double) size);
+                for (int x = 0; x < size; x++) {
+                    int index = heightmap.index(x, y);
+                    climate.set(index, overlayHeight(climate.get(index), heightmap.get(index), distToEq, strength, locationInfluence));
                 }
             }
+        });
+    }
+
+    /**
+     * @param latitude the position between two poles in [0..1)
+     * @return -1 at the poles, 1 at the equator
+     */
+    static float distanceToEquator(double latitude) {
+        return (float) (0.5f - Math.abs((latitude * 2) - 1)) * 2;
+    }
+
+    static float overlayHeight(float climate, float height, float distToEq, int strength, int locationInfluence) {
+        float heightFactor = height - 1;
+
+        if (heightFactor < 0) {  // sea
+            return distToEq * 0.4f;
+        } else {                // land
+            return ((100 - strength) * climate
+                    + strength * ((distToEq * locationInfluence + (100 - locationInfluence) * 0.5f) * 0.01f - heightFactor * 0.05f)) * 0.01f;
         }
     }
 
-    public float[][] getClimate() {
+    public FloatGrid getClimate() {
         return climate;
     }
 
-    public float[][] getHumidity() {
+    public FloatGrid getHumidity() {
         return humidity;
     }
+
+    /**
+     * @return the work done to compute the maps; empty if they were restored from a cache
+     */
+    public ClimateSimulatorMetrics getMetrics() {
+        return climateDistanceData.getMetrics();
+    }
 }
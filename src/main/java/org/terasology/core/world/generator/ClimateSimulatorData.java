@@ -16,23 +16,111 @@
 
 package org.terasology.core.world.generator;
 
+import com.google.common.base.Preconditions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+
 /**
  * Encapsulates climate distance calculations for the climate simulator
  */
 public class ClimateSimulatorData {
     private static final Logger logger = LoggerFactory.getLogger(ClimateSimulator.class);
-    private float[][] heightmap;
+
+    /**
+     * The number of neighbours of a cell. The first four share an edge with it, the others a corner.
+     */
+    static final int NEIGHBOURS = 8;
+
+    private FloatGrid heightmap;
     private int size;
+    private ForkJoinPool pool;
+    private float steepestSlope = -1;
+    private final ClimateSimulatorMetrics metrics = new ClimateSimulatorMetrics();
+
+    /**
+     * How the distance fields are spread across the map.
+     */
+    public enum Propagation {
+        /**
+         * Re-scans the full map once per unit of distance, i.e. O(size&sup3;). Kept as the reference implementation.
+         */
+        SWEEP,
+        /**
+         * Only revisits cells whose neighbours changed, ordered by a priority queue. Produces the same result as {@link #SWEEP}.
+         */
+        PRIORITY_QUEUE
+    }
+
+    /**
+     * The cells a distance field starts from.
+     */
+    public enum DistanceSource {
+        /**
+         * All cells below a height of 1
+         */
+        WATER,
+        /**
+         * The top row of the map
+         */
+        POLES,
+        /**
+         * The middle row of the map. The field is inverted, so it is 1 at the equator.
+         */
+        EQUATOR
+    }
+
+    /**
+     * A distance field to compute: where it starts and how strongly height differences stretch the distance.
+     */
+    public static final class DistanceSpec {
+        private final DistanceSource source;
+        private final float heightInfluence;
+
+        public DistanceSpec(DistanceSource source, float heightInfluence) {
+            this.source = source;
+            this.heightInfluence = heightInfluence;
+        }
+
+        public DistanceSource getSource() {
+            return source;
+        }
+
+        public float getHeightInfluence() {
+            return heightInfluence;
+        }
 
-    public ClimateSimulatorData(float[][] heightmap, int size) {
+        @Override
+        public String toString() {
+            return source + "@" + heightInfluence;
+        }
+    }
+
+    /**
+     * @param heightmap a square heightmap
+     */
+    public ClimateSimulatorData(FloatGrid heightmap) {
+        this(heightmap, null);
+    }
+
+    /**
+     * @param heightmap a square heightmap
+     * @param pool if not null, {@link Propagation#PRIORITY_QUEUE} processes the cells of each round in parallel, see
+     *         {@link RoundParallelPropagation}, and {@link Propagation#SWEEP} splits the map into row bands that are processed
+     *         in parallel if no step of the map is steep
+     */
+    public ClimateSimulatorData(FloatGrid heightmap, ForkJoinPool pool) {
+        Preconditions.checkArgument(heightmap.getWidth() == heightmap.getHeight(), "Heightmap must be square");
         this.heightmap = heightmap;
-        this.size = size;
+        this.size = heightmap.getWidth();
+        this.pool = pool;
     }
 
-    public float[][] getHeightmap() {
+    public FloatGrid getHeightmap() {
         return heightmap;
     }
 
@@ -40,122 +128,560 @@ public class ClimateSimulatorData {
         return size;
     }
 
-    public float[][] initDist(String fromWhat) {
+    ForkJoinPool getPool() {
+        return pool;
+    }
 
-        float[][] distArr = new float[size][size];
-        switch(fromWhat) {
-        case "water":
-            distanceFromWater(distArr);
-            break;
-        case "poles":
-            distanceFromPoles(distArr);
-            break;
-        case "equator":
-            distanceFromEquator(distArr);
-            break;
-        }
+    /**
+     * @return the work done by all distance calculations on this map so far
+     */
+    public ClimateSimulatorMetrics getMetrics() {
+        return metrics;
+    }
 
+    public FloatGrid initDist(String fromWhat) {
+        FloatGrid distArr = FloatGrid.onHeap(size, size);
+        float[] values = new float[size * size];
+        initDist(toSource(fromWhat), values, 0, 1);
+        for (int i = 0; i < values.length; i++) {
+            distArr.set(i, values[i]);
+        }
         return distArr;
     }
 
-    private void distanceFromWater(float[][] distArr) {
-        for (int width = 0; width < size; width++) {
-            for (int height = 0; height < size; height++) {
-                float heightFactor = heightmap[height][width] - 1;
-
-                if (heightFactor < 0) {  // sea
-                    distArr[height][width] = 0;
-                } else {  // land
-                    distArr[height][width] = size;
-                }
+    private void initDist(DistanceSource source, float[] dist, int channel, int channels) {
+        for (int index = 0; index < size * size; index++) {
+            boolean isSource;
+            switch (source) {
+                case WATER:
+                    isSource = heightmap.get(index) - 1 < 0;
+                    break;
+                case POLES:
+                    isSource = index / size == 0;  // topOfTheMap
+                    break;
+                case EQUATOR:
+                    isSource = index / size == size / 2;
+                    break;
+                default:
+                    throw new UnsupportedOperationException("Not supported: " + source);
             }
+            dist[index * channels + channel] = isSource ? 0 : size;
         }
     }
 
-    private void distanceFromPoles(float[][] distArr) {
-        for (int width = 0; width < size; width++) {
-            for (int height = 0; height < size; height++) {
+    public FloatGrid distanceFrom(String fromWhat, float heightInfluence) {
+        return distanceFrom(fromWhat, heightInfluence, Propagation.PRIORITY_QUEUE);
+    }
 
-                if (height == 0) {  // topOfTheMap
-                    distArr[height][width] = 0;
-                } else {
-                    distArr[height][width] = size;
+    public FloatGrid distanceFrom(String fromWhat, float heightInfluence, Propagation propagation) {
+        return distanceFields(propagation, new DistanceSpec(toSource(fromWhat), heightInfluence)).getField(0);
+    }
+
+    private static DistanceSource toSource(String fromWhat) {
+        return DistanceSource.valueOf(fromWhat.toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * Computes several distance fields in a single traversal of the map. The heights around a cell are read once
+     * and feed every field. Each field is identical to computing it on its own.
+     *
+     * @param propagation how the distances are spread
+     * @param specs the fields to compute
+     * @return the normalized fields, one channel per spec in the same order
+     */
+    public DistanceFields distanceFields(Propagation propagation, DistanceSpec... specs) {
+        DistanceFields fields = new DistanceFields(size, specs.length);
+        float[] dist = fields.values();
+        float[] heightInfluence = initDist(dist, specs);
+
+        logger.info("Starting distance calculation: {}", Arrays.toString(specs));
+        long propagationStart = System.nanoTime();
+        propagate(propagation, dist, heightInfluence, size, size);
+        metrics.recordPhase("propagate", propagationStart);
+        logger.info("Finished distance calculation in {}ms: {}", (System.nanoTime() - propagationStart) / 1_000_000, metrics);
+
+        normalize(dist, specs);
+        return fields;
+    }
+
+    /**
+     * Approximates {@link #distanceFields(Propagation, DistanceSpec...)} with a resolution pyramid. The fields are solved
+     * on a downsampled heightmap and upsampled; only cells near sources, across steep steps, or where the upsampled value
+     * disagrees with its neighbours are recomputed at the finer level. Maps smaller than twice
+     * {@link ClimatePyramid#MIN_SIZE} are solved exactly.
+     *
+     * @param maxError the largest disagreement of a cell with its neighbours, relative to the largest distance,
+     *         that is accepted without recomputing the cell
+     * @param specs the fields to compute
+     * @return the normalized fields, one channel per spec in the same order
+     */
+    public DistanceFields distanceFields(float maxError, DistanceSpec... specs) {
+        Preconditions.checkArgument(maxError >= 0, "The error bound must not be negative");
+        DistanceFields fields = new DistanceFields(size, specs.length);
+        float[] dist = fields.values();
+
+        logger.info("Starting approximate distance calculation: {}", Arrays.toString(specs));
+        long start = System.nanoTime();
+        ClimatePyramid.solve(this, dist, specs, maxError);
+        metrics.recordPhase("pyramid", start);
+        logger.info("Finished approximate distance calculation in {}ms: {}", (System.nanoTime() - start) / 1_000_000, metrics);
+
+        normalize(dist, specs);
+        return fields;
+    }
+
+    /**
+     * Sets the sources of every field to 0 and all other cells to the map size.
+     *
+     * @return the height influence of each field
+     */
+    float[] initDist(float[] dist, DistanceSpec[] specs) {
+        long start = System.nanoTime();
+        int channels = specs.length;
+        float[] heightInfluence = new float[channels];
+        for (int channel = 0; channel < channels; channel++) {
+            initDist(specs[channel].getSource(), dist, channel, channels);
+            heightInfluence[channel] = specs[channel].getHeightInfluence();
+        }
+        metrics.recordPhase("init", start);
+        return heightInfluence;
+    }
+
+    private void normalize(float[] dist, DistanceSpec[] specs) {
+        long normalizeStart = System.nanoTime();
+        int channels = specs.length;
+        for (int channel = 0; channel < channels; channel++) {
+            //normalize Array
+            float max = 0;
+            for (int i = channel; i < dist.length; i += channels) {
+                max = dist[i] > max ? dist[i] : max;
+            }
+            for (int i = channel; i < dist.length; i += channels) {
+                dist[i] /= max;
+            }
+
+            //invert if necessary
+            if (specs[channel].getSource() == DistanceSource.EQUATOR) {
+                for (int i = channel; i < dist.length; i += channels) {
+                    dist[i] = 1 - dist[i];
                 }
             }
         }
+        metrics.recordPhase("normalize", normalizeStart);
     }
 
-    private void distanceFromEquator(float[][] distArr) {
-        for (int width = 0; width < size; width++) {
-            for (int height = 0; height < size; height++) {
-
-                if (height == size / 2) {  // topOfTheMap
-                    distArr[height][width] = 0;
+    /**
+     * Spreads pre-initialized, interleaved distance fields. Cells that hold <code>unreached</code> are filled in,
+     * all other cells keep their value and act as sources.
+     *
+     * @param dist the interleaved fields, one channel per entry of <code>heightInfluence</code>
+     * @param unreached the marker for cells without a distance yet
+     * @param rounds the number of distance units to propagate; cells further away keep <code>unreached</code>
+     */
+    void propagate(Propagation propagation, float[] dist, float[] heightInfluence, float unreached, int rounds) {
+        switch (propagation) {
+            case SWEEP:
+                if (pool != null && isCascadeFree(heightInfluence)) {
+                    propagateSweepBanded(dist, heightInfluence, unreached, rounds);
                 } else {
-                    distArr[height][width] = size;
+                    propagateSweep(dist, heightInfluence, unreached, rounds);
+                }
+                break;
+            case PRIORITY_QUEUE:
+                if (pool != null) {
+                    new RoundParallelPropagation(this, dist, heightInfluence, unreached, rounds).run();
+                } else {
+                    propagateQueued(dist, heightInfluence, unreached, rounds);
+                }
+                break;
+            default:
+                throw new UnsupportedOperationException("Not supported: " + propagation);
+        }
+    }
+
+    /**
+     * Re-scans the whole map once per unit of distance, updating cells in place. Stops as soon as every cell is reached,
+     * and skips ahead over rounds in which no cell can change.
+     */
+    private void propagateSweep(float[] dist, float[] heightInfluence, float unreached, int rounds) {
+        int channels = heightInfluence.length;
+        int[] neighbours = new int[NEIGHBOURS];
+        float[] heightDiffs = new float[NEIGHBOURS];
+        for (int round = 0; round < rounds; round++) {
+            int visited = 0;
+            int updated = 0;
+            int stillOpen = 0;
+            for (int index = 0; index < size * size; index++) {
+                if (isOpen(dist, index, channels, unreached)) {
+                    visited++;
+                    loadNeighbours(index, neighbours, heightDiffs);
+                    boolean open = false;
+                    for (int channel = 0; channel < channels; channel++) {
+                        int cell = index * channels + channel;
+                        if (dist[cell] == unreached) { //Block could update
+                            float value = valueInRound(dist, channel, channels, neighbours, heightDiffs, heightInfluence[channel], round);
+                            if (!Float.isNaN(value)) {
+                                dist[cell] = value;
+                                updated++;
+                            } else {
+                                open = true;
+                            }
+                        }
+                    }
+                    if (open) {
+                        stillOpen++;
+                    }
                 }
             }
+            round = endOfSweep(dist, heightInfluence, unreached, round, rounds, visited, updated, stillOpen);
         }
     }
 
-    public float[][] distanceFrom(String fromWhat, float heightInfluence) {
-
-        float[][] distArr = initDist(fromWhat);
-        float currentDistance = 0;
-
-        logger.info("Starting distance calculation: {}", fromWhat);
-        while (currentDistance < size) {
-            for (int width = 0; width < size; width++) {
-                for (int height = 0; height < size; height++) {
-                    float currHeight = heightmap[width][height];
-                    if (distArr[width][height] == size) { //Block could update
-                        int posW = (width + 1) % size;
-                        int posH = (height + 1) % size;
-                        int negW = ((width - 1) + size) % size;
-                        int negH = (height - 1 + size) % size;
-
-                        if (distArr[posW][height] + (heightmap[posW][height] - currHeight) * heightInfluence <= currentDistance
-                                || distArr[width][posH] + (heightmap[width][posH] - currHeight) * heightInfluence <= currentDistance
-                                || distArr[negW][height] + (heightmap[negW][height] - currHeight) * heightInfluence <= currentDistance
-                                || distArr[width][negH] + (heightmap[width][negH] - currHeight) * heightInfluence <= currentDistance) {
-                            //Updates over an edge
-                            distArr[width][height] = currentDistance + 1;
-                        } else if (
-                                distArr[posW][posH] + (heightmap[posW][posH] - currHeight) * heightInfluence <= currentDistance + 0.41421
-                                        || distArr[negW][posH] + (heightmap[negW][posH] - currHeight) * heightInfluence <= currentDistance + 0.41421
-                                        || distArr[posW][negH] + (heightmap[posW][negH] - currHeight) * heightInfluence <= currentDistance + 0.41421
-                                        || distArr[negW][negH] + (heightmap[negW][negH] - currHeight) * heightInfluence <= currentDistance + 0.41421) {
-                            //Updates over the corner
-                            distArr[width][height] = currentDistance + 1.41421f;
+    /**
+     * Runs {@link #propagateSweep} on row bands in parallel. Every band reads the previous round from one buffer and
+     * writes the next round into another; the rows just outside a band act as its halo and are exchanged by swapping the
+     * buffers between rounds. This equals the in-place sweep only if {@link #isCascadeFree(float[])}.
+     */
+    private void propagateSweepBanded(float[] dist, float[] heightInfluence, float unreached, int rounds) {
+        int channels = heightInfluence.length;
+        float[] current = dist;
+        float[] next = new float[dist.length];
+        for (int round = 0; round < rounds; round++) {
+            float[] prev = current;
+            float[] target = next;
+            int currentRound = round;
+            LongAdder visited = new LongAdder();
+            LongAdder updated = new LongAdder();
+            LongAdder stillOpen = new LongAdder();
+            RowBands.run(pool, size, (from, to) -> {
+                int[] neighbours = new int[NEIGHBOURS];
+                float[] heightDiffs = new float[NEIGHBOURS];
+                int bandVisited = 0;
+                int bandUpdated = 0;
+                int bandOpen = 0;
+                for (int index = from * size; index < to * size; index++) {
+                    boolean loaded = false;
+                    boolean open = false;
+                    for (int channel = 0; channel < channels; channel++) {
+                        int cell = index * channels + channel;
+                        float value = prev[cell];
+                        if (value == unreached) {
+                            if (!loaded) {
+                                loadNeighbours(index, neighbours, heightDiffs);
+                                loaded = true;
+                                bandVisited++;
+                            }
+                            float updatedValue = valueInRound(prev, channel, channels, neighbours, heightDiffs, heightInfluence[channel], currentRound);
+                            if (!Float.isNaN(updatedValue)) {
+                                value = updatedValue;
+                                bandUpdated++;
+                            } else {
+                                open = true;
+                            }
                         }
+                        target[cell] = value;
+                    }
+                    if (open) {
+                        bandOpen++;
                     }
                 }
+                visited.add(bandVisited);
+                updated.add(bandUpdated);
+                stillOpen.add(bandOpen);
+            });
+            next = current;
+            current = target;
+            round = endOfSweep(current, heightInfluence, unreached, round, rounds, visited.intValue(), updated.intValue(), stillOpen.intValue());
+        }
+
+        if (current != dist) {
+            System.arraycopy(current, 0, dist, 0, dist.length);
+        }
+    }
+
+    /**
+     * Records a finished sweep and decides where to continue.
+     *
+     * @return the round the sweep ended with; the next sweep runs the round after it
+     */
+    private int endOfSweep(float[] dist, float[] heightInfluence, float unreached, int round, int rounds,
+                           int visited, int updated, int stillOpen) {
+        metrics.recordSweep();
+        metrics.recordCellVisits(visited);
+        metrics.recordCellsUpdated(updated);
+        logger.debug("Distance round {}: {} cells updated, {} still open", round, updated, stillOpen);
+        if (stillOpen == 0) {
+            return rounds;
+        }
+        if (updated > 0) {
+            return round;
+        }
+        // nothing changed, so every round until the first one that reaches an open cell would be a no-op as well
+        int next = nextActiveRound(dist, heightInfluence, unreached, round + 1);
+        int last = (int) Math.min(next, (long) rounds) - 1;
+        metrics.recordSkippedRounds(last - round);
+        return last;
+    }
+
+    /**
+     * @return the first round, not before <code>minRound</code>, in which any open cell would be updated
+     */
+    private int nextActiveRound(float[] dist, float[] heightInfluence, float unreached, int minRound) {
+        int channels = heightInfluence.length;
+        int[] neighbours = new int[NEIGHBOURS];
+        float[] heightDiffs = new float[NEIGHBOURS];
+        int next = Integer.MAX_VALUE;
+        for (int index = 0; index < size * size; index++) {
+            if (isOpen(dist, index, channels, unreached)) {
+                loadNeighbours(index, neighbours, heightDiffs);
+                next = Math.min(next, firstRound(dist, index, channels, neighbours, heightDiffs, heightInfluence, null, unreached, minRound));
             }
-            currentDistance++;
         }
+        return next;
+    }
 
-        //normalize Array
-        float max = 0;
-        for (int width = 0; width < size; width++) {
-            for (int height = 0; height < size; height++) {
-                max = distArr[width][height] > max ? distArr[width][height] : max;
+    /**
+     * The in-place sweep lets a cell updated in round d update its neighbours in the same round d, but only if the height
+     * term lowers the distance across one step by about 0.58 or more. If no step of the map is that steep, reading
+     * neighbours from the previous round gives the same result, so the rows can be processed independently.
+     */
+    private boolean isCascadeFree(float[] heightInfluence) {
+        if (steepestSlope < 0) {
+            float steepest = 0;
+            for (int y = 0; y < size; y++) {
+                for (int x = 0; x < size; x++) {
+                    float currHeight = heightmap.get(x, y);
+                    steepest = Math.max(steepest, Math.abs(heightmap.getWrapped(x + 1, y) - currHeight));
+                    steepest = Math.max(steepest, Math.abs(heightmap.getWrapped(x, y + 1) - currHeight));
+                    steepest = Math.max(steepest, Math.abs(heightmap.getWrapped(x + 1, y + 1) - currHeight));
+                    steepest = Math.max(steepest, Math.abs(heightmap.getWrapped(x - 1, y + 1) - currHeight));
+                }
             }
+            steepestSlope = steepest;
         }
-        for (int width = 0; width < size; width++) {
-            for (int height = 0; height < size; height++) {
-                distArr[width][height] /= max;
+        float strongest = 0;
+        for (float influence : heightInfluence) {
+            strongest = Math.max(strongest, Math.abs(influence));
+        }
+        // keep a safety margin against float rounding of the distances
+        return steepestSlope * strongest < 0.5f;
+    }
+
+    /**
+     * Replays {@link #propagateSweep} event by event: a cell is only looked at again when one of its neighbours changed,
+     * in the same (distance, scan position) order the sweep would reach it. All fields share one queue, so a cell is
+     * visited once per round for all of them. The result is identical to the sweep.
+     */
+    private void propagateQueued(float[] dist, float[] heightInfluence, float unreached, int rounds) {
+        int channels = heightInfluence.length;
+        long cellCount = (long) size * size;
+        LongMinHeap queue = new LongMinHeap(size * 4);
+        int[] neighbours = new int[NEIGHBOURS];
+        float[] heightDiffs = new float[NEIGHBOURS];
+        int[] neighbourNeighbours = new int[NEIGHBOURS];
+        float[] neighbourHeightDiffs = new float[NEIGHBOURS];
+        boolean[] changed = new boolean[channels];
+
+        for (int index = 0; index < cellCount; index++) {
+            if (isOpen(dist, index, channels, unreached)) {
+                loadNeighbours(index, neighbours, heightDiffs);
+                int round = firstRound(dist, index, channels, neighbours, heightDiffs, heightInfluence, null, unreached, 0);
+                if (round < rounds) {
+                    queue.add(round * cellCount + index);
+                }
             }
         }
 
-        //invert if necessary
-        if (fromWhat.equals("equator")) {
-            for (int width = 0; width < size; width++) {
-                for (int height = 0; height < size; height++) {
-                    distArr[width][height] = 1 - distArr[width][height];
+        long visited = 0;
+        long updated = 0;
+        long previousKey = -1;
+        while (!queue.isEmpty()) {
+            long key = queue.poll();
+            // the queue is sorted, so duplicates are adjacent; a cell that stays open would queue its next round once
+            // per duplicate, which multiplies them round after round where a field never arrives
+            if (key == previousKey) {
+                continue;
+            }
+            previousKey = key;
+            int round = (int) (key / cellCount);
+            int index = (int) (key % cellCount);
+            if (!isOpen(dist, index, channels, unreached)) {
+                continue;
+            }
+            visited++;
+
+            loadNeighbours(index, neighbours, heightDiffs);
+            boolean anyChanged = false;
+            boolean anyOpen = false;
+            for (int channel = 0; channel < channels; channel++) {
+                int cell = index * channels + channel;
+                changed[channel] = false;
+                if (dist[cell] == unreached) {
+                    float value = valueInRound(dist, channel, channels, neighbours, heightDiffs, heightInfluence[channel], round);
+                    if (Float.isNaN(value)) {
+                        anyOpen = true;
+                    } else {
+                        dist[cell] = value;
+                        changed[channel] = true;
+                        anyChanged = true;
+                        updated++;
+                    }
+                }
+            }
+
+            if (anyOpen) {
+                int next = firstRound(dist, index, channels, neighbours, heightDiffs, heightInfluence, null, unreached, round + 1);
+                if (next < rounds) {
+                    queue.add(next * cellCount + index);
+                }
+            }
+            if (!anyChanged) {
+                continue;
+            }
+
+            for (int neighbourIndex : neighbours) {
+                if (isOpen(dist, neighbourIndex, channels, unreached)) {
+                    // the sweep still reaches cells behind this one in the current round
+                    int minRound = neighbourIndex > index ? round : round + 1;
+                    loadNeighbours(neighbourIndex, neighbourNeighbours, neighbourHeightDiffs);
+                    int next = firstRound(dist, neighbourIndex, channels, neighbourNeighbours, neighbourHeightDiffs, heightInfluence,
+                            changed, unreached, minRound);
+                    if (next < rounds) {
+                        queue.add(next * cellCount + neighbourIndex);
+                    }
                 }
             }
         }
+        // the initial scan is the only full pass
+        metrics.recordSweep();
+        metrics.recordCellVisits(visited);
+        metrics.recordCellsUpdated(updated);
+    }
 
-        return distArr;
+    /**
+     * @return true if any field has not reached the cell yet
+     */
+    boolean isOpen(float[] dist, int index, int channels, float unreached) {
+        for (int cell = index * channels; cell < (index + 1) * channels; cell++) {
+            if (dist[cell] == unreached) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads the heights around a cell once, for all fields.
+     *
+     * @param neighbours receives the indices of the edge neighbours followed by the corner neighbours
+     * @param heightDiffs receives the height of each neighbour minus the height of the cell
+     */
+    void loadNeighbours(int index, int[] neighbours, float[] heightDiffs) {
+        int cellCount = size * size;
+        int x = index % size;
+        int rowStart = index - x;
+        int posX = rowStart + (x + 1) % size;
+        int negX = rowStart + (x - 1 + size) % size;
+        neighbours[0] = (index + size) % cellCount;
+        neighbours[1] = posX;
+        neighbours[2] = (index - size + cellCount) % cellCount;
+        neighbours[3] = negX;
+        neighbours[4] = (posX + size) % cellCount;
+        neighbours[5] = (posX - size + cellCount) % cellCount;
+        neighbours[6] = (negX + size) % cellCount;
+        neighbours[7] = (negX - size + cellCount) % cellCount;
+
+        float currHeight = heightmap.get(index);
+        for (int i = 0; i < NEIGHBOURS; i++) {
+            heightDiffs[i] = heightmap.get(neighbours[i]) - currHeight;
+        }
+    }
+
+    /**
+     * @return the value the sweep assigns to the cell in the given round, or NaN if it is not updated in that round
+     */
+    float valueInRound(float[] dist, int channel, int channels, int[] neighbours, float[] heightDiffs,
+                               float heightInfluence, int round) {
+        float currentDistance = round;
+        if (dist[neighbours[0] * channels + channel] + heightDiffs[0] * heightInfluence <= currentDistance
+                || dist[neighbours[1] * channels + channel] + heightDiffs[1] * heightInfluence <= currentDistance
+                || dist[neighbours[2] * channels + channel] + heightDiffs[2] * heightInfluence <= currentDistance
+                || dist[neighbours[3] * channels + channel] + heightDiffs[3] * heightInfluence <= currentDistance) {
+            //Updates over an edge
+            return currentDistance + 1;
+        } else if (
+                dist[neighbours[4] * channels + channel] + heightDiffs[4] * heightInfluence <= currentDistance + 0.41421
+                        || dist[neighbours[5] * channels + channel] + heightDiffs[5] * heightInfluence <= currentDistance + 0.41421
+                        || dist[neighbours[6] * channels + channel] + heightDiffs[6] * heightInfluence <= currentDistance + 0.41421
+                        || dist[neighbours[7] * channels + channel] + heightDiffs[7] * heightInfluence <= currentDistance + 0.41421) {
+            //Updates over the corner
+            return currentDistance + 1.41421f;
+        }
+        return Float.NaN;
+    }
+
+    /**
+     * @return the value the propagation would assign to the cell, given the current values of its neighbours
+     */
+    float expectedValue(float[] dist, int channel, int channels, int[] neighbours, float[] heightDiffs,
+                        float heightInfluence, float unreached, int rounds) {
+        int edge = Integer.MAX_VALUE;
+        int corner = Integer.MAX_VALUE;
+        for (int i = 0; i < NEIGHBOURS; i++) {
+            float reach = dist[neighbours[i] * channels + channel] + heightDiffs[i] * heightInfluence;
+            if (i < 4) {
+                edge = Math.min(edge, edgeRound(reach));
+            } else {
+                corner = Math.min(corner, cornerRound(reach));
+            }
+        }
+        int round = Math.max(0, Math.min(edge, corner));
+        if (round >= rounds) {
+            return unreached;
+        }
+        return edge <= round ? round + 1 : round + 1.41421f;
+    }
+
+    /**
+     * @param onlyChannels if not null, only the channels marked true are considered
+     * @return the first round, not before <code>minRound</code>, in which the current neighbour values would update
+     *         any open field of the cell
+     */
+    int firstRound(float[] dist, int index, int channels, int[] neighbours, float[] heightDiffs,
+                           float[] heightInfluence, boolean[] onlyChannels, float unreached, int minRound) {
+        int first = Integer.MAX_VALUE;
+        for (int channel = 0; channel < channels; channel++) {
+            if (dist[index * channels + channel] != unreached || (onlyChannels != null && !onlyChannels[channel])) {
+                continue;
+            }
+            for (int i = 0; i < NEIGHBOURS; i++) {
+                float reach = dist[neighbours[i] * channels + channel] + heightDiffs[i] * heightInfluence[channel];
+                int round = i < 4 ? edgeRound(reach) : cornerRound(reach);
+                first = Math.min(first, round);
+            }
+        }
+        return Math.max(first, minRound);
+    }
+
+    /**
+     * @return the smallest round <code>d</code> with <code>reach &lt;= d</code>
+     */
+    private static int edgeRound(float reach) {
+        return (int) Math.max(Math.ceil(reach), Integer.MIN_VALUE / 2);
+    }
+
+    /**
+     * @return the smallest round <code>d</code> with <code>reach &lt;= d + 0.41421</code>
+     */
+    private static int cornerRound(float reach) {
+        double bound = Math.max(Math.ceil(reach - 0.41421), Integer.MIN_VALUE / 2);
+        int round = (int) bound;
+        while (reach <= (round - 1) + 0.41421) {
+            round--;
+        }
+        while (reach > round + 0.41421) {
+            round++;
+        }
+        return round;
     }
 }
@@ -0,0 +1,99 @@
+// Copyright 2020 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.core.world.generator;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the work done by {@link ClimateSimulatorData} and {@link ClimateSimulator}. All counters are cumulative and
+ * may be updated from several threads; phases that run in parallel add up their time.
+ */
+public final class ClimateSimulatorMetrics {
+    private final Map<String, Long> phaseNanos = new LinkedHashMap<>();
+    private final LongAdder sweeps = new LongAdder();
+    private final LongAdder skippedRounds = new LongAdder();
+    private final LongAdder cellVisits = new LongAdder();
+    private final LongAdder cellsUpdated = new LongAdder();
+
+    /**
+     * Adds the time since <code>startNanos</code> to the given phase.
+     */
+    void recordPhase(String phase, long startNanos) {
+        long elapsed = System.nanoTime() - startNanos;
+        synchronized (phaseNanos) {
+            phaseNanos.merge(phase, elapsed, Long::sum);
+        }
+    }
+
+    void recordSweep() {
+        sweeps.increment();
+    }
+
+    void recordSkippedRounds(long rounds) {
+        skippedRounds.add(rounds);
+    }
+
+    void recordCellVisits(long cells) {
+        cellVisits.add(cells);
+    }
+
+    void recordCellsUpdated(long cells) {
+        cellsUpdated.add(cells);
+    }
+
+    /**
+     * @return the time spent per phase in nanoseconds, in the order the phases first ran
+     */
+    public Map<String, Long> getPhaseNanos() {
+        synchronized (phaseNanos) {
+            return Collections.unmodifiableMap(new LinkedHashMap<>(phaseNanos));
+        }
+    }
+
+    /**
+     * @return the number of full passes over a map
+     */
+    public long getSweeps() {
+        return sweeps.sum();
+    }
+
+    /**
+     * @return the number of distance rounds that were skipped because no cell could change in them
+     */
+    public long getSkippedRounds() {
+        return skippedRounds.sum();
+    }
+
+    /**
+     * @return the number of times a cell was examined for an update
+     */
+    public long getCellVisits() {
+        return cellVisits.sum();
+    }
+
+    /**
+     * @return the number of distance values that were assigned, counting each field separately
+     */
+    public long getCellsUpdated() {
+        return cellsUpdated.sum();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("sweeps=").append(getSweeps())
+                .append(", skippedRounds=").append(getSkippedRounds())
+                .append(", cellVisits=").append(getCellVisits())
+                .append(", cellsUpdated=").append(getCellsUpdated());
+        for (Map.Entry<String, Long> entry : getPhaseNanos().entrySet()) {
+            sb.append(", ").append(entry.getKey()).append('=')
+                    .append(TimeUnit.NANOSECONDS.toMillis(entry.getValue())).append("ms");
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,52 @@
+// Copyright 2020 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.core.world.generator;
+
+/**
+ * Several distance fields over the same square map, stored interleaved: all channels of a cell are next to each other,
+ * at <code>index * channels + channel</code>, where <code>index</code> is the row-major cell index.
+ */
+public final class DistanceFields {
+    private final int size;
+    private final int channels;
+    private final float[] values;
+
+    DistanceFields(int size, int channels) {
+        this.size = size;
+        this.channels = channels;
+        // fails instead of wrapping around to a smaller array than the fields need
+        this.values = new float[Math.multiplyExact(Math.multiplyExact(size, size), channels)];
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    /**
+     * @param channel the channel, in the order the fields were requested
+     * @param index the row-major cell index
+     */
+    public float get(int channel, int index) {
+        return values[index * channels + channel];
+    }
+
+    /**
+     * @return a copy of a single channel
+     */
+    public FloatGrid getField(int channel) {
+        FloatGrid grid = FloatGrid.onHeap(size, size);
+        for (int index = 0; index < grid.size(); index++) {
+            grid.set(index, values[index * channels + channel]);
+        }
+        return grid;
+    }
+
+    float[] values() {
+        return values;
+    }
+}
@@ -0,0 +1,201 @@
+// Copyright 2020 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.core.world.generator;
+
+import com.google.common.base.Preconditions;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * A two-dimensional grid of floats, stored row by row in a single <code>float[]</code> or in an off-heap {@link FloatBuffer}.
+ * The cell <code>(x, y)</code> lives at index <code>y * width + x</code>, so iterating x in the inner loop is sequential
+ * in memory.
+ */
+public final class FloatGrid {
+    private final int width;
+    private final int height;
+    private final float[] data;
+    private final FloatBuffer buffer;
+
+    private FloatGrid(int width, int height, float[] data, FloatBuffer buffer) {
+        this.width = width;
+        this.height = height;
+        this.data = data;
+        this.buffer = buffer;
+    }
+
+    /**
+     * @return a new, zero-filled grid backed by a <code>float[]</code>
+     */
+    public static FloatGrid onHeap(int width, int height) {
+        return new FloatGrid(width, height, new float[cellCount(width, height)], null);
+    }
+
+    /**
+     * @return a new, zero-filled grid backed by a direct buffer outside the Java heap
+     */
+    public static FloatGrid offHeap(int width, int height) {
+        long byteCount = (long) cellCount(width, height) * Float.BYTES;
+        // a direct buffer is indexed by int like an array, but in bytes
+        Preconditions.checkArgument(byteCount <= Integer.MAX_VALUE, "Grid too large for a direct buffer: %sx%s", width, height);
+        ByteBuffer bytes = ByteBuffer.allocateDirect((int) byteCount).order(ByteOrder.nativeOrder());
+        return new FloatGrid(width, height, null, bytes.asFloatBuffer());
+    }
+
+    /**
+     * Wraps existing row-major data without copying it.
+     */
+    public static FloatGrid wrap(float[] data, int width, int height) {
+        int cellCount = cellCount(width, height);
+        Preconditions.checkArgument(data.length == cellCount, "Expected %s values, got %s", cellCount, data.length);
+        return new FloatGrid(width, height, data, null);
+    }
+
+    /**
+     * Wraps existing row-major data without copying it. The buffer's position is ignored.
+     */
+    public static FloatGrid wrap(FloatBuffer buffer, int width, int height) {
+        int cellCount = cellCount(width, height);
+        Preconditions.checkArgument(buffer.capacity() >= cellCount, "Expected %s values, got %s", cellCount, buffer.capacity());
+        return new FloatGrid(width, height, null, buffer);
+    }
+
+    /**
+     * @return the number of cells of a grid of the given size, which must fit into an array
+     */
+    private static int cellCount(int width, int height) {
+        Preconditions.checkArgument(width > 0 && height > 0, "Invalid grid size %sx%s", width, height);
+        Preconditions.checkArgument((long) width * height <= Integer.MAX_VALUE, "Grid too large: %sx%s", width, height);
+        return width * height;
+    }
+
+    /**
+     * Copies nested arrays, where <code>rows[y][x]</code> becomes the cell <code>(x, y)</code>.
+     */
+    public static FloatGrid copyOf(float[][] rows) {
+        FloatGrid grid = onHeap(rows[0].length, rows.length);
+        for (int y = 0; y < rows.length; y++) {
+            grid.setRow(y, rows[y]);
+        }
+        return grid;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return the number of cells
+     */
+    public int size() {
+        return width * height;
+    }
+
+    /**
+     * @return the number of bytes used for the values
+     */
+    public long sizeInBytes() {
+        return (long) size() * Float.BYTES;
+    }
+
+    public boolean isOffHeap() {
+        return data == null;
+    }
+
+    public int index(int x, int y) {
+        return y * width + x;
+    }
+
+    public float get(int index) {
+        return data != null ? data[index] : buffer.get(index);
+    }
+
+    public void set(int index, float value) {
+        if (data != null) {
+            data[index] = value;
+        } else {
+            buffer.put(index, value);
+        }
+    }
+
+    public float get(int x, int y) {
+        return get(y * width + x);
+    }
+
+    public void set(int x, int y, float value) {
+        set(y * width + x, value);
+    }
+
+    /**
+     * Reads the grid as if it was repeated infinitely in both directions.
+     */
+    public float getWrapped(int x, int y) {
+        return get(Math.floorMod(x, width), Math.floorMod(y, height));
+    }
+
+    /**
+     * Reads the grid as if the border cells extended infinitely.
+     */
+    public float getClamped(int x, int y) {
+        return get(Math.max(0, Math.min(x, width - 1)), Math.max(0, Math.min(y, height - 1)));
+    }
+
+    /**
+     * Copies the row <code>y</code> into <code>dest</code>.
+     */
+    public void getRow(int y, float[] dest) {
+        if (data != null) {
+            System.arraycopy(data, y * width, dest, 0, width);
+        } else {
+            FloatBuffer view = buffer.duplicate();
+            view.position(y * width);
+            view.get(dest, 0, width);
+        }
+    }
+
+    /**
+     * Overwrites the row <code>y</code> with the first {@link #getWidth()} values of <code>src</code>.
+     */
+    public void setRow(int y, float[] src) {
+        if (data != null) {
+            System.arraycopy(src, 0, data, y * width, width);
+        } else {
+            FloatBuffer view = buffer.duplicate();
+            view.position(y * width);
+            view.put(src, 0, width);
+        }
+    }
+
+    public void fill(float value) {
+        if (data != null) {
+            Arrays.fill(data, value);
+        } else {
+            for (int i = 0; i < size(); i++) {
+                buffer.put(i, value);
+            }
+        }
+    }
+
+    /**
+     * @return a copy with the same kind of storage
+     */
+    public FloatGrid copy() {
+        if (data != null) {
+            return wrap(data.clone(), width, height);
+        }
+        FloatGrid result = offHeap(width, height);
+        FloatBuffer source = buffer.duplicate();
+        source.position(0).limit(size());
+        result.buffer.put(source);
+        result.buffer.clear();
+        return result;
+    }
+}
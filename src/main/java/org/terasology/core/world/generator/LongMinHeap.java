@@ -0,0 +1,76 @@
+// Copyright 2020 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.core.world.generator;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * A binary min-heap of primitive <code>long</code> keys. Avoids boxing when millions of cells are queued.
+ */
+final class LongMinHeap {
+    private long[] keys;
+    private int size;
+
+    LongMinHeap(int initialCapacity) {
+        keys = new long[Math.max(initialCapacity, 16)];
+    }
+
+    void add(long key) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+        }
+        int pos = size++;
+        while (pos > 0) {
+            int parent = (pos - 1) >>> 1;
+            if (keys[parent] <= key) {
+                break;
+            }
+            keys[pos] = keys[parent];
+            pos = parent;
+        }
+        keys[pos] = key;
+    }
+
+    /**
+     * @return the smallest key, without removing it
+     */
+    long peek() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        return keys[0];
+    }
+
+    long poll() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        long result = keys[0];
+        long last = keys[--size];
+        int pos = 0;
+        int half = size >>> 1;
+        while (pos < half) {
+            int child = 2 * pos + 1;
+            if (child + 1 < size && keys[child + 1] < keys[child]) {
+                child++;
+            }
+            if (last <= keys[child]) {
+                break;
+            }
+            keys[pos] = keys[child];
+            pos = child;
+        }
+        keys[pos] = last;
+        return result;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int size() {
+        return size;
+    }
+}
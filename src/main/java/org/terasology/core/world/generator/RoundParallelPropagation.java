@@ -0,0 +1,383 @@
+// Copyright 2020 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.core.world.generator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs {@link ClimateSimulatorData.Propagation#PRIORITY_QUEUE} with the cells of every distance round spread over a
+ * pool, so a single field scales with the number of cores.
+ * <p>
+ * The sweep assigns the cells of a round in scan order, so a cell already sees what the cells before it got in the same
+ * round. Each round is therefore processed in three steps:
+ * <ol>
+ * <li>All queued cells are evaluated in parallel against the values from the start of the round.</li>
+ * <li>A cell can only get a different value in the sweep if a neighbour before it in scan order was assigned in this
+ * round and reaches it within the round, which takes a steep drop. Only those cells are evaluated again, on a single
+ * thread in scan order, with the values that later cells got in this round hidden.</li>
+ * <li>The neighbours of all changed cells are queued for later rounds in parallel.</li>
+ * </ol>
+ * The result is identical to the sweep.
+ */
+final class RoundParallelPropagation {
+
+    /**
+     * Rounds with fewer queued cells are processed on the calling thread.
+     */
+    private static final int MIN_PARALLEL_CELLS = 1024;
+
+    private final ClimateSimulatorData data;
+    private final ForkJoinPool pool;
+    private final float[] dist;
+    private final float[] heightInfluence;
+    private final int channels;
+    private final float unreached;
+    private final int rounds;
+    private final long cellCount;
+
+    /**
+     * The round in which each value was assigned, or -1
+     */
+    private final int[] assignedRound;
+
+    private final LongMinHeap queue;
+    private long visited;
+    private long updated;
+
+    /**
+     * A growable list of primitive keys, collected by a single task.
+     */
+    private static final class Keys {
+        private long[] values = new long[64];
+        private int size;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+
+    /**
+     * The buffers of a single task.
+     */
+    private static final class Scratch {
+        private final int[] neighbours = new int[ClimateSimulatorData.NEIGHBOURS];
+        private final float[] heightDiffs = new float[ClimateSimulatorData.NEIGHBOURS];
+        private final int[] neighbourNeighbours = new int[ClimateSimulatorData.NEIGHBOURS];
+        private final float[] neighbourHeightDiffs = new float[ClimateSimulatorData.NEIGHBOURS];
+        private final boolean[] changed;
+
+        Scratch(int channels) {
+            changed = new boolean[channels];
+        }
+    }
+
+    /**
+     * Collects the keys of several tasks.
+     */
+    private static final class KeyCollector {
+        private final List<Keys> parts = new ArrayList<>();
+
+        Keys newPart() {
+            Keys keys = new Keys();
+            synchronized (parts) {
+                parts.add(keys);
+            }
+            return keys;
+        }
+    }
+
+    RoundParallelPropagation(ClimateSimulatorData data, float[] dist, float[] heightInfluence, float unreached, int rounds) {
+        this.data = data;
+        this.pool = data.getPool();
+        this.dist = dist;
+        this.heightInfluence = heightInfluence;
+        this.channels = heightInfluence.length;
+        this.unreached = unreached;
+        this.rounds = rounds;
+        this.cellCount = (long) data.getSize() * data.getSize();
+        this.assignedRound = new int[dist.length];
+        Arrays.fill(assignedRound, -1);
+        this.queue = new LongMinHeap(data.getSize() * 4);
+    }
+
+    /**
+     * Spreads the distances, see {@link ClimateSimulatorData#propagate}.
+     */
+    void run() {
+        queueOpenCells();
+        data.getMetrics().recordSweep();
+
+        int[] cells = new int[64];
+        while (!queue.isEmpty()) {
+            int round = (int) (queue.peek() / cellCount);
+            int count = 0;
+            int last = -1;
+            while (!queue.isEmpty() && queue.peek() / cellCount == round) {
+                int index = (int) (queue.poll() % cellCount);
+                // the queue is sorted, so duplicates are adjacent
+                if (index != last && data.isOpen(dist, index, channels, unreached)) {
+                    if (count == cells.length) {
+                        cells = Arrays.copyOf(cells, count * 2);
+                    }
+                    cells[count++] = index;
+                }
+                last = index;
+            }
+            visited += count;
+            processRound(round, cells, count);
+        }
+
+        data.getMetrics().recordCellVisits(visited);
+        data.getMetrics().recordCellsUpdated(updated);
+    }
+
+    private void queueOpenCells() {
+        int size = data.getSize();
+        KeyCollector collector = new KeyCollector();
+        RowBands.run(pool, size, (from, to) -> {
+            Keys keys = collector.newPart();
+            Scratch scratch = new Scratch(channels);
+            for (int index = from * size; index < to * size; index++) {
+                if (data.isOpen(dist, index, channels, unreached)) {
+                    data.loadNeighbours(index, scratch.neighbours, scratch.heightDiffs);
+                    keys.add(key(data.firstRound(dist, index, channels, scratch.neighbours, scratch.heightDiffs, heightInfluence, null,
+                            unreached, 0), index));
+                }
+            }
+        });
+        enqueue(collector);
+    }
+
+    private void processRound(int round, int[] cells, int count) {
+        // evaluate every cell against the start of the round, then assign all results at once
+        float[] results = new float[count * channels];
+        forEach(count, (from, to) -> {
+            Scratch scratch = new Scratch(channels);
+            for (int i = from; i < to; i++) {
+                data.loadNeighbours(cells[i], scratch.neighbours, scratch.heightDiffs);
+                for (int channel = 0; channel < channels; channel++) {
+                    float value = Float.NaN;
+                    if (dist[cells[i] * channels + channel] == unreached) {
+                        value = data.valueInRound(dist, channel, channels, scratch.neighbours, scratch.heightDiffs, heightInfluence[channel],
+                                round);
+                    }
+                    results[i * channels + channel] = value;
+                }
+            }
+        });
+        LongAdder assigned = new LongAdder();
+        KeyCollector cascades = new KeyCollector();
+        forEach(count, (from, to) -> {
+            int assignedInTask = 0;
+            for (int i = from; i < to; i++) {
+                for (int channel = 0; channel < channels; channel++) {
+                    float value = results[i * channels + channel];
+                    if (!Float.isNaN(value)) {
+                        int cell = cells[i] * channels + channel;
+                        dist[cell] = value;
+                        assignedRound[cell] = round;
+                        assignedInTask++;
+                    }
+                }
+            }
+            assigned.add(assignedInTask);
+        });
+        updated += assigned.sum();
+
+        // find the cells that a value of this round reaches within the same round
+        forEach(count, (from, to) -> {
+            Keys keys = cascades.newPart();
+            Scratch scratch = new Scratch(channels);
+            for (int i = from; i < to; i++) {
+                addCascades(cells[i], round, scratch.neighbours, scratch.heightDiffs, keys);
+            }
+        });
+        int[] changed = replayCascades(round, cascades);
+
+        KeyCollector next = new KeyCollector();
+        forEach(count, (from, to) -> {
+            Keys keys = next.newPart();
+            Scratch scratch = new Scratch(channels);
+            for (int i = from; i < to; i++) {
+                queueAfterRound(cells[i], round, scratch, keys);
+            }
+        });
+        forEach(changed.length, (from, to) -> {
+            Keys keys = next.newPart();
+            Scratch scratch = new Scratch(channels);
+            for (int i = from; i < to; i++) {
+                queueAfterRound(changed[i], round, scratch, keys);
+            }
+        });
+        enqueue(next);
+    }
+
+    /**
+     * Collects the neighbours after the cell in scan order that a value it got in this round could still reach in this
+     * round. The test is looser than the sweep, so it never misses one.
+     */
+    private void addCascades(int index, int round, int[] neighbours, float[] heightDiffs, Keys keys) {
+        boolean loaded = false;
+        for (int channel = 0; channel < channels; channel++) {
+            int cell = index * channels + channel;
+            if (assignedRound[cell] != round) {
+                continue;
+            }
+            if (!loaded) {
+                data.loadNeighbours(index, neighbours, heightDiffs);
+                loaded = true;
+            }
+            for (int i = 0; i < ClimateSimulatorData.NEIGHBOURS; i++) {
+                int neighbour = neighbours[i];
+                // seen from the neighbour, the height difference is reversed
+                if (neighbour > index && isOpenInRound(neighbour, channel, round)
+                        && dist[cell] - heightDiffs[i] * heightInfluence[channel] <= round + 0.5) {
+                    keys.add(neighbour);
+                }
+            }
+        }
+    }
+
+    /**
+     * Evaluates the cells a value of this round reaches within the round in scan order, like the sweep does.
+     *
+     * @return the cells whose values changed
+     */
+    private int[] replayCascades(int round, KeyCollector cascades) {
+        LongMinHeap pending = new LongMinHeap(16);
+        for (Keys keys : cascades.parts) {
+            for (int i = 0; i < keys.size; i++) {
+                pending.add(keys.values[i]);
+            }
+        }
+        Keys changed = new Keys();
+        Keys more = new Keys();
+        int[] neighbours = new int[ClimateSimulatorData.NEIGHBOURS];
+        float[] heightDiffs = new float[ClimateSimulatorData.NEIGHBOURS];
+        float[] hidden = new float[ClimateSimulatorData.NEIGHBOURS * channels];
+        long last = -1;
+        while (!pending.isEmpty()) {
+            long next = pending.poll();
+            if (next == last) {
+                continue;
+            }
+            last = next;
+            int index = (int) next;
+            visited++;
+
+            data.loadNeighbours(index, neighbours, heightDiffs);
+            // the sweep has not reached the cells after this one yet, so they still hold their old values
+            for (int i = 0; i < ClimateSimulatorData.NEIGHBOURS; i++) {
+                for (int channel = 0; channel < channels; channel++) {
+                    int cell = neighbours[i] * channels + channel;
+                    hidden[i * channels + channel] = dist[cell];
+                    if (neighbours[i] > index && assignedRound[cell] == round) {
+                        dist[cell] = unreached;
+                    }
+                }
+            }
+            boolean anyChanged = false;
+            for (int channel = 0; channel < channels; channel++) {
+                int cell = index * channels + channel;
+                if (!isOpenInRound(index, channel, round)) {
+                    continue;
+                }
+                float value = data.valueInRound(dist, channel, channels, neighbours, heightDiffs, heightInfluence[channel], round);
+                if (!Float.isNaN(value) && value != dist[cell]) {
+                    if (dist[cell] == unreached) {
+                        updated++;
+                    }
+                    dist[cell] = value;
+                    assignedRound[cell] = round;
+                    anyChanged = true;
+                }
+            }
+            for (int i = ClimateSimulatorData.NEIGHBOURS - 1; i >= 0; i--) {
+                for (int channel = channels - 1; channel >= 0; channel--) {
+                    dist[neighbours[i] * channels + channel] = hidden[i * channels + channel];
+                }
+            }
+
+            if (anyChanged) {
+                changed.add(index);
+                more.size = 0;
+                addCascades(index, round, neighbours, heightDiffs, more);
+                for (int i = 0; i < more.size; i++) {
+                    pending.add(more.values[i]);
+                }
+            }
+        }
+        int[] result = new int[changed.size];
+        for (int i = 0; i < changed.size; i++) {
+            result[i] = (int) changed.values[i];
+        }
+        return result;
+    }
+
+    /**
+     * Queues the cell for the next round it can change in, and its neighbours if it changed in this round.
+     */
+    private void queueAfterRound(int index, int round, Scratch scratch, Keys keys) {
+        int[] neighbours = scratch.neighbours;
+        data.loadNeighbours(index, neighbours, scratch.heightDiffs);
+        if (data.isOpen(dist, index, channels, unreached)) {
+            keys.add(key(data.firstRound(dist, index, channels, neighbours, scratch.heightDiffs, heightInfluence, null, unreached,
+                    round + 1), index));
+        }
+
+        boolean[] changed = scratch.changed;
+        boolean anyChanged = false;
+        for (int channel = 0; channel < channels; channel++) {
+            changed[channel] = assignedRound[index * channels + channel] == round;
+            anyChanged |= changed[channel];
+        }
+        if (!anyChanged) {
+            return;
+        }
+        for (int neighbour : neighbours) {
+            if (data.isOpen(dist, neighbour, channels, unreached)) {
+                data.loadNeighbours(neighbour, scratch.neighbourNeighbours, scratch.neighbourHeightDiffs);
+                keys.add(key(data.firstRound(dist, neighbour, channels, scratch.neighbourNeighbours, scratch.neighbourHeightDiffs,
+                        heightInfluence, changed, unreached, round + 1), neighbour));
+            }
+        }
+    }
+
+    /**
+     * @return true if the field had not reached the cell at the start of the round
+     */
+    private boolean isOpenInRound(int index, int channel, int round) {
+        int cell = index * channels + channel;
+        return dist[cell] == unreached || assignedRound[cell] == round;
+    }
+
+    private long key(int round, int index) {
+        return round < rounds ? round * cellCount + index : -1;
+    }
+
+    private void enqueue(KeyCollector collector) {
+        for (Keys keys : collector.parts) {
+            for (int i = 0; i < keys.size; i++) {
+                if (keys.values[i] >= 0) {
+                    queue.add(keys.values[i]);
+                }
+            }
+        }
+    }
+
+    private void forEach(int count, RowBands.BandTask task) {
+        if (count < MIN_PARALLEL_CELLS) {
+            task.process(0, count);
+        } else {
+            RowBands.run(pool, count, task);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+// Copyright 2020 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.core.world.generator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Splits the rows of a square map into bands and processes them on a {@link ForkJoinPool}.
+ */
+final class RowBands {
+
+    /**
+     * Processes the rows <code>[from, to)</code> of one band.
+     */
+    @FunctionalInterface
+    interface BandTask {
+        void process(int from, int to);
+    }
+
+    private RowBands() {
+        // no instances
+    }
+
+    /**
+     * Runs the task for all bands and returns when every band is done.
+     *
+     * @param pool the pool to run on, or null to process all rows on the calling thread
+     * @param rows the number of rows to split
+     * @param task the work for a single band
+     */
+    static void run(ForkJoinPool pool, int rows, BandTask task) {
+        if (pool == null || pool.getParallelism() == 1 || rows < 2) {
+            task.process(0, rows);
+            return;
+        }
+
+        int bandCount = Math.min(rows, pool.getParallelism() * 4);
+        List<ForkJoinTask<?>> bands = new ArrayList<>(bandCount);
+        for (int band = 0; band < bandCount; band++) {
+            int from = (int) ((long) rows * band / bandCount);
+            int to = (int) ((long) rows * (band + 1) / bandCount);
+            bands.add(ForkJoinTask.adapt(() -> task.process(from, to)));
+        }
+        invokeAll(pool, bands);
+    }
+
+    /**
+     * Runs all tasks on the pool, joining them from within the pool if the caller is already a worker.
+     */
+    static void invokeAll(ForkJoinPool pool, List<? extends ForkJoinTask<?>> tasks) {
+        if (ForkJoinTask.getPool() == pool) {
+            ForkJoinTask.invokeAll(tasks);
+        } else {
+            pool.invoke(ForkJoinTask.adapt(() -> {
+                ForkJoinTask.invokeAll(tasks);
+            }));
+        }
+    }
+}
@@ -0,0 +1,214 @@
+// Copyright 2020 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.core.world.generator;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import org.joml.Vector2i;
+
+/**
+ * Computes the climate of an unbounded world in square tiles, on demand. It follows the rules of {@link ClimateSimulator},
+ * but instead of one finite, wrapping heightmap it reads heights from a {@link HeightSource}.
+ * <p>
+ * Each tile is computed on a window that extends the tile by a halo on every side, so that distances near the tile edges
+ * see the terrain of the neighbouring tiles. Distances from water are exact up to the halo width and capped there.
+ * Poles and equator repeat every {@link #getLatitudePeriod()} rows; outside of the window the terrain is assumed to be flat
+ * for the distance towards them.
+ * <p>
+ * Only a bounded number of tiles is kept, the least recently used ones are dropped first. The memory use therefore depends
+ * on the number of tiles in use, not on the size of the world.
+ * <p>
+ * {@link org.terasology.core.world.generator.facetProviders.TiledClimateProvider} derives the surface facets of noise
+ * worlds from it.
+ */
+public class TiledClimateSimulator {
+
+    /**
+     * Provides the terrain height of the world.
+     */
+    @FunctionalInterface
+    public interface HeightSource {
+        /**
+         * @return the height relative to the sea level, values below 1 are water
+         */
+        float getHeight(int x, int y);
+    }
+
+    /**
+     * The climate of a single tile.
+     */
+    public static final class Tile {
+        private final int minX;
+        private final int minY;
+        private final FloatGrid climate;
+        private final FloatGrid humidity;
+
+        Tile(int minX, int minY, FloatGrid climate, FloatGrid humidity) {
+            this.minX = minX;
+            this.minY = minY;
+            this.climate = climate;
+            this.humidity = humidity;
+        }
+
+        public int getMinX() {
+            return minX;
+        }
+
+        public int getMinY() {
+            return minY;
+        }
+
+        /**
+         * @return the climate, as {@link ClimateSimulator#getClimate()}
+         */
+        public FloatGrid getClimate() {
+            return climate;
+        }
+
+        /**
+         * @return the normalized distance from water, as {@link ClimateSimulator#getHumidity()}
+         */
+        public FloatGrid getHumidity() {
+            return humidity;
+        }
+    }
+
+    private static final float[] HEIGHT_INFLUENCE = {
+        ClimateSimulator.POLES_HEIGHT_INFLUENCE,
+        ClimateSimulator.EQUATOR_HEIGHT_INFLUENCE,
+        ClimateSimulator.WATER_HEIGHT_INFLUENCE
+    };
+
+    private final HeightSource heightSource;
+    private final int tileSize;
+    private final int halo;
+    private final int latitudePeriod;
+    private final LoadingCache<Vector2i, Tile> tiles;
+
+    /**
+     * @param heightSource the terrain
+     * @param tileSize the width and height of a tile
+     * @param halo the margin around a tile that is taken into account, also the maximum distance from water
+     * @param latitudePeriod the distance from one pole to the next; the equator lies half-way
+     * @param maxTiles the maximum number of tiles to keep
+     */
+    public TiledClimateSimulator(HeightSource heightSource, int tileSize, int halo, int latitudePeriod, int maxTiles) {
+        Preconditions.checkArgument(tileSize > 0 && halo > 0, "Tile size and halo must be positive");
+        Preconditions.checkArgument(latitudePeriod >= 2, "Latitude period must be at least 2");
+        this.heightSource = heightSource;
+        this.tileSize = tileSize;
+        this.halo = halo;
+        this.latitudePeriod = latitudePeriod;
+        this.tiles = CacheBuilder.newBuilder()
+                .maximumSize(maxTiles)
+                .build(new CacheLoader<Vector2i, Tile>() {
+                    @Override
+                    public Tile load(Vector2i key) {
+                        return computeTile(key.x(), key.y());
+                    }
+                });
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    public int getHalo() {
+        return halo;
+    }
+
+    public int getLatitudePeriod() {
+        return latitudePeriod;
+    }
+
+    /**
+     * @return the tile that contains the given position, computing it if necessary
+     */
+    public Tile getTileAt(int x, int y) {
+        return getTile(Math.floorDiv(x, tileSize), Math.floorDiv(y, tileSize));
+    }
+
+    /**
+     * @return the tile with the given tile coordinates, computing it if necessary
+     */
+    public Tile getTile(int tileX, int tileY) {
+        return tiles.getUnchecked(new Vector2i(tileX, tileY));
+    }
+
+    public float getClimate(int x, int y) {
+        Tile tile = getTileAt(x, y);
+        return tile.climate.get(x - tile.minX, y - tile.minY);
+    }
+
+    public float getHumidity(int x, int y) {
+        Tile tile = getTileAt(x, y);
+        return tile.humidity.get(x - tile.minX, y - tile.minY);
+    }
+
+    /**
+     * @return the number of tiles currently kept
+     */
+    public long getCachedTileCount() {
+        return tiles.size();
+    }
+
+    private Tile computeTile(int tileX, int tileY) {
+        int windowSize = tileSize + 2 * halo;
+        int windowMinX = tileX * tileSize - halo;
+        int windowMinY = tileY * tileSize - halo;
+
+        FloatGrid heightmap = FloatGrid.onHeap(windowSize, windowSize);
+        for (int y = 0; y < windowSize; y++) {
+            for (int x = 0; x < windowSize; x++) {
+                heightmap.set(x, y, heightSource.getHeight(windowMinX + x, windowMinY + y));
+            }
+        }
+
+        // the marker must be above every distance the propagation can assign
+        int rounds = latitudePeriod + 2 * windowSize;
+        float unreached = rounds + 2;
+        int channels = HEIGHT_INFLUENCE.length;
+        float[] dist = new float[Math.multiplyExact(heightmap.size(), channels)];
+        for (int y = 0; y < windowSize; y++) {
+            int latitude = Math.floorMod(windowMinY + y, latitudePeriod);
+            float poleDistance = Math.min(latitude, latitudePeriod - latitude);
+            float equatorDistance = Math.abs(latitude - latitudePeriod / 2);
+            for (int x = 0; x < windowSize; x++) {
+                int cell = heightmap.index(x, y) * channels;
+                // the outermost ring is fixed; this also stops the wrap-around of the distance propagation
+                boolean border = x == 0 || y == 0 || x == windowSize - 1 || y == windowSize - 1;
+                dist[cell] = border || poleDistance == 0 ? poleDistance : unreached;
+                dist[cell + 1] = border || equatorDistance == 0 ? equatorDistance : unreached;
+                if (heightmap.get(x, y) - 1 < 0) {
+                    dist[cell + 2] = 0;
+                } else {
+                    dist[cell + 2] = border ? halo : unreached;
+                }
+            }
+        }
+
+        ClimateSimulatorData data = new ClimateSimulatorData(heightmap);
+        data.propagate(ClimateSimulatorData.Propagation.PRIORITY_QUEUE, dist, HEIGHT_INFLUENCE, unreached, rounds);
+
+        FloatGrid climate = FloatGrid.onHeap(tileSize, tileSize);
+        FloatGrid humidity = FloatGrid.onHeap(tileSize, tileSize);
+        float halfPeriod = latitudePeriod / 2f;
+        for (int y = 0; y < tileSize; y++) {
+            int latitude = Math.floorMod(windowMinY + halo + y, latitudePeriod);
+            float distToEq = ClimateSimulator.distanceToEquator(latitude / (double) latitudePeriod);
+            for (int x = 0; x < tileSize; x++) {
+                int window = heightmap.index(x + halo, y + halo);
+                int cell = window * channels;
+                float t1 = Math.min(dist[cell] / halfPeriod, 1);
+                float t2 = 1 - Math.min(dist[cell + 1] / halfPeriod, 1);
+                climate.set(x, y, ClimateSimulator.overlayHeight(t1 + t2 - 1, heightmap.get(window), distToEq, 0, 0));
+                humidity.set(x, y, Math.min(dist[cell + 2] / halo, 1));
+            }
+        }
+
+        return new Tile(tileX * tileSize, tileY * tileSize, climate, humidity);
+    }
+}
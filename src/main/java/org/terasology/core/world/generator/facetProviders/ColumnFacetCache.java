@@ -0,0 +1,134 @@
+// Copyright 2020 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.core.world.generator.facetProviders;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import org.terasology.world.block.BlockAreac;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+/**
+ * Keeps the values of a two-dimensional facet by the world area they cover, so chunks that are stacked on top of each
+ * other compute them only once per column. The area includes the border of the facet.
+ * <p>
+ * Entries belong to a version of the seed and configuration of the provider; {@link #invalidate()} starts a new
+ * one, so values computed with old settings are never returned, even if their computation finishes late. The cache is
+ * bounded by the memory of the values and safe to use from several threads.
+ */
+final class ColumnFacetCache<T> {
+
+    private static final long MAX_BYTES = 8 * 1024 * 1024;
+
+    private static final class Key {
+        /**
+         * The minimum and size of each area
+         */
+        private final int[] bounds;
+        private final long version;
+
+        Key(BlockAreac[] areas, long version) {
+            this.bounds = new int[areas.length * 4];
+            for (int i = 0; i < areas.length; i++) {
+                bounds[i * 4] = areas[i].minX();
+                bounds[i * 4 + 1] = areas[i].minY();
+                bounds[i * 4 + 2] = areas[i].getSizeX();
+                bounds[i * 4 + 3] = areas[i].getSizeY();
+            }
+            this.version = version;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return Arrays.equals(bounds, other.bounds) && version == other.version;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Arrays.hashCode(bounds) + Long.hashCode(version);
+        }
+    }
+
+    private final AtomicLong version = new AtomicLong();
+    private final Cache<Key, T> values;
+
+    private ColumnFacetCache(ToIntFunction<T> bytes) {
+        values = CacheBuilder.newBuilder()
+                .maximumWeight(MAX_BYTES)
+                .weigher((Key key, T value) -> bytes.applyAsInt(value))
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * @return a cache for the values of a single field
+     */
+    static ColumnFacetCache<float[]> ofField() {
+        return new ColumnFacetCache<>(value -> value.length * Float.BYTES);
+    }
+
+    /**
+     * @return a cache for the values of several fields that are computed together
+     */
+    static ColumnFacetCache<float[][]> ofFields() {
+        return new ColumnFacetCache<>(value -> {
+            int bytes = 0;
+            for (float[] field : value) {
+                bytes += field.length * Float.BYTES;
+            }
+            return bytes;
+        });
+    }
+
+    /**
+     * Returns the values of the area, computing them if they are not cached. Concurrent requests for the same area
+     * wait for a single computation.
+     *
+     * @param compute computes the values of the area row by row
+     * @return the shared values, which must not be modified
+     */
+    T get(BlockAreac area, Supplier<T> compute) {
+        return get(new BlockAreac[] {area}, compute);
+    }
+
+    /**
+     * Returns the values of several fields that are computed together, keyed by the areas of all of them, since the
+     * borders of the fields can change independently.
+     *
+     * @param areas the area of each field
+     * @param compute computes the values of the areas
+     * @return the shared values, which must not be modified
+     */
+    T get(BlockAreac[] areas, Supplier<T> compute) {
+        try {
+            return values.get(new Key(areas, version.get()), compute::get);
+        } catch (ExecutionException e) {
+            // suppliers cannot throw checked exceptions
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Drops all values, to be called when the seed or configuration change.
+     */
+    void invalidate() {
+        version.incrementAndGet();
+        values.invalidateAll();
+    }
+
+    CacheStats getStats() {
+        return values.stats();
+    }
+}
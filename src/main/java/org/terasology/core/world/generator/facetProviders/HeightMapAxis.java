@@ -0,0 +1,109 @@
+// Copyright 2020 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.core.world.generator.facetProviders;
+
+import com.google.common.math.IntMath;
+import org.terasology.core.world.generator.facetProviders.HeightMapSurfaceHeightProvider.WrapMode;
+import org.terasology.math.TeraMath;
+
+/**
+ * The heightmap texels and interpolation weights for a run of world coordinates along one axis.
+ * Computing them once per region row or column avoids repeating the wrap mode logic for every block.
+ */
+final class HeightMapAxis {
+    /**
+     * The texel at or before each coordinate
+     */
+    final int[] index0;
+
+    /**
+     * The texel after {@link #index0}, with the wrap mode applied
+     */
+    final int[] index1;
+
+    /**
+     * The texel before {@link #index0}, with the wrap mode applied
+     */
+    final int[] indexBefore;
+
+    /**
+     * The texel after {@link #index1}, with the wrap mode applied
+     */
+    final int[] indexAfter;
+
+    /**
+     * The position between {@link #index0} and {@link #index1} in [0..1)
+     */
+    final float[] weight;
+
+    private HeightMapAxis(int length) {
+        index0 = new int[length];
+        index1 = new int[length];
+        indexBefore = new int[length];
+        indexAfter = new int[length];
+        weight = new float[length];
+    }
+
+    /**
+     * @param min the first world coordinate
+     * @param length the number of coordinates
+     * @param mapSize the number of texels of the heightmap along this axis
+     * @param scale the number of blocks per texel
+     * @param wrapMode how coordinates outside of the map are treated
+     */
+    static HeightMapAxis of(int min, int length, int mapSize, int scale, WrapMode wrapMode) {
+        HeightMapAxis axis = new HeightMapAxis(length);
+        for (int i = 0; i < length; i++) {
+            int pos = min + i;
+            switch (wrapMode) {
+                case CLAMP:
+                    axis.index0[i] = TeraMath.clamp(pos, 0, mapSize * scale - 1) / scale;
+                    axis.index1[i] = TeraMath.clamp(axis.index0[i] + 1, 0, mapSize - 1);
+                    axis.indexBefore[i] = TeraMath.clamp(axis.index0[i] - 1, 0, mapSize - 1);
+                    axis.indexAfter[i] = TeraMath.clamp(axis.index0[i] + 2, 0, mapSize - 1);
+                    break;
+                case REPEAT:
+                    axis.index0[i] = IntMath.mod(pos, mapSize * scale) / scale;
+                    axis.index1[i] = IntMath.mod(axis.index0[i] + 1, mapSize);
+                    axis.indexBefore[i] = IntMath.mod(axis.index0[i] - 1, mapSize);
+                    axis.indexAfter[i] = IntMath.mod(axis.index0[i] + 2, mapSize);
+                    break;
+                default:
+                    throw new UnsupportedOperationException("Not supported: " + wrapMode);
+            }
+            axis.weight[i] = IntMath.mod(pos, scale) / (float) scale;
+        }
+        return axis;
+    }
+
+    /**
+     * Like {@link #of}, but for a grid of cells stretched over the heightmap instead of its texels. Only the cells around
+     * each coordinate are resolved, not the ones before and after them.
+     *
+     * @param mapSize the number of texels of the heightmap along this axis
+     * @param scale the number of blocks per texel
+     * @param cells the number of cells along this axis
+     */
+    static HeightMapAxis ofCells(int min, int length, int mapSize, int scale, int cells, WrapMode wrapMode) {
+        HeightMapAxis axis = new HeightMapAxis(length);
+        long blocks = (long) mapSize * scale;
+        for (int i = 0; i < length; i++) {
+            long pos;
+            switch (wrapMode) {
+                case CLAMP:
+                    pos = Math.max(0, Math.min(min + i, blocks - 1));
+                    break;
+                case REPEAT:
+                    pos = Math.floorMod(min + i, blocks);
+                    break;
+                default:
+                    throw new UnsupportedOperationException("Not supported: " + wrapMode);
+            }
+            double cell = (double) pos * cells / blocks;
+            axis.index0[i] = (int) cell;
+            axis.index1[i] = wrapMode == WrapMode.CLAMP ? Math.min(axis.index0[i] + 1, cells - 1) : (axis.index0[i] + 1) % cells;
+            axis.weight[i] = (float) (cell - axis.index0[i]);
+        }
+        return axis;
+    }
+}
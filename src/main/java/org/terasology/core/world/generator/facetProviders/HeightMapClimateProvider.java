@@ -0,0 +1,278 @@
+// Copyright 2020 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.core.world.generator.facetProviders;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terasology.core.world.generator.ClimateCache;
+import org.terasology.core.world.generator.ClimateSimulator;
+import org.terasology.core.world.generator.FloatGrid;
+import org.terasology.engine.paths.PathManager;
+import org.terasology.math.TeraMath;
+import org.terasology.world.block.BlockAreac;
+import org.terasology.world.generation.Facet;
+import org.terasology.world.generation.FacetProvider;
+import org.terasology.world.generation.GeneratingRegion;
+import org.terasology.world.generation.Produces;
+import org.terasology.world.generation.Requires;
+import org.terasology.world.generation.facets.SeaLevelFacet;
+import org.terasology.world.generation.facets.SurfaceHumidityFacet;
+import org.terasology.world.generation.facets.SurfaceTemperatureFacet;
+
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Derives surface temperature and humidity from the heightmap of a {@link HeightMapSurfaceHeightProvider}
+ * using a {@link ClimateSimulator}. The climate is computed once per heightmap (and cached on disk), after that
+ * every region is a bilinear lookup into the climate maps.
+ * <p>
+ * The climate is computed in the background. Regions wait for it only if there is no climate yet; after the heightmap or
+ * its settings changed, the previous climate is used until the new one is ready.
+ * <p>
+ * The simulator needs a square map, so the heightmap is resampled to a square grid as wide as its longer side, but
+ * at most {@link #MAX_CLIMATE_SIZE}: larger heightmaps are sampled at a coarser resolution for the climate, which varies
+ * slowly anyway. The grid always covers the whole heightmap, so the climate of a heightmap that is not square is
+ * stretched along its shorter side.
+ */
+@Produces({SurfaceTemperatureFacet.class, SurfaceHumidityFacet.class})
+@Requires(@Facet(SeaLevelFacet.class))
+public class HeightMapClimateProvider implements FacetProvider {
+
+    /**
+     * The largest climate map that is simulated, in pixels per side.
+     */
+    static final int MAX_CLIMATE_SIZE = 1024;
+
+    private static final Logger logger = LoggerFactory.getLogger(HeightMapClimateProvider.class);
+
+    /**
+     * Computes the climate of changed heightmaps, one at a time.
+     */
+    private static final ExecutorService CLIMATE_EXECUTOR = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setNameFormat("Climate simulator %d").setDaemon(true).build());
+
+    private final HeightMapSurfaceHeightProvider heightProvider;
+    private final Path cacheDirectory;
+
+    /**
+     * The climate that is currently served
+     */
+    private volatile Climate climate;
+
+    /**
+     * The climate that is being computed, or the last one that was computed
+     */
+    private Climate.Key pendingKey;
+    private CompletableFuture<Climate> pending;
+
+    /**
+     * @param heightProvider the provider whose heightmap, wrap mode and scale are used
+     */
+    public HeightMapClimateProvider(HeightMapSurfaceHeightProvider heightProvider) {
+        this(heightProvider, PathManager.getInstance().getHomePath().resolve("cache").resolve("climate"));
+    }
+
+    /**
+     * @param cacheDirectory where the computed climate is cached
+     */
+    HeightMapClimateProvider(HeightMapSurfaceHeightProvider heightProvider, Path cacheDirectory) {
+        this.heightProvider = heightProvider;
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    @Override
+    public void setSeed(long seed) {
+    }
+
+    @Override
+    public void process(GeneratingRegion region) {
+        SeaLevelFacet seaLevelFacet = region.getRegionFacet(SeaLevelFacet.class);
+        HeightMapSurfaceHeightProvider.Snapshot heights = heightProvider.getSnapshot();
+        Climate current = getClimate(heights, seaLevelFacet.getSeaLevel());
+
+        SurfaceTemperatureFacet temperatureFacet = new SurfaceTemperatureFacet(region.getRegion(),
+                region.getBorderForFacet(SurfaceTemperatureFacet.class));
+        float[] temperature = Climate.sample(current.simulator.getClimate(), heights, temperatureFacet.getWorldArea());
+        for (int i = 0; i < temperature.length; ++i) {
+            // the simulator yields -1 at the poles to 1 at the equator, the biomes expect 0 to 1 like the noise providers
+            temperature[i] = TeraMath.clamp((temperature[i] + 1) / 2);
+        }
+        temperatureFacet.set(temperature);
+        region.setRegionFacet(SurfaceTemperatureFacet.class, temperatureFacet);
+
+        SurfaceHumidityFacet humidityFacet = new SurfaceHumidityFacet(region.getRegion(),
+                region.getBorderForFacet(SurfaceHumidityFacet.class));
+        float[] humidity = Climate.sample(current.simulator.getHumidity(), heights, humidityFacet.getWorldArea());
+        for (int i = 0; i < humidity.length; ++i) {
+            // the simulator yields the normalized distance from water, which is dry when far away
+            humidity[i] = TeraMath.clamp(1 - humidity[i]);
+        }
+        humidityFacet.set(humidity);
+        region.setRegionFacet(SurfaceHumidityFacet.class, humidityFacet);
+    }
+
+    /**
+     * @return the climate of the heightmap if it is ready, the previous climate while it is being computed, or the
+     *         climate of the heightmap once it is computed if there is no previous one
+     */
+    private Climate getClimate(HeightMapSurfaceHeightProvider.Snapshot heights, float seaLevel) {
+        Climate.Key key = new Climate.Key(heights, seaLevel);
+        Climate current = climate;
+        if (current != null && current.key.equals(key)) {
+            return current;
+        }
+        CompletableFuture<Climate> future = requestClimate(key);
+        if (current != null) {
+            return current;
+        }
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @return the computation of the latest requested climate, or null if there is none
+     */
+    synchronized CompletableFuture<?> getClimateComputation() {
+        return pending;
+    }
+
+    /**
+     * Starts computing the climate unless it is already being computed.
+     */
+    private synchronized CompletableFuture<Climate> requestClimate(Climate.Key key) {
+        if (pending == null || !pendingKey.equals(key)) {
+            CompletableFuture<Climate> future = CompletableFuture.supplyAsync(() -> computeClimate(key), CLIMATE_EXECUTOR);
+            future.whenComplete((result, e) -> publish(key, result, e));
+            pendingKey = key;
+            pending = future;
+        }
+        return pending;
+    }
+
+    private synchronized void publish(Climate.Key key, Climate result, Throwable e) {
+        if (e != null) {
+            logger.error("Could not compute the climate of height map '{}'", key.heights.getHeightMapName(), e);
+            if (key.equals(pendingKey)) {
+                // the next region tries again
+                pending = null;
+            }
+        } else if (key.equals(pendingKey)) {
+            climate = result;
+        }
+    }
+
+    /**
+     * The simulator expects heights relative to the sea level, where values below 1 are water.
+     */
+    private Climate computeClimate(Climate.Key key) {
+        HeightMapStore heightmap = key.heights.getHeightmap();
+        int width = heightmap.getWidth();
+        int height = heightmap.getHeight();
+        int size = Math.min(Math.max(width, height), MAX_CLIMATE_SIZE);
+        if (width != height) {
+            logger.info("Height map '{}' is not square ({}x{}), its climate is simulated on a {}x{} grid stretched over it",
+                    key.heights.getHeightMapName(), width, height, size, size);
+        }
+        FloatGrid relativeHeight = FloatGrid.onHeap(size, size);
+        float offset = key.heights.getHeightOffset();
+        float scale = key.heights.getHeightScale();
+        for (int y = 0; y < size; y++) {
+            int mapY = (int) ((long) y * height / size);
+            for (int x = 0; x < size; x++) {
+                int mapX = (int) ((long) x * width / size);
+                float elevation = offset + scale * heightmap.get(mapX, mapY);
+                relativeHeight.set(x, y, elevation / key.seaLevel);
+            }
+        }
+
+        // the relative heights hold everything the climate depends on, so the cache is named after them
+        ClimateSimulator simulator = ClimateCache.inDirectory(cacheDirectory, relativeHeight).getOrCompute(relativeHeight, null);
+        return new Climate(key, simulator);
+    }
+
+    /**
+     * The climate of a heightmap, together with the settings it was computed for.
+     */
+    private static final class Climate {
+        private final Key key;
+        private final ClimateSimulator simulator;
+
+        Climate(Key key, ClimateSimulator simulator) {
+            this.key = key;
+            this.simulator = simulator;
+        }
+
+        /**
+         * Bilinear interpolation of a climate map, stretched over the heightmap.
+         *
+         * @param heights the current heightmap and sampling settings, which may be newer than the climate
+         */
+        static float[] sample(FloatGrid grid, HeightMapSurfaceHeightProvider.Snapshot heights, BlockAreac area) {
+            int scale = heights.getTerrainScale();
+            HeightMapSurfaceHeightProvider.WrapMode wrapMode = heights.getWrapMode();
+            HeightMapStore heightmap = heights.getHeightmap();
+            HeightMapAxis xAxis = HeightMapAxis.ofCells(area.minX(), area.getSizeX(), heightmap.getWidth(), scale, grid.getWidth(), wrapMode);
+            HeightMapAxis zAxis = HeightMapAxis.ofCells(area.minY(), area.getSizeY(), heightmap.getHeight(), scale, grid.getHeight(), wrapMode);
+
+            float[] result = new float[area.getSizeX() * area.getSizeY()];
+            int i = 0;
+            for (int z = 0; z < area.getSizeY(); z++) {
+                int row0 = zAxis.index0[z] * grid.getWidth();
+                int row1 = zAxis.index1[z] * grid.getWidth();
+                float relZ = zAxis.weight[z];
+                for (int x = 0; x < area.getSizeX(); x++) {
+                    float relX = xAxis.weight[x];
+                    float top = TeraMath.lerp(grid.get(row0 + xAxis.index0[x]), grid.get(row0 + xAxis.index1[x]), relX);
+                    float bottom = TeraMath.lerp(grid.get(row1 + xAxis.index0[x]), grid.get(row1 + xAxis.index1[x]), relX);
+                    result[i++] = TeraMath.lerp(top, bottom, relZ);
+                }
+            }
+            return result;
+        }
+
+        /**
+         * What the climate depends on: the heightmap, how its values become heights, and the sea level.
+         * The sampling settings of the snapshot are not compared, they only change how the climate is looked up.
+         */
+        private static final class Key {
+            private final HeightMapSurfaceHeightProvider.Snapshot heights;
+            private final float seaLevel;
+
+            Key(HeightMapSurfaceHeightProvider.Snapshot heights, float seaLevel) {
+                this.heights = heights;
+                this.seaLevel = seaLevel;
+            }
+
+            @Override
+            public boolean equals(Object o) {
+                if (this == o) {
+                    return true;
+                }
+                if (!(o instanceof Key)) {
+                    return false;
+                }
+                Key other = (Key) o;
+                return heights.getHeightmap() == other.heights.getHeightmap()
+                        && heights.getHeightOffset() == other.heights.getHeightOffset()
+                        && heights.getHeightScale() == other.heights.getHeightScale()
+                        && seaLevel == other.seaLevel;
+            }
+
+            @Override
+            public int hashCode() {
+                return System.identityHashCode(heights.getHeightmap());
+            }
+        }
+    }
+}
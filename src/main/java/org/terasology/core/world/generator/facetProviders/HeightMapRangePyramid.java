@@ -0,0 +1,204 @@
+// Copyright 2020 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.core.world.generator.facetProviders;
+
+import com.google.common.base.Preconditions;
+import org.terasology.core.world.generator.FloatGrid;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The lowest and highest pixel of a heightmap in blocks of 8x8, 16x16, 32x32 ... pixels, up to a single block that
+ * covers the whole map. It answers what range of heights an area of the map spans by looking at a handful of blocks of about
+ * the size of the area, no matter how large the area is.
+ * <p>
+ * The ranges are conservative: they contain every height of the area, but may be wider because the blocks reach
+ * beyond it. The blocks that are looked at are at most a quarter of the size of the area; areas of up to 16x16 pixels
+ * are read from the map itself.
+ * <p>
+ * The pyramid is kept outside the Java heap and takes about a 24th of the memory of the map as floats: the minimums
+ * and maximums each take a 64th, a 256th ... of it, which adds up to a 48th. It is not changed once built.
+ */
+public final class HeightMapRangePyramid {
+
+    /**
+     * A range of heights.
+     */
+    public static final class Range {
+        private final float min;
+        private final float max;
+
+        public Range(float min, float max) {
+            this.min = min;
+            this.max = max;
+        }
+
+        public float getMin() {
+            return min;
+        }
+
+        public float getMax() {
+            return max;
+        }
+
+        /**
+         * @return the smallest range that contains both
+         */
+        public Range union(Range other) {
+            return new Range(Math.min(min, other.min), Math.max(max, other.max));
+        }
+
+        @Override
+        public String toString() {
+            return "[" + min + ", " + max + "]";
+        }
+    }
+
+    /**
+     * The first level that is kept, with blocks of 2^3 pixels; level 0 is the map itself. Levels 1 and 2 would take
+     * fifteen sixteenths of the memory of the pyramid, and the areas they answer are small enough to read from the map.
+     */
+    private static final int FIRST_LEVEL = 3;
+
+    private final HeightMapStore map;
+
+    /**
+     * The minimum and maximum of the blocks of level FIRST_LEVEL + i, which are 2^(FIRST_LEVEL + i) pixels wide
+     */
+    private final FloatGrid[] mins;
+    private final FloatGrid[] maxs;
+
+    /**
+     * Reads every pixel of the map once.
+     */
+    public HeightMapRangePyramid(HeightMapStore map) {
+        this.map = map;
+
+        List<FloatGrid> minLevels = new ArrayList<>();
+        List<FloatGrid> maxLevels = new ArrayList<>();
+        int blockSize = 1 << FIRST_LEVEL;
+        int width = (map.getWidth() + blockSize - 1) / blockSize;
+        int height = (map.getHeight() + blockSize - 1) / blockSize;
+        FloatGrid min = FloatGrid.offHeap(width, height);
+        FloatGrid max = FloatGrid.offHeap(width, height);
+        reduceMap(min, max);
+        minLevels.add(min);
+        maxLevels.add(max);
+        while (width > 1 || height > 1) {
+            width = (width + 1) / 2;
+            height = (height + 1) / 2;
+            FloatGrid nextMin = FloatGrid.offHeap(width, height);
+            FloatGrid nextMax = FloatGrid.offHeap(width, height);
+            reduce(min, nextMin, Math::min);
+            reduce(max, nextMax, Math::max);
+            minLevels.add(nextMin);
+            maxLevels.add(nextMax);
+            min = nextMin;
+            max = nextMax;
+        }
+        mins = minLevels.toArray(new FloatGrid[0]);
+        maxs = maxLevels.toArray(new FloatGrid[0]);
+    }
+
+    private void reduceMap(FloatGrid min, FloatGrid max) {
+        min.fill(Float.POSITIVE_INFINITY);
+        max.fill(Float.NEGATIVE_INFINITY);
+        for (int y = 0; y < map.getHeight(); y++) {
+            for (int x = 0; x < map.getWidth(); x++) {
+                float value = map.get(x, y);
+                int cx = x >> FIRST_LEVEL;
+                int cy = y >> FIRST_LEVEL;
+                min.set(cx, cy, Math.min(min.get(cx, cy), value));
+                max.set(cx, cy, Math.max(max.get(cx, cy), value));
+            }
+        }
+    }
+
+    private interface Reduction {
+        float apply(float a, float b);
+    }
+
+    private static void reduce(FloatGrid from, FloatGrid to, Reduction reduction) {
+        for (int y = 0; y < to.getHeight(); y++) {
+            int y0 = 2 * y;
+            int y1 = Math.min(y0 + 1, from.getHeight() - 1);
+            for (int x = 0; x < to.getWidth(); x++) {
+                int x0 = 2 * x;
+                int x1 = Math.min(x0 + 1, from.getWidth() - 1);
+                float top = reduction.apply(from.get(x0, y0), from.get(x1, y0));
+                float bottom = reduction.apply(from.get(x0, y1), from.get(x1, y1));
+                to.set(x, y, reduction.apply(top, bottom));
+            }
+        }
+    }
+
+    /**
+     * @return the number of levels that are kept
+     */
+    public int getLevels() {
+        return mins.length;
+    }
+
+    /**
+     * @return the number of minimums and maximums that are kept
+     */
+    public long getSize() {
+        long size = 0;
+        for (int i = 0; i < mins.length; i++) {
+            size += mins[i].size() + maxs[i].size();
+        }
+        return size;
+    }
+
+    /**
+     * @param minX the first column, inclusive
+     * @param minY the first row, inclusive
+     * @param maxX the last column, inclusive
+     * @param maxY the last row, inclusive
+     * @return a range that contains the heights of all pixels of the area
+     */
+    public Range getRange(int minX, int minY, int maxX, int maxY) {
+        Preconditions.checkArgument(0 <= minX && minX <= maxX && maxX < map.getWidth()
+                && 0 <= minY && minY <= maxY && maxY < map.getHeight(),
+                "Area (%s, %s) - (%s, %s) is not within the map", minX, minY, maxX, maxY);
+
+        // blocks of a quarter of the size of the area, so at most 5x5 of them cover it
+        int extent = Math.max(maxX - minX, maxY - minY) + 1;
+        int level = Math.min(Math.max(0, ceilLog2(extent) - 2), FIRST_LEVEL + mins.length - 1);
+
+        float min = Float.POSITIVE_INFINITY;
+        float max = Float.NEGATIVE_INFINITY;
+        if (level < FIRST_LEVEL) {
+            for (int y = minY; y <= maxY; y++) {
+                for (int x = minX; x <= maxX; x++) {
+                    float value = map.get(x, y);
+                    min = Math.min(min, value);
+                    max = Math.max(max, value);
+                }
+            }
+        } else {
+            FloatGrid levelMin = mins[level - FIRST_LEVEL];
+            FloatGrid levelMax = maxs[level - FIRST_LEVEL];
+            for (int y = minY >> level; y <= maxY >> level; y++) {
+                for (int x = minX >> level; x <= maxX >> level; x++) {
+                    min = Math.min(min, levelMin.get(x, y));
+                    max = Math.max(max, levelMax.get(x, y));
+                }
+            }
+        }
+        return new Range(min, max);
+    }
+
+    /**
+     * @return the lowest and highest pixel of the whole map
+     */
+    public Range getRange() {
+        FloatGrid top = mins[mins.length - 1];
+        return new Range(top.get(0, 0), maxs[maxs.length - 1].get(0, 0));
+    }
+
+    private static int ceilLog2(int value) {
+        return 32 - Integer.numberOfLeadingZeros(value - 1);
+    }
+}
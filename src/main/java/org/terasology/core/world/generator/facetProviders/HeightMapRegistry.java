@@ -0,0 +1,197 @@
+// Copyright 2020 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.core.world.generator.facetProviders;
+
+import com.google.common.base.Preconditions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terasology.assets.ResourceUrn;
+
+import java.lang.ref.WeakReference;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Shares loaded heightmaps between all providers of the process, so worlds or previews that use the same map hold a
+ * single copy of it. Heightmaps are keyed by their urn and the format they were read from, and counted by the leases
+ * taken on them; the last lease to be released drops the heightmap.
+ * <p>
+ * Only the leases keep a heightmap alive; the registry itself refers to it weakly. Providers have no hook that tells
+ * them the world was closed, so a provider that is dropped without releasing its lease still lets its heightmap go once
+ * nothing else uses it.
+ * <p>
+ * The stores must not be modified once they are shared. The texture stores, {@link TiledHeightMapStore} and
+ * {@link MappedHeightMapStore} are all safe to read from several threads.
+ */
+final class HeightMapRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(HeightMapRegistry.class);
+
+    private static final ConcurrentMap<Key, WeakReference<Entry>> ENTRIES = new ConcurrentHashMap<>();
+
+    private HeightMapRegistry() {
+        // no instances
+    }
+
+    private static final class Key {
+        private final ResourceUrn urn;
+        private final String format;
+
+        Key(ResourceUrn urn, String format) {
+            this.urn = urn;
+            this.format = format;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return urn.equals(other.urn) && format.equals(other.format);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(urn, format);
+        }
+
+        @Override
+        public String toString() {
+            return urn + " (" + format + ")";
+        }
+    }
+
+    private static final class Entry {
+        private final CompletableFuture<HeightMapStore> store = new CompletableFuture<>();
+
+        /**
+         * Only changed while the registry computes the key of the entry, which makes the changes atomic
+         */
+        private int references = 1;
+    }
+
+    /**
+     * One use of a shared heightmap. It must be released once the heightmap is no longer needed.
+     */
+    static final class Lease implements AutoCloseable {
+        private final Key key;
+        private final Entry entry;
+        private final HeightMapStore store;
+        private boolean released;
+
+        private Lease(Key key, Entry entry, HeightMapStore store) {
+            this.key = key;
+            this.entry = entry;
+            this.store = store;
+        }
+
+        HeightMapStore getStore() {
+            return store;
+        }
+
+        /**
+         * Releases the heightmap. Releasing a lease more than once has no effect.
+         */
+        @Override
+        public void close() {
+            synchronized (this) {
+                if (released) {
+                    return;
+                }
+                released = true;
+            }
+            release(key, entry);
+        }
+
+        @Override
+        public String toString() {
+            return key + ": " + store;
+        }
+    }
+
+    /**
+     * Returns the shared heightmap, loading it if nobody uses it yet. The heightmap is loaded on the calling thread
+     * without blocking other heightmaps; concurrent requests for the same heightmap wait for that single load.
+     *
+     * @param urn the heightmap asset
+     * @param format the format the heightmap is read from, e.g. the extension of the file
+     * @param loader loads the heightmap if it is not shared yet
+     * @return a new lease on the heightmap
+     * @throws RuntimeException whatever the loader threw, also for the requests that waited for it
+     */
+    static Lease acquire(ResourceUrn urn, String format, Supplier<HeightMapStore> loader) {
+        Key key = new Key(urn, format);
+        Entry created = new Entry();
+        Entry[] acquired = new Entry[1];
+        ENTRIES.compute(key, (k, reference) -> {
+            Entry existing = reference == null ? null : reference.get();
+            if (existing == null) {
+                acquired[0] = created;
+                return new WeakReference<>(created);
+            }
+            existing.references++;
+            acquired[0] = existing;
+            return reference;
+        });
+        Entry entry = acquired[0];
+
+        if (entry == created) {
+            try {
+                HeightMapStore store = loader.get();
+                Preconditions.checkNotNull(store, "No height map loaded for %s", key);
+                entry.store.complete(store);
+            } catch (RuntimeException e) {
+                // the next request tries again
+                ENTRIES.computeIfPresent(key, (k, reference) -> reference.get() == entry ? null : reference);
+                entry.store.completeExceptionally(e);
+                throw e;
+            }
+        } else {
+            logger.info("Sharing height map {}", key);
+        }
+
+        try {
+            return new Lease(key, entry, entry.store.join());
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private static void release(Key key, Entry entry) {
+        ENTRIES.computeIfPresent(key, (k, reference) -> {
+            if (reference.get() != entry || --entry.references > 0) {
+                return reference;
+            }
+            logger.info("Released height map {}", key);
+            return null;
+        });
+    }
+
+    /**
+     * @return the number of leases on the heightmap, 0 if it is not loaded; leases that were dropped without being
+     *         released are counted until their heightmap is collected
+     */
+    static int getReferences(ResourceUrn urn, String format) {
+        int[] references = new int[1];
+        ENTRIES.computeIfPresent(new Key(urn, format), (k, reference) -> {
+            Entry entry = reference.get();
+            if (entry == null) {
+                return null;
+            }
+            references[0] = entry.references;
+            return reference;
+        });
+        return references[0];
+    }
+}
@@ -0,0 +1,42 @@
+// Copyright 2020 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.core.world.generator.facetProviders;
+
+import org.terasology.core.world.generator.FloatGrid;
+
+/**
+ * Read access to the pixels of a heightmap, wherever they are stored.
+ */
+public interface HeightMapStore {
+
+    int getWidth();
+
+    int getHeight();
+
+    /**
+     * @return the height of the pixel, usually in [0..1]
+     */
+    float get(int x, int y);
+
+    /**
+     * @return a store that reads from the given grid
+     */
+    static HeightMapStore of(FloatGrid grid) {
+        return new HeightMapStore() {
+            @Override
+            public int getWidth() {
+                return grid.getWidth();
+            }
+
+            @Override
+            public int getHeight() {
+                return grid.getHeight();
+            }
+
+            @Override
+            public float get(int x, int y) {
+                return grid.get(x, y);
+            }
+        };
+    }
+}
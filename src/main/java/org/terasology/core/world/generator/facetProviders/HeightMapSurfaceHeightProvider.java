@@ -16,27 +16,38 @@
 package org.terasology.core.world.generator.facetProviders;
 
 import com.google.common.math.IntMath;
-import org.joml.Vector2ic;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.terasology.assets.ResourceUrn;
+import org.terasology.engine.paths.PathManager;
 import org.terasology.entitySystem.Component;
 import org.terasology.math.TeraMath;
-import org.terasology.math.geom.BaseVector2i;
 import org.terasology.nui.properties.OneOf.Enum;
 import org.terasology.nui.properties.OneOf.List;
 import org.terasology.nui.properties.Range;
 import org.terasology.rendering.assets.texture.Texture;
 import org.terasology.utilities.Assets;
+import org.terasology.world.block.BlockAreac;
 import org.terasology.world.generation.Border3D;
 import org.terasology.world.generation.ConfigurableFacetProvider;
 import org.terasology.world.generation.GeneratingRegion;
 import org.terasology.world.generation.Produces;
 import org.terasology.world.generation.facets.ElevationFacet;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.IntBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Produces(ElevationFacet.class)
 public class HeightMapSurfaceHeightProvider implements ConfigurableFacetProvider {
@@ -46,12 +57,65 @@ public class HeightMapSurfaceHeightProvider implements ConfigurableFacetProvider
         REPEAT
     }
 
-    private static final Logger logger = LoggerFactory.getLogger(HeightMapSurfaceHeightProvider.class);
+    public enum InterpolationMode {
+        /**
+         * Faded linear interpolation between the 2x2 nearest texels
+         */
+        BILINEAR_FADE,
+        /**
+         * Catmull-Rom interpolation through the 4x4 nearest texels, which is smooth across texel edges
+         */
+        BICUBIC
+    }
 
-    private float[][] heightmap;
+    private static final Logger logger = LoggerFactory.getLogger(HeightMapSurfaceHeightProvider.class);
 
-    private int mapWidth;
-    private int mapHeight;
+    /**
+     * The width and height of the tiles of image heightmaps, in pixels.
+     */
+    private static final int TILE_SIZE = 256;
+
+    /**
+     * The number of image heightmap tiles kept in memory, 64 MB worth of heights.
+     */
+    private static final int MAX_TILES = 256;
+
+    /**
+     * The memory for heights interpolated at world resolution.
+     */
+    private static final long UPSAMPLED_TILE_BYTES = 32 * 1024 * 1024;
+
+    /**
+     * The extensions of raw heightmap files, in the order they are looked for.
+     */
+    private static final String[] RAW_EXTENSIONS = {"npy", "r16", "raw", "r32"};
+
+    /**
+     * Loads heightmaps after a configuration change, one at a time.
+     */
+    private static final ExecutorService RELOAD_EXECUTOR = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setNameFormat("Height map loader %d").setDaemon(true).build());
+
+    /**
+     * Builds the range pyramids of heightmaps, which reads the whole map, without holding up regions or reloads.
+     */
+    private static final ExecutorService RANGE_EXECUTOR = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setNameFormat("Height range builder %d").setDaemon(true).build());
+
+    /**
+     * The heightmap that is currently served and the settings it is sampled with, replaced as a whole when a new
+     * heightmap has been loaded or the configuration changed.
+     */
+    private volatile Snapshot snapshot;
+    private final AtomicLong reloadGeneration = new AtomicLong();
+    private volatile CompletableFuture<HeightMapStore> reload = CompletableFuture.completedFuture(null);
+
+    private final UpsampledTileCache upsampledTiles = new UpsampledTileCache(UPSAMPLED_TILE_BYTES);
+
+    /**
+     * The regions that were filled with a single height because the heightmap is flat around them
+     */
+    private final AtomicLong flatRegions = new AtomicLong();
 
     private HeightMapConfiguration configuration = new HeightMapConfiguration();
 
@@ -62,87 +126,439 @@ public class HeightMapSurfaceHeightProvider implements ConfigurableFacetProvider
 
     @Override
     public void initialize() {
-        if (heightmap == null) {
-            reloadHeightmap();
+        if (snapshot == null) {
+            synchronized (this) {
+                if (snapshot == null) {
+                    String name = configuration.heightMap;
+                    swap(reloadGeneration.incrementAndGet(), name, acquireHeightmap(name));
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads a heightmap in the background. Until it is loaded, the previous heightmap keeps being used.
+     *
+     * @return completes with the new heightmap once it is in use; if another reload was requested in the meantime,
+     *         the heightmap is dropped in favour of the newer one
+     */
+    private CompletableFuture<HeightMapStore> reloadHeightmap(String name) {
+        long generation = reloadGeneration.incrementAndGet();
+        CompletableFuture<HeightMapStore> future = CompletableFuture.supplyAsync(() -> acquireHeightmap(name), RELOAD_EXECUTOR)
+                .thenApply(lease -> {
+                    swap(generation, name, lease);
+                    return lease.getStore();
+                });
+        future.exceptionally(e -> {
+            logger.error("Could not load height map '{}'", name, e);
+            return null;
+        });
+        reload = future;
+        return future;
+    }
+
+    private synchronized void swap(long generation, String name, HeightMapRegistry.Lease lease) {
+        if (generation != reloadGeneration.get()) {
+            logger.info("Dropping height map '{}', a newer one was requested", name);
+            lease.close();
+            return;
         }
+        Snapshot previous = snapshot;
+        // the configuration may have changed again while the heightmap was loading
+        snapshot = new Snapshot(new LoadedHeightMap(name, lease), configuration);
+        if (previous != null) {
+            logger.info("Replacing height map {}, upsampled tiles: {}, flat regions: {}", previous.heightmap.lease,
+                    upsampledTiles.getStats(), flatRegions.get());
+            // regions that are still being generated keep their own reference to the store
+            previous.heightmap.lease.close();
+        }
+        // the old tiles can never be hit again
+        upsampledTiles.invalidateAll();
     }
 
-    private void reloadHeightmap() {
-        logger.info("Reading height map '{}'", configuration.heightMap);
+    /**
+     * Takes a lease on the shared heightmap of that name, loading it if no other provider uses it.
+     * <p>
+     * A raw heightmap in the <code>heightmaps</code> folder of the home directory takes precedence over the texture
+     * asset of the same name. The file is chosen by its extension, in this order:
+     * <ul>
+     *     <li><code>.npy</code>: a NumPy array of <code>uint16</code> or <code>float32</code> values</li>
+     *     <li><code>.r16</code> or <code>.raw</code>: square, unsigned 16 bit little-endian</li>
+     *     <li><code>.r32</code>: square, 32 bit little-endian floats</li>
+     *     <li><code>.png</code>: an image like the texture assets, decoded in tiles as regions need them</li>
+     * </ul>
+     */
+    private static HeightMapRegistry.Lease acquireHeightmap(String name) {
+        ResourceUrn urn = new ResourceUrn("core", name);
+        Path folder = PathManager.getInstance().getHomePath().resolve("heightmaps");
+        for (String extension : RAW_EXTENSIONS) {
+            Path file = folder.resolve(name + "." + extension);
+            if (Files.isRegularFile(file)) {
+                try {
+                    // mapped files are paged in by the operating system, so they are read in place
+                    return HeightMapRegistry.acquire(urn, extension, () -> openRawHeightmap(file, extension));
+                } catch (UncheckedIOException e) {
+                    logger.error("Could not map raw height map '{}' - falling back to the texture", file, e.getCause());
+                    break;
+                }
+            }
+        }
+        Path image = folder.resolve(name + ".png");
+        if (Files.isRegularFile(image)) {
+            try {
+                return HeightMapRegistry.acquire(urn, "png", () -> openImage(image));
+            } catch (UncheckedIOException e) {
+                logger.error("Could not read height map image '{}' - falling back to the texture", image, e.getCause());
+            }
+        }
+        return HeightMapRegistry.acquire(urn, "texture", () -> {
+            logger.info("Reading height map '{}'", urn);
+            return openTexture(urn);
+        });
+    }
 
-        ResourceUrn urn = new ResourceUrn("core", configuration.heightMap);
+    /**
+     * The asset system has already decoded the whole texture, so its pixels are read in place rather than copied. To
+     * load a large heightmap lazily, put it into the <code>heightmaps</code> folder as a <code>.png</code> instead.
+     *
+     * @return a store that reads the pixels of the texture as they are needed
+     */
+    private static HeightMapStore openTexture(ResourceUrn urn) {
         Texture texture = Assets.getTexture(urn).get();
         ByteBuffer[] bb = texture.getData().getBuffers();
         IntBuffer intBuf = bb[0].asIntBuffer();
+        int width = texture.getWidth();
+        int height = texture.getHeight();
+
+        return new HeightMapStore() {
+            @Override
+            public int getWidth() {
+                return width;
+            }
+
+            @Override
+            public int getHeight() {
+                return height;
+            }
+
+            @Override
+            public float get(int x, int y) {
+                // texture data is row-major, one RGBA int per pixel
+                long val = intBuf.get(y * width + x) & 0xFFFFFFFFL;
+                return val / (256 * 256 * 256 * 256f);
+            }
+
+            @Override
+            public String toString() {
+                return width + "x" + height + " texture";
+            }
+        };
+    }
 
-        mapWidth = texture.getWidth();
-        mapHeight = texture.getHeight();
+    /**
+     * @return a store that decodes the tiles of the image when they are first read, keeping at most {@link #MAX_TILES}
+     * @throws UncheckedIOException if the file is not a readable image
+     */
+    private static HeightMapStore openImage(Path file) {
+        ImageTileLoader loader;
+        try {
+            loader = ImageTileLoader.open(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        TiledHeightMapStore store = new TiledHeightMapStore(loader.getWidth(), loader.getHeight(), TILE_SIZE, MAX_TILES, loader);
+        logger.info("Reading height map image {} in tiles: {}", loader, store);
+        return store;
+    }
 
-        heightmap = new float[mapWidth][mapHeight];
-        while (intBuf.position() < intBuf.limit()) {
-            int pos = intBuf.position();
-            long val = intBuf.get() & 0xFFFFFFFFL;
-            heightmap[pos % mapWidth][pos / mapWidth] = val / (256 * 256 * 256 * 256f);
+    /**
+     * @return the memory mapped heightmap
+     * @throws UncheckedIOException if the file cannot be mapped
+     */
+    private static HeightMapStore openRawHeightmap(Path file, String extension) {
+        MappedHeightMapStore store;
+        try {
+            switch (extension) {
+                case "npy":
+                    store = MappedHeightMapStore.openNpy(file);
+                    break;
+                case "r16":
+                case "raw":
+                    store = MappedHeightMapStore.openSquare(file, MappedHeightMapStore.Format.UNSIGNED_16, ByteOrder.LITTLE_ENDIAN);
+                    break;
+                case "r32":
+                    store = MappedHeightMapStore.openSquare(file, MappedHeightMapStore.Format.FLOAT_32, ByteOrder.LITTLE_ENDIAN);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown raw height map extension: " + extension);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
+        logger.info("Mapped raw height map {}", store);
+        return store;
     }
 
     @Override
     public void process(GeneratingRegion region) {
         Border3D border = region.getBorderForFacet(ElevationFacet.class);
         ElevationFacet facet = new ElevationFacet(region.getRegion(), border);
+        BlockAreac area = facet.getWorldArea();
+        int sizeX = area.getSizeX();
+        int sizeZ = area.getSizeY();
+
+        // one snapshot for the whole region, even if a reload finishes meanwhile
+        Snapshot current = getSnapshot();
+        HeightMapRangePyramid pyramid = current.heightmap.getRangePyramidIfBuilt();
+        // only the bilinear interpolation of equal texels gives exactly their height, so the bicubic one always runs to
+        // generate the same heights whether or not the pyramid has been built
+        HeightMapRangePyramid.Range range = pyramid == null || current.interpolation != InterpolationMode.BILINEAR_FADE ? null
+                : elevationRange(current, pyramid, area.minX(), area.minY(), sizeX, sizeZ);
+        if (range != null && range.getMin() == range.getMax()) {
+            // every texel the interpolation would read has the same height, e.g. on the sea floor
+            Arrays.fill(facet.getInternal(), range.getMin());
+            flatRegions.incrementAndGet();
+        } else {
+            upsampledTiles.fill(current.getHeightmap(), current.wrapMode, current.interpolation, current.terrainScale,
+                    current.heightOffset, current.heightScale, area.minX(), area.minY(), sizeX, sizeZ, facet.getInternal());
+        }
 
-        for (Vector2ic pos : facet.getWorldArea()) {
-            int xzScale = configuration.terrainScale;
-
-            int mapX0;
-            int mapZ0;
-            int mapX1;
-            int mapZ1;
-            switch (configuration.wrapMode) {
-                case CLAMP:
-                    mapX0 = TeraMath.clamp(pos.x(), 0, mapWidth * xzScale - 1) / xzScale;
-                    mapZ0 = TeraMath.clamp(pos.y(), 0, mapHeight * xzScale - 1) / xzScale;
-                    mapX1 = TeraMath.clamp(mapX0 + 1, 0, mapWidth - 1);
-                    mapZ1 = TeraMath.clamp(mapZ0 + 1, 0, mapHeight - 1);
-                    break;
-                case REPEAT:
-                    mapX0 = IntMath.mod(pos.x(), mapWidth * xzScale) / xzScale;
-                    mapZ0 = IntMath.mod(pos.y(), mapHeight * xzScale) / xzScale;
-                    mapX1 = IntMath.mod(mapX0 + 1, mapWidth);
-                    mapZ1 = IntMath.mod(mapZ0 + 1, mapHeight);
-                    break;
-                default:
-                    throw new UnsupportedOperationException("Not supported: " + configuration.wrapMode);
+        region.setRegionFacet(ElevationFacet.class, facet);
+    }
+
+    /**
+     * Interpolates the heightmap at world resolution.
+     *
+     * @param dest receives the heights of the area row by row
+     */
+    static void interpolate(HeightMapStore map, WrapMode wrapMode, InterpolationMode mode, int xzScale, float offset,
+                            float scale, int minX, int minZ, int sizeX, int sizeZ, float[] dest) {
+        // the texels and weights only depend on one coordinate each, so they are computed once per column and row
+        HeightMapAxis xAxis = HeightMapAxis.of(minX, sizeX, map.getWidth(), xzScale, wrapMode);
+        HeightMapAxis zAxis = HeightMapAxis.of(minZ, sizeZ, map.getHeight(), xzScale, wrapMode);
+        switch (mode) {
+            case BILINEAR_FADE:
+                interpolateBilinear(map, xAxis, zAxis, offset, scale, dest);
+                break;
+            case BICUBIC:
+                interpolateBicubic(map, xAxis, zAxis, offset, scale, dest);
+                break;
+            default:
+                throw new UnsupportedOperationException("Not supported: " + mode);
+        }
+    }
+
+    private static void interpolateBilinear(HeightMapStore map, HeightMapAxis xAxis, HeightMapAxis zAxis,
+                                            float offset, float scale, float[] dest) {
+        int sizeX = xAxis.weight.length;
+        int sizeZ = zAxis.weight.length;
+        float[] fadeX = fade(xAxis.weight);
+        float[] fadeZ = fade(zAxis.weight);
+
+        // the texels of the two map rows around the current z, refetched only when z moves on to the next texel
+        float[] p00 = new float[sizeX];
+        float[] p10 = new float[sizeX];
+        float[] p01 = new float[sizeX];
+        float[] p11 = new float[sizeX];
+        int loadedZ0 = -1;
+        int loadedZ1 = -1;
+
+        for (int z = 0; z < sizeZ; z++) {
+            if (zAxis.index0[z] != loadedZ0 || zAxis.index1[z] != loadedZ1) {
+                loadedZ0 = zAxis.index0[z];
+                loadedZ1 = zAxis.index1[z];
+                loadRow(map, loadedZ0, xAxis.index0, p00);
+                loadRow(map, loadedZ0, xAxis.index1, p10);
+                loadRow(map, loadedZ1, xAxis.index0, p01);
+                loadRow(map, loadedZ1, xAxis.index1, p11);
             }
 
-            double p00 = heightmap[mapX0][mapZ0];
-            double p10 = heightmap[mapX1][mapZ0];
-            double p11 = heightmap[mapX1][mapZ1];
-            double p01 = heightmap[mapX0][mapZ1];
+            float relZ = fadeZ[z];
+            int rowStart = z * sizeX;
+            for (int x = 0; x < sizeX; x++) {
+                float left = p00[x] + relZ * (p01[x] - p00[x]);
+                float right = p10[x] + relZ * (p11[x] - p10[x]);
+                dest[rowStart + x] = offset + scale * (left + fadeX[x] * (right - left));
+            }
+        }
+    }
 
-            float relX = IntMath.mod(pos.x(), xzScale) / (float) xzScale;
-            float relZ = IntMath.mod(pos.y(), xzScale) / (float) xzScale;
+    private static void interpolateBicubic(HeightMapStore map, HeightMapAxis xAxis, HeightMapAxis zAxis,
+                                           float offset, float scale, float[] dest) {
+        int sizeX = xAxis.weight.length;
+        int sizeZ = zAxis.weight.length;
+        float[][] weightsX = catmullRom(xAxis.weight);
+        float[][] weightsZ = catmullRom(zAxis.weight);
+        int[][] texelsX = {xAxis.indexBefore, xAxis.index0, xAxis.index1, xAxis.indexAfter};
+
+        // rows[i] are the four map rows around the current z, already combined across x for every column
+        float[][] rows = new float[4][sizeX];
+        float[] texels = new float[sizeX];
+        int loadedZ = -1;
+
+        for (int z = 0; z < sizeZ; z++) {
+            if (zAxis.index0[z] != loadedZ) {
+                loadedZ = zAxis.index0[z];
+                int[] mapRows = {zAxis.indexBefore[z], zAxis.index0[z], zAxis.index1[z], zAxis.indexAfter[z]};
+                for (int i = 0; i < 4; i++) {
+                    float[] row = rows[i];
+                    Arrays.fill(row, 0);
+                    for (int j = 0; j < 4; j++) {
+                        loadRow(map, mapRows[i], texelsX[j], texels);
+                        float[] w = weightsX[j];
+                        for (int x = 0; x < sizeX; x++) {
+                            row[x] += w[x] * texels[x];
+                        }
+                    }
+                }
+            }
 
-            float interpolatedHeight = (float) lerp(relX, lerp(relZ, p00, p01), lerp(relZ, p10, p11));
-            float height = configuration.heightOffset + configuration.heightScale * interpolatedHeight;
+            float w0 = weightsZ[0][z];
+            float w1 = weightsZ[1][z];
+            float w2 = weightsZ[2][z];
+            float w3 = weightsZ[3][z];
+            float[] r0 = rows[0];
+            float[] r1 = rows[1];
+            float[] r2 = rows[2];
+            float[] r3 = rows[3];
+            int rowStart = z * sizeX;
+            for (int x = 0; x < sizeX; x++) {
+                dest[rowStart + x] = offset + scale * (w0 * r0[x] + w1 * r1[x] + w2 * r2[x] + w3 * r3[x]);
+            }
+        }
+    }
 
-            facet.setWorld(pos, height);
+    /**
+     * Reads the texels of one map row at the given x texel of every column.
+     */
+    private static void loadRow(HeightMapStore map, int mapZ, int[] texelsX, float[] dest) {
+        for (int x = 0; x < dest.length; x++) {
+            dest[x] = map.get(texelsX[x], mapZ);
         }
+    }
 
-        region.setRegionFacet(ElevationFacet.class, facet);
+    /**
+     * @return the current heightmap and its settings, loading the heightmap if necessary
+     */
+    Snapshot getSnapshot() {
+        initialize();
+        return snapshot;
+    }
+
+    /**
+     * Bounds the elevation of an area without generating it, e.g. to skip areas far above or below the surface. If the
+     * range pyramid of the heightmap is still being built, this waits for it.
+     * <p>
+     * The provider itself fills regions whose range is a single height without interpolating them, once the pyramid
+     * has been built in the background. It does so for bilinear interpolation only.
+     *
+     * @return a range that contains the elevation of every block of the area; it may be wider
+     */
+    public HeightMapRangePyramid.Range getElevationRange(int minX, int minZ, int sizeX, int sizeZ) {
+        Snapshot current = getSnapshot();
+        return elevationRange(current, current.heightmap.getRangePyramid(), minX, minZ, sizeX, sizeZ);
+    }
+
+    private static HeightMapRangePyramid.Range elevationRange(Snapshot current, HeightMapRangePyramid pyramid, int minX, int minZ,
+                                                              int sizeX, int sizeZ) {
+        HeightMapStore map = current.getHeightmap();
+        int xzScale = current.terrainScale;
+        WrapMode wrapMode = current.wrapMode;
+
+        // the texels that the interpolation of the area reads, including the outer ones of the bicubic kernel
+        int[] xs = texelRanges(Math.floorDiv(minX, xzScale) - 1, Math.floorDiv(minX + sizeX - 1, xzScale) + 2,
+                map.getWidth(), wrapMode);
+        int[] zs = texelRanges(Math.floorDiv(minZ, xzScale) - 1, Math.floorDiv(minZ + sizeZ - 1, xzScale) + 2,
+                map.getHeight(), wrapMode);
+        HeightMapRangePyramid.Range range = null;
+        for (int i = 0; i < xs.length; i += 2) {
+            for (int j = 0; j < zs.length; j += 2) {
+                HeightMapRangePyramid.Range part = pyramid.getRange(xs[i], zs[j], xs[i + 1], zs[j + 1]);
+                range = range == null ? part : range.union(part);
+            }
+        }
+
+        float min = range.getMin();
+        float max = range.getMax();
+        if (current.interpolation == InterpolationMode.BICUBIC) {
+            // the negative Catmull-Rom weights add up to at most 0.28125 in two dimensions
+            float overshoot = 0.28125f * (max - min);
+            min -= overshoot;
+            max += overshoot;
+        }
+        float a = current.heightOffset + current.heightScale * min;
+        float b = current.heightOffset + current.heightScale * max;
+        return new HeightMapRangePyramid.Range(Math.min(a, b), Math.max(a, b));
+    }
+
+    /**
+     * Maps a range of texels onto the map.
+     *
+     * @return the first and last texel of one or, if the range wraps around, two ranges within the map
+     */
+    private static int[] texelRanges(int from, int to, int mapSize, WrapMode wrapMode) {
+        switch (wrapMode) {
+            case CLAMP:
+                return new int[] {TeraMath.clamp(from, 0, mapSize - 1), TeraMath.clamp(to, 0, mapSize - 1)};
+            case REPEAT:
+                if (to - from + 1 >= mapSize) {
+                    return new int[] {0, mapSize - 1};
+                }
+                int wrappedFrom = IntMath.mod(from, mapSize);
+                int wrappedTo = IntMath.mod(to, mapSize);
+                if (wrappedFrom <= wrappedTo) {
+                    return new int[] {wrappedFrom, wrappedTo};
+                }
+                return new int[] {wrappedFrom, mapSize - 1, 0, wrappedTo};
+            default:
+                throw new UnsupportedOperationException("Not supported: " + wrapMode);
+        }
+    }
 
+    /**
+     * @return the reload started by the last change of the heightmap, or a completed future if there was none
+     */
+    public CompletableFuture<HeightMapStore> getHeightmapReload() {
+        return reload;
     }
 
-    private static double lerp(double t, double a, double b) {
-        return a + fade(t) * (b - a);  //not sure if i should fade t, needs a bit longer to generate chunks but is definately nicer
+    /**
+     * @return the number of regions that were filled with a single height so far
+     */
+    long getFlatRegions() {
+        return flatRegions.get();
     }
 
-    private static double fade(double t) {
-        // This is Perlin
-//        return t * t * t * (t * (t * 6 - 15) + 10);
+    /**
+     * Fades the linear weights between texels, which is not strictly needed but looks definitely nicer.
+     */
+    private static float[] fade(float[] weights) {
+        float[] result = new float[weights.length];
+        for (int i = 0; i < weights.length; i++) {
+            float t = weights[i];
+            // This is Hermite; Perlin would be t * t * t * (t * (t * 6 - 15) + 10)
+            result[i] = t * t * (3 - 2 * t);
+        }
+        return result;
+    }
 
-        // This is Hermite
-        return t * t * (3 - 2 * t);
+    /**
+     * Computes the Catmull-Rom weights of the texels before, at, after and two after the position.
+     *
+     * @return four arrays of weights, one per texel, which add up to 1 at every position
+     */
+    private static float[][] catmullRom(float[] weights) {
+        float[][] result = new float[4][weights.length];
+        for (int i = 0; i < weights.length; i++) {
+            float t = weights[i];
+            float t2 = t * t;
+            float t3 = t2 * t;
+            result[0][i] = 0.5f * (-t3 + 2 * t2 - t);
+            result[1][i] = 0.5f * (3 * t3 - 5 * t2 + 2);
+            result[2][i] = 0.5f * (-3 * t3 + 4 * t2 + t);
+            result[3][i] = 0.5f * (t3 - t2);
+        }
+        return result;
     }
 
     @Override
@@ -156,30 +572,133 @@ public class HeightMapSurfaceHeightProvider implements ConfigurableFacetProvider
     }
 
     @Override
-    public void setConfiguration(Component configuration) {
+    public synchronized void setConfiguration(Component configuration) {
         String prevHeightMap = this.configuration.heightMap;
         this.configuration = (HeightMapConfiguration) configuration;
 
         if (!Objects.equals(prevHeightMap, this.configuration.heightMap)) {
-            reloadHeightmap();
+            // the new settings are applied together with the new heightmap
+            reloadHeightmap(this.configuration.heightMap);
+        } else if (snapshot != null) {
+            snapshot = new Snapshot(snapshot.heightmap, this.configuration);
         }
     }
 
-    private static class HeightMapConfiguration implements Component {
+    /**
+     * A heightmap together with the settings it is sampled with. The settings are copied, so a region that holds a
+     * snapshot never mixes the values of two configurations.
+     */
+    static final class Snapshot {
+        private final LoadedHeightMap heightmap;
+        private final WrapMode wrapMode;
+        private final InterpolationMode interpolation;
+        private final int terrainScale;
+        private final float heightOffset;
+        private final float heightScale;
+
+        private Snapshot(LoadedHeightMap heightmap, HeightMapConfiguration configuration) {
+            this.heightmap = heightmap;
+            this.wrapMode = configuration.wrapMode;
+            this.interpolation = configuration.interpolation;
+            this.terrainScale = configuration.terrainScale;
+            this.heightOffset = configuration.heightOffset;
+            this.heightScale = configuration.heightScale;
+        }
+
+        HeightMapStore getHeightmap() {
+            return heightmap.lease.getStore();
+        }
+
+        /**
+         * @return the name of the heightmap, which lags behind the configuration during a reload
+         */
+        String getHeightMapName() {
+            return heightmap.name;
+        }
+
+        WrapMode getWrapMode() {
+            return wrapMode;
+        }
+
+        InterpolationMode getInterpolation() {
+            return interpolation;
+        }
+
+        int getTerrainScale() {
+            return terrainScale;
+        }
+
+        float getHeightOffset() {
+            return heightOffset;
+        }
+
+        float getHeightScale() {
+            return heightScale;
+        }
+    }
+
+    /**
+     * A lease on a shared heightmap together with the name it was loaded from.
+     */
+    private static final class LoadedHeightMap {
+        private final String name;
+        private final HeightMapRegistry.Lease lease;
+        private CompletableFuture<HeightMapRangePyramid> rangePyramid;
+
+        LoadedHeightMap(String name, HeightMapRegistry.Lease lease) {
+            this.name = name;
+            this.lease = lease;
+        }
+
+        /**
+         * @return the range pyramid, waiting for it to be built
+         */
+        HeightMapRangePyramid getRangePyramid() {
+            return buildRangePyramid().join();
+        }
+
+        /**
+         * @return the range pyramid, or null if it is still being built, in which case the build is started if needed
+         */
+        HeightMapRangePyramid getRangePyramidIfBuilt() {
+            CompletableFuture<HeightMapRangePyramid> pyramid = buildRangePyramid();
+            return pyramid.isDone() && !pyramid.isCompletedExceptionally() ? pyramid.join() : null;
+        }
+
+        private synchronized CompletableFuture<HeightMapRangePyramid> buildRangePyramid() {
+            if (rangePyramid == null) {
+                rangePyramid = CompletableFuture.supplyAsync(() -> {
+                    HeightMapRangePyramid pyramid = new HeightMapRangePyramid(lease.getStore());
+                    logger.info("Built {} levels of height ranges for {}, {} values", pyramid.getLevels(), lease, pyramid.getSize());
+                    return pyramid;
+                }, RANGE_EXECUTOR);
+                rangePyramid.exceptionally(e -> {
+                    logger.error("Could not build the height ranges of {}", lease, e);
+                    return null;
+                });
+            }
+            return rangePyramid;
+        }
+    }
+
+    static class HeightMapConfiguration implements Component {
 
         @Enum(description = "Wrap Mode")
-        private WrapMode wrapMode = WrapMode.REPEAT;
+        WrapMode wrapMode = WrapMode.REPEAT;
+
+        @Enum(description = "Interpolation")
+        InterpolationMode interpolation = InterpolationMode.BILINEAR_FADE;
 
         @List(items = { "platec_heightmap", "opposing_islands" }, description = "Height Map")
-        private String heightMap = "platec_heightmap";
+        String heightMap = "platec_heightmap";
 
         @Range(min = 0, max = 50f, increment = 1f, precision = 0, description = "Height Offset")
-        private float heightOffset = 12;
+        float heightOffset = 12;
 
         @Range(min = 10, max = 200f, increment = 1f, precision = 0, description = "Height Scale Factor")
-        private float heightScale = 70;
+        float heightScale = 70;
 
         @Range(min = 1, max = 32, increment = 1, precision = 0, description = "Terrain Scale Factor")
-        private int terrainScale = 8;
+        int terrainScale = 8;
     }
 }
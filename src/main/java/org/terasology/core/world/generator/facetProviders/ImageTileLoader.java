@@ -0,0 +1,153 @@
+// Copyright 2020 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.core.world.generator.facetProviders;
+
+import org.terasology.core.world.generator.FloatGrid;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Iterator;
+
+/**
+ * Decodes rectangles of an image file, such as a PNG, for a {@link TiledHeightMapStore}. Only the requested rectangle
+ * is kept in memory; the rows before it are still decompressed, since image formats like PNG can only be read in order.
+ * <p>
+ * The pixels are turned into heights like those of a texture heightmap: the red, green, blue and alpha bytes form an
+ * unsigned 32 bit value that is scaled to [0..1], so grey images use their grey value as the most significant byte.
+ */
+final class ImageTileLoader implements TiledHeightMapStore.TileLoader {
+
+    private final Path file;
+    private final int width;
+    private final int height;
+
+    private ImageTileLoader(Path file, int width, int height) {
+        this.file = file;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Reads the size of the image, but none of its pixels.
+     *
+     * @throws IOException if the file cannot be read or is not an image
+     */
+    static ImageTileLoader open(Path file) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(file.toFile())) {
+            ImageReader reader = reader(input, file);
+            try {
+                return new ImageTileLoader(file, reader.getWidth(0), reader.getHeight(0));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    int getWidth() {
+        return width;
+    }
+
+    int getHeight() {
+        return height;
+    }
+
+    /**
+     * @throws UncheckedIOException if the file can no longer be read
+     */
+    @Override
+    public FloatGrid load(int minX, int minY, int tileWidth, int tileHeight) {
+        BufferedImage image;
+        // every load uses its own reader, so tiles can be decoded by several threads at once
+        try (ImageInputStream input = ImageIO.createImageInputStream(file.toFile())) {
+            ImageReader reader = reader(input, file);
+            try {
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceRegion(new Rectangle(minX, minY, tileWidth, tileHeight));
+                image = reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read height map tile of " + file, e);
+        }
+
+        Raster raster = image.getRaster();
+        ColorModel colorModel = image.getColorModel();
+        int bands = raster.getNumBands();
+        FloatGrid values = FloatGrid.onHeap(tileWidth, tileHeight);
+        int[] pixel = new int[bands];
+        for (int y = 0; y < tileHeight; y++) {
+            for (int x = 0; x < tileWidth; x++) {
+                raster.getPixel(raster.getMinX() + x, raster.getMinY() + y, pixel);
+                values.set(x, y, toHeight(pixel, raster, colorModel));
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Reads the raw samples rather than going through the color model, which would convert grey to sRGB.
+     */
+    private static float toHeight(int[] pixel, Raster raster, ColorModel colorModel) {
+        int red;
+        int green;
+        int blue;
+        int alpha;
+        if (colorModel instanceof IndexColorModel) {
+            IndexColorModel palette = (IndexColorModel) colorModel;
+            red = palette.getRed(pixel[0]);
+            green = palette.getGreen(pixel[0]);
+            blue = palette.getBlue(pixel[0]);
+            alpha = palette.getAlpha(pixel[0]);
+        } else if (pixel.length <= 2) {
+            red = toByte(pixel[0], raster, 0);
+            green = red;
+            blue = red;
+            alpha = pixel.length == 2 ? toByte(pixel[1], raster, 1) : 255;
+        } else {
+            red = toByte(pixel[0], raster, 0);
+            green = toByte(pixel[1], raster, 1);
+            blue = toByte(pixel[2], raster, 2);
+            alpha = pixel.length > 3 ? toByte(pixel[3], raster, 3) : 255;
+        }
+        long value = (long) red << 24 | green << 16 | blue << 8 | alpha;
+        return value / (256 * 256 * 256 * 256f);
+    }
+
+    /**
+     * @return the most significant 8 bits of a wider sample, like a texture keeps of 16 bit images, or a narrower
+     *         sample stretched to 8 bits
+     */
+    private static int toByte(int sample, Raster raster, int band) {
+        int bits = raster.getSampleModel().getSampleSize(band);
+        return bits >= 8 ? sample >>> (bits - 8) : sample * 255 / ((1 << bits) - 1);
+    }
+
+    private static ImageReader reader(ImageInputStream input, Path file) throws IOException {
+        if (input == null) {
+            throw new IOException("Cannot open " + file);
+        }
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+        if (!readers.hasNext()) {
+            throw new IOException("Not a readable image: " + file);
+        }
+        ImageReader reader = readers.next();
+        reader.setInput(input, true, true);
+        return reader;
+    }
+
+    @Override
+    public String toString() {
+        return file.getFileName().toString();
+    }
+}
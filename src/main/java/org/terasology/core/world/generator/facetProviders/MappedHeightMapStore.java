@@ -0,0 +1,226 @@
+// Copyright 2020 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.core.world.generator.facetProviders;
+
+import com.google.common.base.Preconditions;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A heightmap that is read straight from a raw file through memory mapping. The file holds the pixels row by row
+ * without a header. Nothing is copied to the heap; the operating system pages the file in as it is read, so opening
+ * even very large maps is instant.
+ * <p>
+ * Besides headerless files, NumPy <code>.npy</code> files of a two-dimensional array are supported; only their short
+ * text header is parsed before the data is mapped.
+ * <p>
+ * Files larger than a single mapping can hold are mapped in chunks of whole rows.
+ */
+public final class MappedHeightMapStore implements HeightMapStore {
+
+    /**
+     * The encoding of the pixels.
+     */
+    public enum Format {
+        /**
+         * Unsigned 16 bit integers, where 65535 is a height of 1
+         */
+        UNSIGNED_16(Short.BYTES),
+        /**
+         * 32 bit floats, used as they are
+         */
+        FLOAT_32(Float.BYTES);
+
+        private final int bytes;
+
+        Format(int bytes) {
+            this.bytes = bytes;
+        }
+
+        public int getBytes() {
+            return bytes;
+        }
+    }
+
+    private static final int MAX_CHUNK_BYTES = 1 << 30;
+
+    private static final byte[] NPY_MAGIC = {(byte) 0x93, 'N', 'U', 'M', 'P', 'Y'};
+    private static final Pattern NPY_DESCR = Pattern.compile("'descr'\\s*:\\s*'([<>|=])([a-z]\\d+)'");
+    private static final Pattern NPY_FORTRAN_ORDER = Pattern.compile("'fortran_order'\\s*:\\s*(True|False)");
+    private static final Pattern NPY_SHAPE = Pattern.compile("'shape'\\s*:\\s*\\(\\s*(\\d+)\\s*,\\s*(\\d+)\\s*,?\\s*\\)");
+
+    private final Path file;
+
+    private final int width;
+    private final int height;
+    private final Format format;
+    private final int rowsPerChunk;
+    private final ByteBuffer[] chunks;
+
+    private MappedHeightMapStore(Path file, int width, int height, Format format, int rowsPerChunk, ByteBuffer[] chunks) {
+        this.file = file;
+        this.width = width;
+        this.height = height;
+        this.format = format;
+        this.rowsPerChunk = rowsPerChunk;
+        this.chunks = chunks;
+    }
+
+    /**
+     * @param file the raw file
+     * @param width the number of pixels per row
+     * @param height the number of rows
+     * @param format the encoding of the pixels
+     * @param order the byte order of the pixels
+     * @throws IOException if the file cannot be read or is too small
+     */
+    public static MappedHeightMapStore open(Path file, int width, int height, Format format, ByteOrder order) throws IOException {
+        return open(file, 0, width, height, format, order);
+    }
+
+    /**
+     * @param offset the position of the first pixel in the file, to skip a header
+     */
+    public static MappedHeightMapStore open(Path file, long offset, int width, int height, Format format, ByteOrder order)
+            throws IOException {
+        Preconditions.checkArgument(width > 0 && height > 0, "Invalid heightmap size %sx%s", width, height);
+        long rowBytes = (long) width * format.getBytes();
+        Preconditions.checkArgument(rowBytes <= MAX_CHUNK_BYTES, "Heightmap rows too long: %s", width);
+        int rowsPerChunk = (int) Math.min(height, MAX_CHUNK_BYTES / rowBytes);
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long expected = offset + rowBytes * height;
+            if (channel.size() < expected) {
+                throw new IOException("Heightmap '" + file + "' has " + channel.size() + " bytes, expected " + expected);
+            }
+            // the mappings stay valid after the channel is closed
+            ByteBuffer[] chunks = new ByteBuffer[(height + rowsPerChunk - 1) / rowsPerChunk];
+            for (int i = 0; i < chunks.length; i++) {
+                int rows = Math.min(rowsPerChunk, height - i * rowsPerChunk);
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset + i * rowsPerChunk * rowBytes, rows * rowBytes)
+                        .order(order);
+            }
+            return new MappedHeightMapStore(file, width, height, format, rowsPerChunk, chunks);
+        }
+    }
+
+    /**
+     * Maps a headerless file of a square heightmap, deriving the size from the file length.
+     */
+    public static MappedHeightMapStore openSquare(Path file, Format format, ByteOrder order) throws IOException {
+        long pixels = Files.size(file) / format.getBytes();
+        int size = (int) Math.sqrt((double) pixels);
+        if ((long) size * size != pixels) {
+            throw new IOException("Raw heightmap '" + file + "' is not square");
+        }
+        return open(file, size, size, format, order);
+    }
+
+    /**
+     * Maps a NumPy <code>.npy</code> file holding a two-dimensional array of <code>uint16</code> or <code>float32</code>
+     * values in C order. The first dimension is the height, the second the width.
+     */
+    public static MappedHeightMapStore openNpy(Path file) throws IOException {
+        String header;
+        long dataOffset;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer prefix = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(prefix, 0);
+            prefix.flip();
+            byte[] magic = new byte[NPY_MAGIC.length];
+            if (prefix.remaining() >= 10) {
+                prefix.get(magic);
+            }
+            if (!Arrays.equals(magic, NPY_MAGIC)) {
+                throw new IOException("'" + file + "' is not a NumPy file");
+            }
+            int majorVersion = prefix.get(6);
+            int headerLength;
+            int prefixLength;
+            if (majorVersion == 1) {
+                headerLength = prefix.getShort(8) & 0xFFFF;
+                prefixLength = 10;
+            } else {
+                headerLength = prefix.getInt(8);
+                prefixLength = 12;
+            }
+            ByteBuffer headerBytes = ByteBuffer.allocate(headerLength);
+            channel.read(headerBytes, prefixLength);
+            header = new String(headerBytes.array(), 0, headerBytes.position(), StandardCharsets.ISO_8859_1);
+            dataOffset = prefixLength + headerLength;
+        }
+
+        Matcher descr = NPY_DESCR.matcher(header);
+        Matcher fortranOrder = NPY_FORTRAN_ORDER.matcher(header);
+        Matcher shape = NPY_SHAPE.matcher(header);
+        if (!descr.find() || !fortranOrder.find() || !shape.find()) {
+            throw new IOException("Unsupported NumPy header in '" + file + "': " + header.trim());
+        }
+        if (fortranOrder.group(1).equals("True")) {
+            throw new IOException("NumPy array in '" + file + "' is in Fortran order");
+        }
+
+        Format format;
+        switch (descr.group(2)) {
+            case "u2":
+                format = Format.UNSIGNED_16;
+                break;
+            case "f4":
+                format = Format.FLOAT_32;
+                break;
+            default:
+                throw new IOException("Unsupported NumPy type '" + descr.group(2) + "' in '" + file + "'");
+        }
+        ByteOrder order = descr.group(1).equals(">") ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+        int height = Integer.parseInt(shape.group(1));
+        int width = Integer.parseInt(shape.group(2));
+        return open(file, dataOffset, width, height, format, order);
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    public Format getFormat() {
+        return format;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    @Override
+    public float get(int x, int y) {
+        ByteBuffer chunk = chunks[y / rowsPerChunk];
+        int pos = ((y % rowsPerChunk) * width + x) * format.getBytes();
+        switch (format) {
+            case UNSIGNED_16:
+                return (chunk.getShort(pos) & 0xFFFF) / 65535f;
+            case FLOAT_32:
+                return chunk.getFloat(pos);
+            default:
+                throw new UnsupportedOperationException("Not supported: " + format);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s (%dx%d, %s, mapped)", file, width, height, format);
+    }
+}
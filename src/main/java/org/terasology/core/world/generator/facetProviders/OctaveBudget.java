@@ -0,0 +1,119 @@
+// Copyright 2020 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.core.world.generator.facetProviders;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSortedMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terasology.utilities.procedural.BrownianNoise;
+import org.terasology.utilities.procedural.Noise;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Works out how many octaves of a {@link BrownianNoise} a provider needs so that leaving out the others changes its
+ * output by less than an epsilon.
+ * <p>
+ * Octave <code>i</code> is weighted with <code>w<sub>i</sub> = lacunarity<sup>-persistence * i</sup></code> and the
+ * sum is divided by the sum of the weights, so a BrownianNoise with fewer octaves has a larger scale than the first
+ * octaves of one with more. {@link #truncated} undoes that, so the truncated noise is exactly the first octaves of the
+ * full noise. With a source noise between -1 and 1, the octaves that are left out then change the noise by at most
+ * the sum of their weights divided by the sum of all weights; the provider states by how much its output changes per
+ * unit of noise. Subsampling interpolates between grid points, so it never increases the change.
+ * <p>
+ * The needed octaves of each provider are kept for {@link #getReport()}, and the whole report is logged whenever it
+ * changes.
+ */
+public final class OctaveBudget {
+
+    private static final Logger logger = LoggerFactory.getLogger(OctaveBudget.class);
+
+    /**
+     * The defaults of BrownianNoise, which CoreWorlds does not change
+     */
+    private static final double LACUNARITY = 2.1379201;
+    private static final double PERSISTENCE = 0.836281;
+
+    private static final Map<String, Integer> REPORT = new ConcurrentHashMap<>();
+
+    private OctaveBudget() {
+        // no instances
+    }
+
+    /**
+     * @param provider the provider, for the report
+     * @param maxOctaves the octaves of the full noise
+     * @param gain the largest change of the output per unit of noise
+     * @param epsilon the largest change of the output that is acceptable, 0 to keep all octaves
+     * @return the number of octaves to evaluate, at least 1
+     */
+    static int octaves(Class<?> provider, int maxOctaves, float gain, float epsilon) {
+        Preconditions.checkArgument(maxOctaves > 0, "At least one octave is needed");
+        Preconditions.checkArgument(epsilon >= 0, "Epsilon must not be negative");
+
+        double total = weightSum(maxOctaves);
+        int octaves = maxOctaves;
+        double omitted = 0;
+        while (octaves > 1) {
+            omitted += weight(octaves - 1);
+            if (gain * omitted / total >= epsilon) {
+                break;
+            }
+            octaves--;
+        }
+
+        Integer previous = REPORT.put(provider.getSimpleName(), octaves);
+        if (previous == null || previous != octaves) {
+            logger.info("{} needs {} of {} octaves to stay within {}; octaves by provider: {}", provider.getSimpleName(), octaves,
+                    maxOctaves, epsilon, getReport());
+        }
+        return octaves;
+    }
+
+    /**
+     * @param source the noise of each octave
+     * @param maxOctaves the octaves of the full noise
+     * @param octaves the octaves to evaluate, as returned by {@link #octaves}
+     * @return the first octaves of <code>new BrownianNoise(source, maxOctaves)</code>, at the scale of the full noise
+     */
+    static Noise truncated(Noise source, int maxOctaves, int octaves) {
+        Preconditions.checkArgument(octaves > 0 && octaves <= maxOctaves, "Cannot evaluate %s of %s octaves", octaves, maxOctaves);
+        Noise noise = new BrownianNoise(source, octaves);
+        if (octaves == maxOctaves) {
+            return noise;
+        }
+        float scale = (float) (weightSum(octaves) / weightSum(maxOctaves));
+        return new Noise() {
+            @Override
+            public float noise(float x, float y) {
+                return noise.noise(x, y) * scale;
+            }
+
+            @Override
+            public float noise(float x, float y, float z) {
+                return noise.noise(x, y, z) * scale;
+            }
+        };
+    }
+
+    private static double weight(int octave) {
+        return Math.pow(LACUNARITY, -PERSISTENCE * octave);
+    }
+
+    private static double weightSum(int octaves) {
+        double sum = 0;
+        for (int i = 0; i < octaves; i++) {
+            sum += weight(i);
+        }
+        return sum;
+    }
+
+    /**
+     * @return the octaves the providers needed the last time they were set up, by the simple name of the provider
+     */
+    public static Map<String, Integer> getReport() {
+        return ImmutableSortedMap.copyOf(REPORT);
+    }
+}
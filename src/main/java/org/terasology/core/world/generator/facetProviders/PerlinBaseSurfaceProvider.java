@@ -17,8 +17,9 @@ package org.terasology.core.world.generator.facetProviders;
 
 import org.joml.Vector2f;
 import org.terasology.utilities.procedural.BrownianNoise;
+import org.terasology.utilities.procedural.FusedSubSampledNoise;
+import org.terasology.utilities.procedural.LatticeSampleCache;
 import org.terasology.utilities.procedural.PerlinNoise;
-import org.terasology.utilities.procedural.SubSampledNoise;
 import org.terasology.world.block.BlockAreac;
 import org.terasology.world.generation.Border3D;
 import org.terasology.world.generation.Facet;
@@ -38,12 +39,12 @@ import org.terasology.world.generation.facets.SeaLevelFacet;
 public class PerlinBaseSurfaceProvider implements FacetProvider {
     private static final int SAMPLE_RATE = 4;
 
-    private SubSampledNoise surfaceNoise;
+    private FusedSubSampledNoise surfaceNoise;
 
     @Override
     public void setSeed(long seed) {
         BrownianNoise source = new BrownianNoise(new PerlinNoise(seed), 8);
-        surfaceNoise = new SubSampledNoise(source, new Vector2f(0.004f, 0.004f), SAMPLE_RATE);
+        surfaceNoise = new FusedSubSampledNoise(source, new Vector2f(0.004f, 0.004f), SAMPLE_RATE, LatticeSampleCache.shared());
     }
 
     @Override
@@ -53,7 +54,7 @@ public class PerlinBaseSurfaceProvider implements FacetProvider {
         SeaLevelFacet seaLevelFacet = region.getRegionFacet(SeaLevelFacet.class);
         float seaLevel = seaLevelFacet.getSeaLevel();
         BlockAreac processRegion = facet.getWorldArea();
-        float[] noise = surfaceNoise.noise(processRegion);
+        float[] noise = surfaceNoise.noise(processRegion)[0];
 
         for (int i = 0; i < noise.length; ++i) {
             noise[i] = seaLevel + seaLevel * ((noise[i] * 2.11f + 1f) / 2f);
@@ -16,13 +16,14 @@
 package org.terasology.core.world.generator.facetProviders;
 
 import org.joml.Vector2f;
-import org.joml.Vector2ic;
 import org.terasology.entitySystem.Component;
 import org.terasology.math.TeraMath;
 import org.terasology.nui.properties.Range;
 import org.terasology.utilities.procedural.BrownianNoise;
+import org.terasology.utilities.procedural.FusedSubSampledNoise;
+import org.terasology.utilities.procedural.LatticeSampleCache;
 import org.terasology.utilities.procedural.PerlinNoise;
-import org.terasology.utilities.procedural.SubSampledNoise;
+import org.terasology.world.block.BlockAreac;
 import org.terasology.world.generation.ConfigurableFacetProvider;
 import org.terasology.world.generation.Facet;
 import org.terasology.world.generation.GeneratingRegion;
@@ -32,44 +33,52 @@ import org.terasology.world.generation.facets.ElevationFacet;
 import org.terasology.world.generation.facets.SurfaceHumidityFacet;
 import org.terasology.world.generation.facets.SurfaceTemperatureFacet;
 
-import java.util.Iterator;
-
 /**
  * Adds surface height for hill and mountain regions. Mountain and hill regions are based off of temperature and humidity.
+ * <p>
+ * The mountain intensity is computed first; mountain noise is then only evaluated where the intensity is above zero
+ * and hill noise only where it is below one, since the other blocks would multiply it by zero anyway.
  */
 @Deprecated
 @Requires({@Facet(SurfaceTemperatureFacet.class), @Facet(SurfaceHumidityFacet.class)})
 @Updates(@Facet(ElevationFacet.class))
 public class PerlinHillsAndMountainsProvider implements ConfigurableFacetProvider {
 
-    private SubSampledNoise mountainNoise;
-    private SubSampledNoise hillNoise;
+    private static final int SAMPLE_RATE = 4;
+
+    private FusedSubSampledNoise mountainNoise;
+    private FusedSubSampledNoise hillNoise;
     private PerlinHillsAndMountainsProviderConfiguration configuration = new PerlinHillsAndMountainsProviderConfiguration();
 
     @Override
     public void setSeed(long seed) {
         // TODO: reduce the number of octaves in BrownianNoise
-        mountainNoise = new SubSampledNoise(new BrownianNoise(new PerlinNoise(seed + 3)), new Vector2f(0.0002f, 0.0002f), 4);
-        hillNoise = new SubSampledNoise(new BrownianNoise(new PerlinNoise(seed + 4)), new Vector2f(0.0008f, 0.0008f), 4);
+        mountainNoise = new FusedSubSampledNoise(new BrownianNoise(new PerlinNoise(seed + 3)), new Vector2f(0.0002f, 0.0002f),
+                SAMPLE_RATE, LatticeSampleCache.shared());
+        hillNoise = new FusedSubSampledNoise(new BrownianNoise(new PerlinNoise(seed + 4)), new Vector2f(0.0008f, 0.0008f),
+                SAMPLE_RATE, LatticeSampleCache.shared());
     }
 
     @Override
     public void process(GeneratingRegion region) {
         ElevationFacet facet = region.getRegionFacet(ElevationFacet.class);
-
-        float[] mountainData = mountainNoise.noise(facet.getWorldArea());
-        float[] hillData = hillNoise.noise(facet.getWorldArea());
         SurfaceTemperatureFacet temperatureData = region.getRegionFacet(SurfaceTemperatureFacet.class);
         SurfaceHumidityFacet humidityData = region.getRegionFacet(SurfaceHumidityFacet.class);
 
+        BlockAreac area = facet.getWorldArea();
+        float[] mountainIntensity = mountainIntensity(area, temperatureData, humidityData);
+        boolean[] mountains = new boolean[mountainIntensity.length];
+        boolean[] hills = new boolean[mountainIntensity.length];
+        for (int i = 0; i < mountainIntensity.length; ++i) {
+            mountains[i] = mountainIntensity[i] > 0;
+            hills[i] = mountainIntensity[i] < 1;
+        }
+        float[] mountainData = mountainNoise.noise(0, area, mountains);
+        float[] hillData = hillNoise.noise(0, area, hills);
+
         float[] heightData = facet.getInternal();
-        Iterator<Vector2ic> positionIterator = facet.getRelativeArea().iterator();
         for (int i = 0; i < heightData.length; ++i) {
-            Vector2ic pos = positionIterator.next();
-            float temp = temperatureData.get(pos);
-            float tempHumid = temp * humidityData.get(pos);
-            Vector2f distanceToMountainBiome = new Vector2f(temp - 0.25f, tempHumid - 0.35f);
-            float mIntens = TeraMath.clamp(1.0f - distanceToMountainBiome.length() * 3.0f);
+            float mIntens = mountainIntensity[i];
             float densityMountains = Math.max(mountainData[i] * 2.12f, 0) * mIntens * configuration.mountainAmplitude;
             float densityHills = Math.max(hillData[i] * 2.12f - 0.1f, 0) * (1.0f - mIntens) * configuration.hillAmplitude;
 
@@ -77,6 +86,33 @@ public class PerlinHillsAndMountainsProvider implements ConfigurableFacetProvide
         }
     }
 
+    /**
+     * @return how close each block of the area is to the mountain biome, from 0 to 1, row by row
+     */
+    private static float[] mountainIntensity(BlockAreac area, SurfaceTemperatureFacet temperatureData,
+                                             SurfaceHumidityFacet humidityData) {
+        float[] temperatures = temperatureData.getInternal();
+        float[] humidities = humidityData.getInternal();
+        BlockAreac temperatureArea = temperatureData.getWorldArea();
+        BlockAreac humidityArea = humidityData.getWorldArea();
+
+        float[] intensity = new float[area.getSizeX() * area.getSizeY()];
+        int i = 0;
+        for (int y = area.minY(); y <= area.maxY(); ++y) {
+            // the climate facets may have wider borders than the elevation
+            int temperatureRow = (y - temperatureArea.minY()) * temperatureArea.getSizeX() - temperatureArea.minX();
+            int humidityRow = (y - humidityArea.minY()) * humidityArea.getSizeX() - humidityArea.minX();
+            for (int x = area.minX(); x <= area.maxX(); ++x) {
+                float temp = temperatures[temperatureRow + x];
+                float tempHumid = temp * humidities[humidityRow + x];
+                float dx = temp - 0.25f;
+                float dy = tempHumid - 0.35f;
+                intensity[i++] = TeraMath.clamp(1.0f - (float) Math.sqrt(dx * dx + dy * dy) * 3.0f);
+            }
+        }
+        return intensity;
+    }
+
     @Override
     public String getConfigurationName() {
         return "Hills and Mountains";
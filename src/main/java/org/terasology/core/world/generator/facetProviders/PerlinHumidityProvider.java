@@ -20,8 +20,9 @@ import org.terasology.entitySystem.Component;
 import org.terasology.math.TeraMath;
 import org.terasology.nui.properties.Range;
 import org.terasology.utilities.procedural.BrownianNoise;
+import org.terasology.utilities.procedural.FusedSubSampledNoise;
+import org.terasology.utilities.procedural.LatticeSampleCache;
 import org.terasology.utilities.procedural.PerlinNoise;
-import org.terasology.utilities.procedural.SubSampledNoise;
 import org.terasology.world.generation.Border3D;
 import org.terasology.world.generation.ConfigurableFacetProvider;
 import org.terasology.world.generation.GeneratingRegion;
@@ -37,7 +38,7 @@ import org.terasology.world.generation.facets.SurfaceHumidityFacet;
 public class PerlinHumidityProvider implements ConfigurableFacetProvider {
     private static final int SAMPLE_RATE = 4;
 
-    private SubSampledNoise humidityNoise;
+    private FusedSubSampledNoise humidityNoise;
 
     private Configuration config = new Configuration();
 
@@ -65,7 +66,7 @@ public class PerlinHumidityProvider implements ConfigurableFacetProvider {
         Border3D border = region.getBorderForFacet(SurfaceHumidityFacet.class);
         SurfaceHumidityFacet facet = new SurfaceHumidityFacet(region.getRegion(), border);
 
-        float[] noise = humidityNoise.noise(facet.getWorldArea());
+        float[] noise = humidityNoise.noise(facet.getWorldArea())[0];
         for (int i = 0; i < noise.length; ++i) {
             noise[i] = TeraMath.clamp((noise[i] * 2.11f + 1f) * 0.5f);
         }
@@ -93,7 +94,7 @@ public class PerlinHumidityProvider implements ConfigurableFacetProvider {
         float realScale = config.scale * 0.01f;
         Vector2f scale = new Vector2f(realScale, realScale);
         BrownianNoise brown = new BrownianNoise(new PerlinNoise(seed + 6), config.octaves);
-        humidityNoise = new SubSampledNoise(brown, scale, SAMPLE_RATE);
+        humidityNoise = new FusedSubSampledNoise(brown, scale, SAMPLE_RATE, LatticeSampleCache.shared());
     }
 
     public static class Configuration implements Component {
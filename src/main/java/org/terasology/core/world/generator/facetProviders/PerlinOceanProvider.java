@@ -19,9 +19,10 @@ import org.joml.Vector2f;
 import org.terasology.entitySystem.Component;
 import org.terasology.math.TeraMath;
 import org.terasology.nui.properties.Range;
-import org.terasology.utilities.procedural.BrownianNoise;
+import org.terasology.utilities.procedural.FusedSubSampledNoise;
+import org.terasology.utilities.procedural.LatticeSampleCache;
+import org.terasology.utilities.procedural.Noise;
 import org.terasology.utilities.procedural.PerlinNoise;
-import org.terasology.utilities.procedural.SubSampledNoise;
 import org.terasology.world.generation.ConfigurableFacetProvider;
 import org.terasology.world.generation.Facet;
 import org.terasology.world.generation.GeneratingRegion;
@@ -35,19 +36,29 @@ import org.terasology.world.generation.facets.ElevationFacet;
 @Updates(@Facet(ElevationFacet.class))
 public class PerlinOceanProvider implements ConfigurableFacetProvider {
     private static final int SAMPLE_RATE = 4;
+    private static final int OCTAVES = 8;
 
-    private SubSampledNoise oceanNoise;
+    private long seed;
+    private FusedSubSampledNoise oceanNoise;
     private PerlinOceanConfiguration configuration = new PerlinOceanConfiguration();
 
     @Override
     public void setSeed(long seed) {
-        oceanNoise = new SubSampledNoise(new BrownianNoise(new PerlinNoise(seed + 1), 8), new Vector2f(0.0009f, 0.0009f), SAMPLE_RATE);
+        this.seed = seed;
+        reload();
+    }
+
+    private void reload() {
+        int octaves = OctaveBudget.octaves(PerlinOceanProvider.class, OCTAVES, configuration.maxDepth * 8.0f * 2.11f,
+                configuration.octaveEpsilon);
+        Noise noise = OctaveBudget.truncated(new PerlinNoise(seed + 1), OCTAVES, octaves);
+        oceanNoise = new FusedSubSampledNoise(noise, new Vector2f(0.0009f, 0.0009f), SAMPLE_RATE, LatticeSampleCache.shared());
     }
 
     @Override
     public void process(GeneratingRegion region) {
         ElevationFacet facet = region.getRegionFacet(ElevationFacet.class);
-        float[] noise = oceanNoise.noise(facet.getWorldArea());
+        float[] noise = oceanNoise.noise(facet.getWorldArea())[0];
 
         float[] surfaceHeights = facet.getInternal();
         for (int i = 0; i < noise.length; ++i) {
@@ -68,10 +79,14 @@ public class PerlinOceanProvider implements ConfigurableFacetProvider {
     @Override
     public void setConfiguration(Component configuration) {
         this.configuration = (PerlinOceanConfiguration) configuration;
+        reload();
     }
 
     private static class PerlinOceanConfiguration implements Component {
         @Range(min = 0, max = 128f, increment = 1f, precision = 0, description = "Ocean Depth")
         public float maxDepth = 32;
+
+        @Range(min = 0, max = 4f, increment = 0.05f, precision = 2, description = "Largest height change in blocks from skipping noise octaves")
+        public float octaveEpsilon;
     }
 }
@@ -20,8 +20,9 @@ import org.terasology.entitySystem.Component;
 import org.terasology.math.TeraMath;
 import org.terasology.nui.properties.Range;
 import org.terasology.utilities.procedural.BrownianNoise;
+import org.terasology.utilities.procedural.FusedSubSampledNoise;
+import org.terasology.utilities.procedural.LatticeSampleCache;
 import org.terasology.utilities.procedural.PerlinNoise;
-import org.terasology.utilities.procedural.SubSampledNoise;
 import org.terasology.world.generation.ConfigurableFacetProvider;
 import org.terasology.world.generation.Facet;
 import org.terasology.world.generation.FacetProvider;
@@ -38,18 +39,19 @@ import org.terasology.world.generation.facets.ElevationFacet;
 public class PerlinRiverProvider implements FacetProvider, ConfigurableFacetProvider {
     private static final int SAMPLE_RATE = 4;
 
-    private SubSampledNoise riverNoise;
+    private FusedSubSampledNoise riverNoise;
     private PerlinRiverProviderConfiguration configuration = new PerlinRiverProviderConfiguration();
 
     @Override
     public void setSeed(long seed) {
-        riverNoise = new SubSampledNoise(new BrownianNoise(new PerlinNoise(seed + 2), 8), new Vector2f(0.0008f, 0.0008f), SAMPLE_RATE);
+        riverNoise = new FusedSubSampledNoise(new BrownianNoise(new PerlinNoise(seed + 2), 8), new Vector2f(0.0008f, 0.0008f),
+                SAMPLE_RATE, LatticeSampleCache.shared());
     }
 
     @Override
     public void process(GeneratingRegion region) {
         ElevationFacet facet = region.getRegionFacet(ElevationFacet.class);
-        float[] noise = riverNoise.noise(facet.getWorldArea());
+        float[] noise = riverNoise.noise(facet.getWorldArea())[0];
 
         float[] surfaceHeights = facet.getInternal();
         for (int i = 0; i < noise.length; ++i) {
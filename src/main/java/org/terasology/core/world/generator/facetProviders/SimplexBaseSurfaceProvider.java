@@ -18,8 +18,8 @@ package org.terasology.core.world.generator.facetProviders;
 import org.joml.Vector2f;
 import org.terasology.math.geom.Rect2i;
 import org.terasology.utilities.procedural.BrownianNoise;
-import org.terasology.utilities.procedural.SimplexNoise;
-import org.terasology.utilities.procedural.SubSampledNoise;
+import org.terasology.utilities.procedural.FusedSubSampledNoise;
+import org.terasology.utilities.procedural.LatticeSampleCache;
 import org.terasology.world.block.BlockAreac;
 import org.terasology.world.generation.Border3D;
 import org.terasology.world.generation.Facet;
@@ -38,19 +38,16 @@ public class SimplexBaseSurfaceProvider implements FacetProvider {
     private static final int SAMPLE_RATE = 4;
     private static final float BEACH_STEEPNESS = 0.05f;
     private static final float OCEAN_FLOOR_CUTOFF = 0.1f;
+    static final Vector2f ZOOM = new Vector2f(0.0002f, 0.0002f);
 
-    private SubSampledNoise surfaceNoise;
+    private FusedSubSampledNoise surfaceNoise;
+    private final ColumnFacetCache<float[]> columnCache = ColumnFacetCache.ofField();
 
     @Override
     public void setSeed(long seed) {
-        float spawnHeight = -1;
-        long currentSeed = (seed % 2 == 0) ? seed - 1 : seed;
-        while (spawnHeight < 0 || spawnHeight > 0.2) {
-            BrownianNoise source = new BrownianNoise(new SimplexNoise(currentSeed), 8);
-            surfaceNoise = new SubSampledNoise(source, new Vector2f(0.0002f, 0.0002f), SAMPLE_RATE);
-            spawnHeight = surfaceNoise.noise(0, 0);
-            currentSeed *= 3;
-        }
+        BrownianNoise source = SpawnHeightSeedSearch.createSource(SpawnHeightSeedSearch.find(seed));
+        surfaceNoise = new FusedSubSampledNoise(source, ZOOM, SAMPLE_RATE, LatticeSampleCache.shared());
+        columnCache.invalidate();
     }
 
     @Override
@@ -59,20 +56,32 @@ public class SimplexBaseSurfaceProvider implements FacetProvider {
         ElevationFacet facet = new ElevationFacet(region.getRegion(), border);
         SeaLevelFacet seaLevelFacet = region.getRegionFacet(SeaLevelFacet.class);
         float seaLevel = seaLevelFacet.getSeaLevel();
-        float[] noise = surfaceNoise.noise(facet.getWorldArea());
+        BlockAreac area = facet.getWorldArea();
+        // the shared noise of the column is only read, the heights are derived in a copy
+        float[] noise = columnCache.get(area, () -> surfaceNoise.noise(area)[0]).clone();
 
         for (int i = 0; i < noise.length; ++i) {
-            if (noise[i] > 0) {
-                noise[i] = seaLevel + noise[i] * (noise[i] + BEACH_STEEPNESS) * 1000;
-            } else if (noise[i] > -OCEAN_FLOOR_CUTOFF) {
-                noise[i] /= OCEAN_FLOOR_CUTOFF;
-                noise[i] = (noise[i] + 1) * (noise[i] + 1) * seaLevel;
-            } else {
-                noise[i] = 0;
-            }
+            noise[i] = toElevation(noise[i], seaLevel);
         }
 
         facet.set(noise);
         region.setRegionFacet(ElevationFacet.class, facet);
     }
+
+    /**
+     * Shapes the surface noise into the terrain: land rises steeply behind a beach, the sea floor drops to 0.
+     *
+     * @param noise the surface noise at a position
+     * @return the elevation in blocks
+     */
+    static float toElevation(float noise, float seaLevel) {
+        if (noise > 0) {
+            return seaLevel + noise * (noise + BEACH_STEEPNESS) * 1000;
+        } else if (noise > -OCEAN_FLOOR_CUTOFF) {
+            float depth = noise / OCEAN_FLOOR_CUTOFF;
+            return (depth + 1) * (depth + 1) * seaLevel;
+        } else {
+            return 0;
+        }
+    }
 }
@@ -20,8 +20,10 @@ import org.terasology.entitySystem.Component;
 import org.terasology.math.TeraMath;
 import org.terasology.nui.properties.Range;
 import org.terasology.utilities.procedural.BrownianNoise;
+import org.terasology.utilities.procedural.FusedSubSampledNoise;
+import org.terasology.utilities.procedural.LatticeSampleCache;
 import org.terasology.utilities.procedural.SimplexNoise;
-import org.terasology.utilities.procedural.SubSampledNoise;
+import org.terasology.world.block.BlockAreac;
 import org.terasology.world.generation.Border3D;
 import org.terasology.world.generation.ConfigurableFacetProvider;
 import org.terasology.world.generation.GeneratingRegion;
@@ -35,7 +37,8 @@ import org.terasology.world.generation.facets.SurfaceHumidityFacet;
 public class SimplexHumidityProvider implements ConfigurableFacetProvider {
     private static final int SAMPLE_RATE = 4;
 
-    private SubSampledNoise humidityNoise;
+    private FusedSubSampledNoise humidityNoise;
+    private final ColumnFacetCache<float[]> columnCache = ColumnFacetCache.ofField();
 
     private Configuration config = new Configuration();
 
@@ -63,11 +66,14 @@ public class SimplexHumidityProvider implements ConfigurableFacetProvider {
         Border3D border = region.getBorderForFacet(SurfaceHumidityFacet.class);
         SurfaceHumidityFacet facet = new SurfaceHumidityFacet(region.getRegion(), border);
 
-        float[] noise = humidityNoise.noise(facet.getWorldArea());
-        for (int i = 0; i < noise.length; ++i) {
-            noise[i] = TeraMath.clamp((noise[i] * 2.11f + 1f) * 0.5f);
-        }
-        facet.set(noise);
+        BlockAreac area = facet.getWorldArea();
+        facet.set(columnCache.get(area, () -> {
+            float[] noise = humidityNoise.noise(area)[0];
+            for (int i = 0; i < noise.length; ++i) {
+                noise[i] = TeraMath.clamp((noise[i] * 2.11f + 1f) * 0.5f);
+            }
+            return noise;
+        }));
         region.setRegionFacet(SurfaceHumidityFacet.class, facet);
     }
 
@@ -91,7 +97,8 @@ public class SimplexHumidityProvider implements ConfigurableFacetProvider {
         float realScale = config.scale * 0.01f;
         Vector2f scale = new Vector2f(realScale, realScale);
         BrownianNoise brown = new BrownianNoise(new SimplexNoise(seed + 6), config.octaves);
-        humidityNoise = new SubSampledNoise(brown, scale, SAMPLE_RATE);
+        humidityNoise = new FusedSubSampledNoise(brown, scale, SAMPLE_RATE, LatticeSampleCache.shared());
+        columnCache.invalidate();
     }
 
     public static class Configuration implements Component {
@@ -19,9 +19,10 @@ import org.joml.Vector2f;
 import org.terasology.entitySystem.Component;
 import org.terasology.math.TeraMath;
 import org.terasology.nui.properties.Range;
-import org.terasology.utilities.procedural.BrownianNoise;
+import org.terasology.utilities.procedural.FusedSubSampledNoise;
+import org.terasology.utilities.procedural.LatticeSampleCache;
+import org.terasology.utilities.procedural.Noise;
 import org.terasology.utilities.procedural.SimplexNoise;
-import org.terasology.utilities.procedural.SubSampledNoise;
 import org.terasology.world.generation.ConfigurableFacetProvider;
 import org.terasology.world.generation.Facet;
 import org.terasology.world.generation.FacetProvider;
@@ -36,18 +37,30 @@ import org.terasology.world.generation.facets.ElevationFacet;
 public class SimplexRiverProvider implements FacetProvider, ConfigurableFacetProvider {
     private static final int SAMPLE_RATE = 4;
 
-    private SubSampledNoise riverNoise;
+    private static final int OCTAVES = 8;
+
+    private long seed;
+    private FusedSubSampledNoise riverNoise;
     private SimplexRiverProviderConfiguration configuration = new SimplexRiverProviderConfiguration();
 
     @Override
     public void setSeed(long seed) {
-        riverNoise = new SubSampledNoise(new BrownianNoise(new SimplexNoise(seed + 2), 8), new Vector2f(0.0008f, 0.0008f), SAMPLE_RATE);
+        this.seed = seed;
+        reload();
+    }
+
+    private void reload() {
+        // the depth grows by 20 times the noise until it is capped
+        int octaves = OctaveBudget.octaves(SimplexRiverProvider.class, OCTAVES, configuration.maxDepth * 20f,
+                configuration.octaveEpsilon);
+        Noise noise = OctaveBudget.truncated(new SimplexNoise(seed + 2), OCTAVES, octaves);
+        riverNoise = new FusedSubSampledNoise(noise, new Vector2f(0.0008f, 0.0008f), SAMPLE_RATE, LatticeSampleCache.shared());
     }
 
     @Override
     public void process(GeneratingRegion region) {
         ElevationFacet facet = region.getRegionFacet(ElevationFacet.class);
-        float[] noise = riverNoise.noise(facet.getWorldArea());
+        float[] noise = riverNoise.noise(facet.getWorldArea())[0];
 
         float[] surfaceHeights = facet.getInternal();
         for (int i = 0; i < noise.length; ++i) {
@@ -68,10 +81,14 @@ public class SimplexRiverProvider implements FacetProvider, ConfigurableFacetPro
     @Override
     public void setConfiguration(Component configuration) {
         this.configuration = (SimplexRiverProviderConfiguration) configuration;
+        reload();
     }
 
     private static class SimplexRiverProviderConfiguration implements Component {
         @Range(min = 0, max = 64f, increment = 1f, precision = 0, description = "River Depth")
         public float maxDepth = 16;
+
+        @Range(min = 0, max = 4f, increment = 0.05f, precision = 2, description = "Largest height change in blocks from skipping noise octaves")
+        public float octaveEpsilon;
     }
 }
@@ -2,14 +2,19 @@
 // SPDX-License-Identifier: Apache-2.0
 package org.terasology.core.world.generator.facetProviders;
 
-import org.joml.Vector2ic;
+import org.joml.Vector2f;
 import org.terasology.core.world.generator.facets.SurfaceRoughnessFacet;
+import org.terasology.entitySystem.Component;
 import org.terasology.math.geom.BaseVector2i;
+import org.terasology.nui.properties.Checkbox;
 import org.terasology.utilities.procedural.BrownianNoise;
+import org.terasology.utilities.procedural.FusedSubSampledNoise;
+import org.terasology.utilities.procedural.LatticeSampleCache;
 import org.terasology.utilities.procedural.Noise;
 import org.terasology.utilities.procedural.SimplexNoise;
+import org.terasology.world.block.BlockAreac;
+import org.terasology.world.generation.ConfigurableFacetProvider;
 import org.terasology.world.generation.Facet;
-import org.terasology.world.generation.FacetProvider;
 import org.terasology.world.generation.GeneratingRegion;
 import org.terasology.world.generation.Produces;
 import org.terasology.world.generation.Requires;
@@ -24,14 +29,21 @@ import org.terasology.world.generation.facets.SeaLevelFacet;
     @Facet(ElevationFacet.class),
     @Facet(SeaLevelFacet.class)
 })
-public class SimplexRoughnessProvider implements FacetProvider {
+public class SimplexRoughnessProvider implements ConfigurableFacetProvider {
     private static final int SAMPLE_RATE = 4;
+    private static final Vector2f ZOOM = new Vector2f(1 / 500f, 1 / 500f);
 
     private Noise noise;
+    private FusedSubSampledNoise sampledNoise;
+    private final ColumnFacetCache<float[]> columnCache = ColumnFacetCache.ofField();
+
+    private Configuration configuration = new Configuration();
 
     @Override
     public void setSeed(long seed) {
         noise = new BrownianNoise(new SimplexNoise(seed + 92658), 3);
+        sampledNoise = new FusedSubSampledNoise(noise, ZOOM, SAMPLE_RATE, LatticeSampleCache.shared());
+        columnCache.invalidate();
     }
 
     @Override
@@ -40,12 +52,70 @@ public class SimplexRoughnessProvider implements FacetProvider {
         SeaLevelFacet seaLevelFacet = region.getRegionFacet(SeaLevelFacet.class);
         SurfaceRoughnessFacet facet = new SurfaceRoughnessFacet(region.getRegion(), region.getBorderForFacet(SurfaceRoughnessFacet.class));
 
-        for (Vector2ic pos : facet.getWorldArea()) {
-            float height = elevationFacet.getWorld(pos) - seaLevelFacet.getSeaLevel();
-            float value = 0.25f + height * 0.007f + noise.noise(pos.x() / 500f, pos.y() / 500f) * 1.5f;
-            facet.setWorld(pos, value);
+        // the noise only depends on the column, the elevation is added per chunk
+        BlockAreac area = facet.getWorldArea();
+        float[] columnNoise = columnCache.get(area, () -> noise(area));
+
+        // the elevation covers at least the area of the roughness
+        BlockAreac elevationArea = elevationFacet.getWorldArea();
+        float[] elevation = elevationFacet.getInternal();
+        float[] roughness = facet.getInternal();
+        int seaLevel = seaLevelFacet.getSeaLevel();
+        int sizeX = area.getSizeX();
+        for (int y = 0; y < area.getSizeY(); y++) {
+            int row = y * sizeX;
+            int elevationRow = (area.minY() + y - elevationArea.minY()) * elevationArea.getSizeX() + area.minX() - elevationArea.minX();
+            for (int x = 0; x < sizeX; x++) {
+                float height = elevation[elevationRow + x] - seaLevel;
+                roughness[row + x] = 0.25f + height * 0.007f + columnNoise[row + x];
+            }
         }
 
         region.setRegionFacet(SurfaceRoughnessFacet.class, facet);
     }
+
+    private float[] noise(BlockAreac area) {
+        float[] values;
+        if (configuration.subsampled) {
+            values = sampledNoise.noise(area)[0];
+            for (int i = 0; i < values.length; i++) {
+                values[i] *= 1.5f;
+            }
+        } else {
+            values = new float[area.getSizeX() * area.getSizeY()];
+            for (int y = 0; y < area.getSizeY(); y++) {
+                for (int x = 0; x < area.getSizeX(); x++) {
+                    int worldX = area.minX() + x;
+                    int worldY = area.minY() + y;
+                    values[y * area.getSizeX() + x] = noise.noise(worldX / 500f, worldY / 500f) * 1.5f;
+                }
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public String getConfigurationName() {
+        return "Roughness";
+    }
+
+    @Override
+    public Component getConfiguration() {
+        return configuration;
+    }
+
+    @Override
+    public void setConfiguration(Component configuration) {
+        this.configuration = (Configuration) configuration;
+        columnCache.invalidate();
+    }
+
+    public static class Configuration implements Component {
+        /**
+         * Samples the noise every {@link #SAMPLE_RATE} blocks and interpolates in between, rather than evaluating it at
+         * every block. This needs about 1/16 of the noise evaluations, but the values differ slightly from the exact ones.
+         */
+        @Checkbox(description = "Interpolate the roughness noise between samples every 4 blocks")
+        public boolean subsampled;
+    }
 }
@@ -0,0 +1,151 @@
+// Copyright 2020 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.core.world.generator.facetProviders;
+
+import org.joml.Vector2f;
+import org.joml.Vector2fc;
+import org.terasology.entitySystem.Component;
+import org.terasology.math.TeraMath;
+import org.terasology.nui.properties.Range;
+import org.terasology.utilities.procedural.BrownianNoise;
+import org.terasology.utilities.procedural.FusedSubSampledNoise;
+import org.terasology.utilities.procedural.LatticeSampleCache;
+import org.terasology.utilities.procedural.Noise;
+import org.terasology.utilities.procedural.SimplexNoise;
+import org.terasology.world.block.BlockAreac;
+import org.terasology.world.generation.ConfigurableFacetProvider;
+import org.terasology.world.generation.Facet;
+import org.terasology.world.generation.GeneratingRegion;
+import org.terasology.world.generation.Produces;
+import org.terasology.world.generation.Requires;
+import org.terasology.world.generation.facets.ElevationFacet;
+import org.terasology.world.generation.facets.SeaLevelFacet;
+import org.terasology.world.generation.facets.SurfaceHumidityFacet;
+import org.terasology.world.generation.facets.SurfaceTemperatureFacet;
+
+/**
+ * Produces the base surface, humidity and temperature of the Simplex world in one pass over a shared noise grid. The
+ * values are the same as those of {@link SimplexBaseSurfaceProvider}, {@link SimplexHumidityProvider} and
+ * {@link SimplexSurfaceTemperatureProvider}, which it replaces.
+ * <p>
+ * The humidity is configured like that of {@link SimplexHumidityProvider}, and the temperature has an octave budget like
+ * that of {@link SimplexSurfaceTemperatureProvider}. Both are part of the "Climate" configuration, since a provider has
+ * only one.
+ */
+@Produces({ElevationFacet.class, SurfaceHumidityFacet.class, SurfaceTemperatureFacet.class})
+@Requires(@Facet(SeaLevelFacet.class))
+public class SimplexSurfaceFieldsProvider implements ConfigurableFacetProvider {
+    private static final int SAMPLE_RATE = 4;
+
+    private static final int SURFACE = 0;
+    private static final int HUMIDITY = 1;
+    private static final int TEMPERATURE = 2;
+
+    private static final Vector2f TEMPERATURE_ZOOM = new Vector2f(0.0005f, 0.0005f);
+    private static final int TEMPERATURE_OCTAVES = 8;
+
+    private Noise surfaceSource;
+    private FusedSubSampledNoise fields;
+
+    /**
+     * The fields of a column, keyed by the areas of all three facets
+     */
+    private final ColumnFacetCache<float[][]> columnCache = ColumnFacetCache.ofFields();
+
+    private Configuration config = new Configuration();
+
+    private long seed;
+
+    @Override
+    public void setSeed(long seed) {
+        this.seed = seed;
+
+        surfaceSource = SpawnHeightSeedSearch.createSource(SpawnHeightSeedSearch.find(seed));
+        reload();
+    }
+
+    @Override
+    public void process(GeneratingRegion region) {
+        ElevationFacet elevation = new ElevationFacet(region.getRegion(), region.getBorderForFacet(ElevationFacet.class));
+        SurfaceHumidityFacet humidity = new SurfaceHumidityFacet(region.getRegion(), region.getBorderForFacet(SurfaceHumidityFacet.class));
+        SurfaceTemperatureFacet temperature = new SurfaceTemperatureFacet(region.getRegion(),
+                region.getBorderForFacet(SurfaceTemperatureFacet.class));
+        float seaLevel = region.getRegionFacet(SeaLevelFacet.class).getSeaLevel();
+
+        BlockAreac[] areas = new BlockAreac[3];
+        areas[SURFACE] = elevation.getWorldArea();
+        areas[HUMIDITY] = humidity.getWorldArea();
+        areas[TEMPERATURE] = temperature.getWorldArea();
+        float[][] values = columnCache.get(areas, () -> {
+            float[][] noise = fields.noise(areas);
+            toClimate(noise[HUMIDITY]);
+            toClimate(noise[TEMPERATURE]);
+            return noise;
+        });
+
+        // the shared noise of the column is only read, the heights are derived in a copy
+        float[] heights = new float[values[SURFACE].length];
+        for (int i = 0; i < heights.length; ++i) {
+            heights[i] = SimplexBaseSurfaceProvider.toElevation(values[SURFACE][i], seaLevel);
+        }
+        elevation.set(heights);
+        humidity.set(values[HUMIDITY]);
+        temperature.set(values[TEMPERATURE]);
+
+        region.setRegionFacet(ElevationFacet.class, elevation);
+        region.setRegionFacet(SurfaceHumidityFacet.class, humidity);
+        region.setRegionFacet(SurfaceTemperatureFacet.class, temperature);
+    }
+
+    private static void toClimate(float[] noise) {
+        for (int i = 0; i < noise.length; ++i) {
+            noise[i] = TeraMath.clamp((noise[i] * 2.11f + 1f) * 0.5f);
+        }
+    }
+
+    @Override
+    public String getConfigurationName() {
+        return "Climate";
+    }
+
+    @Override
+    public Component getConfiguration() {
+        return config;
+    }
+
+    @Override
+    public void setConfiguration(Component configuration) {
+        this.config = (Configuration) configuration;
+        reload();
+    }
+
+    private void reload() {
+        float realScale = config.humidityScale * 0.01f;
+        Noise[] sources = new Noise[3];
+        Vector2fc[] zooms = new Vector2fc[3];
+        sources[SURFACE] = surfaceSource;
+        zooms[SURFACE] = SimplexBaseSurfaceProvider.ZOOM;
+        sources[HUMIDITY] = new BrownianNoise(new SimplexNoise(seed + 6), config.humidityOctaves);
+        zooms[HUMIDITY] = new Vector2f(realScale, realScale);
+        int temperatureOctaves = OctaveBudget.octaves(SimplexSurfaceFieldsProvider.class, TEMPERATURE_OCTAVES, 2.11f * 0.5f,
+                config.temperatureOctaveEpsilon);
+        sources[TEMPERATURE] = OctaveBudget.truncated(new SimplexNoise(seed + 5), TEMPERATURE_OCTAVES, temperatureOctaves);
+        zooms[TEMPERATURE] = TEMPERATURE_ZOOM;
+        fields = new FusedSubSampledNoise(sources, zooms, SAMPLE_RATE, LatticeSampleCache.shared());
+        columnCache.invalidate();
+    }
+
+    /**
+     * The surface always evaluates all of its octaves.
+     */
+    public static class Configuration implements Component {
+        @Range(min = 0, max = 10.0f, increment = 1f, precision = 0, description = "The number of humidity noise octaves")
+        public int humidityOctaves = 8;
+
+        @Range(min = 0.01f, max = 5f, increment = 0.01f, precision = 2, description = "The humidity noise scale")
+        public float humidityScale = 0.05f;
+
+        @Range(min = 0, max = 0.2f, increment = 0.01f, precision = 2, description = "Largest temperature change from skipping noise octaves")
+        public float temperatureOctaveEpsilon = SimplexSurfaceTemperatureProvider.DEFAULT_OCTAVE_EPSILON;
+    }
+}
@@ -16,11 +16,15 @@
 package org.terasology.core.world.generator.facetProviders;
 
 import org.joml.Vector2f;
+import org.terasology.entitySystem.Component;
 import org.terasology.math.TeraMath;
-import org.terasology.utilities.procedural.BrownianNoise;
+import org.terasology.nui.properties.Range;
+import org.terasology.utilities.procedural.FusedSubSampledNoise;
+import org.terasology.utilities.procedural.LatticeSampleCache;
+import org.terasology.utilities.procedural.Noise;
 import org.terasology.utilities.procedural.SimplexNoise;
-import org.terasology.utilities.procedural.SubSampledNoise;
-import org.terasology.world.generation.FacetProvider;
+import org.terasology.world.block.BlockAreac;
+import org.terasology.world.generation.ConfigurableFacetProvider;
 import org.terasology.world.generation.GeneratingRegion;
 import org.terasology.world.generation.Produces;
 import org.terasology.world.generation.facets.SurfaceTemperatureFacet;
@@ -28,26 +32,66 @@ import org.terasology.world.generation.facets.SurfaceTemperatureFacet;
 /**
  */
 @Produces(SurfaceTemperatureFacet.class)
-public class SimplexSurfaceTemperatureProvider implements FacetProvider {
+public class SimplexSurfaceTemperatureProvider implements ConfigurableFacetProvider {
     private static final int SAMPLE_RATE = 4;
+    private static final int OCTAVES = 8;
 
-    private SubSampledNoise temperatureNoise;
+    /**
+     * Leaves out the two finest of the eight octaves, which change the temperature by less than 2% of its range
+     */
+    static final float DEFAULT_OCTAVE_EPSILON = 0.02f;
+
+    private long seed;
+    private FusedSubSampledNoise temperatureNoise;
+    private Configuration configuration = new Configuration();
+    private final ColumnFacetCache<float[]> columnCache = ColumnFacetCache.ofField();
 
     @Override
     public void setSeed(long seed) {
-        temperatureNoise = new SubSampledNoise(new BrownianNoise(new SimplexNoise(seed + 5), 8), new Vector2f(0.0005f, 0.0005f), SAMPLE_RATE);
+        this.seed = seed;
+        reload();
     }
 
     @Override
     public void process(GeneratingRegion region) {
         SurfaceTemperatureFacet facet = new SurfaceTemperatureFacet(region.getRegion(), region.getBorderForFacet(SurfaceTemperatureFacet.class));
-        float[] noise = this.temperatureNoise.noise(facet.getWorldArea());
-
-        for (int i = 0; i < noise.length; ++i) {
-            noise[i] = TeraMath.clamp((noise[i] * 2.11f + 1f) * 0.5f);
-        }
+        BlockAreac area = facet.getWorldArea();
+        facet.set(columnCache.get(area, () -> {
+            float[] noise = this.temperatureNoise.noise(area)[0];
 
-        facet.set(noise);
+            for (int i = 0; i < noise.length; ++i) {
+                noise[i] = TeraMath.clamp((noise[i] * 2.11f + 1f) * 0.5f);
+            }
+            return noise;
+        }));
         region.setRegionFacet(SurfaceTemperatureFacet.class, facet);
     }
+
+    @Override
+    public String getConfigurationName() {
+        return "Temperature";
+    }
+
+    @Override
+    public Component getConfiguration() {
+        return configuration;
+    }
+
+    @Override
+    public void setConfiguration(Component configuration) {
+        this.configuration = (Configuration) configuration;
+        reload();
+    }
+
+    private void reload() {
+        int octaves = OctaveBudget.octaves(SimplexSurfaceTemperatureProvider.class, OCTAVES, 2.11f * 0.5f, configuration.octaveEpsilon);
+        Noise noise = OctaveBudget.truncated(new SimplexNoise(seed + 5), OCTAVES, octaves);
+        temperatureNoise = new FusedSubSampledNoise(noise, new Vector2f(0.0005f, 0.0005f), SAMPLE_RATE, LatticeSampleCache.shared());
+        columnCache.invalidate();
+    }
+
+    public static class Configuration implements Component {
+        @Range(min = 0, max = 0.2f, increment = 0.01f, precision = 2, description = "Largest temperature change from skipping noise octaves")
+        public float octaveEpsilon = DEFAULT_OCTAVE_EPSILON;
+    }
 }
@@ -0,0 +1,63 @@
+// Copyright 2020 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.core.world.generator.facetProviders;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import org.terasology.utilities.procedural.BrownianNoise;
+import org.terasology.utilities.procedural.SimplexNoise;
+
+/**
+ * Finds the seed of the Simplex base surface noise that puts the spawn point at (0, 0) slightly above sea level.
+ * Candidates are derived from the world seed until one fits; the result is remembered per world seed, so reloading
+ * the providers does not search again.
+ * <p>
+ * The subsampled surface noise at (0, 0) is exactly its source noise at the origin, because the origin is a sample
+ * point. Candidates are therefore checked with a single evaluation of the source instead of building the subsampled
+ * noise and interpolating the four samples around the origin.
+ */
+final class SpawnHeightSeedSearch {
+
+    private static final int OCTAVES = 8;
+    private static final double MIN_SPAWN_HEIGHT = 0;
+    private static final double MAX_SPAWN_HEIGHT = 0.2;
+
+    private static final LoadingCache<Long, Long> SEEDS = CacheBuilder.newBuilder()
+            .maximumSize(64)
+            .build(new CacheLoader<Long, Long>() {
+                @Override
+                public Long load(Long seed) {
+                    return search(seed);
+                }
+            });
+
+    private SpawnHeightSeedSearch() {
+        // no instances
+    }
+
+    /**
+     * @param seed the world seed
+     * @return the seed of the surface noise
+     */
+    static long find(long seed) {
+        return SEEDS.getUnchecked(seed);
+    }
+
+    /**
+     * @return the source of the surface noise for the seed that {@link #find(long)} returned
+     */
+    static BrownianNoise createSource(long surfaceSeed) {
+        return new BrownianNoise(new SimplexNoise(surfaceSeed), OCTAVES);
+    }
+
+    private static long search(long seed) {
+        long currentSeed = (seed % 2 == 0) ? seed - 1 : seed;
+        float spawnHeight = createSource(currentSeed).noise(0, 0);
+        while (spawnHeight < MIN_SPAWN_HEIGHT || spawnHeight > MAX_SPAWN_HEIGHT) {
+            currentSeed *= 3;
+            spawnHeight = createSource(currentSeed).noise(0, 0);
+        }
+        return currentSeed;
+    }
+}
@@ -0,0 +1,167 @@
+// Copyright 2020 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.core.world.generator.facetProviders;
+
+import org.terasology.core.world.generator.TiledClimateSimulator;
+import org.terasology.math.TeraMath;
+import org.terasology.utilities.procedural.BrownianNoise;
+import org.terasology.world.block.BlockAreac;
+import org.terasology.world.generation.Facet;
+import org.terasology.world.generation.FacetProvider;
+import org.terasology.world.generation.GeneratingRegion;
+import org.terasology.world.generation.Produces;
+import org.terasology.world.generation.Requires;
+import org.terasology.world.generation.facets.SeaLevelFacet;
+import org.terasology.world.generation.facets.SurfaceHumidityFacet;
+import org.terasology.world.generation.facets.SurfaceTemperatureFacet;
+
+/**
+ * Derives surface temperature and humidity of an unbounded world from its terrain, using a {@link TiledClimateSimulator}.
+ * It is the counterpart of {@link HeightMapClimateProvider} for worlds whose surface comes from noise: the terrain is
+ * sampled once per climate cell of {@link #CELL_SIZE} blocks, tiles of cells are simulated when a region first needs
+ * them, and every region is a bilinear lookup into the tiles.
+ * <p>
+ * Poles lie at z = 0 and every {@link #LATITUDE_PERIOD} cells from there, with the equator half-way in between.
+ */
+@Produces({SurfaceTemperatureFacet.class, SurfaceHumidityFacet.class})
+@Requires(@Facet(SeaLevelFacet.class))
+public class TiledClimateProvider implements FacetProvider {
+
+    /**
+     * The width of a climate cell, in blocks.
+     */
+    static final int CELL_SIZE = 16;
+
+    /**
+     * The distance from one pole to the next, in cells.
+     */
+    static final int LATITUDE_PERIOD = 512;
+
+    private static final int TILE_SIZE = 64;
+    private static final int HALO = 32;
+    private static final int MAX_TILES = 64;
+
+    /**
+     * The surface of a world.
+     */
+    @FunctionalInterface
+    public interface Terrain {
+        /**
+         * @return the elevation of the surface at the given position, in blocks
+         */
+        float getElevation(int x, int z);
+    }
+
+    /**
+     * Creates the surface of a world, like the providers of its elevation would.
+     */
+    @FunctionalInterface
+    public interface TerrainFactory {
+        Terrain create(long seed, float seaLevel);
+    }
+
+    private final TerrainFactory terrainFactory;
+
+    private long seed;
+    private TiledClimateSimulator simulator;
+    private float simulatorSeaLevel;
+
+    /**
+     * @param terrainFactory the surface the climate is derived from
+     */
+    public TiledClimateProvider(TerrainFactory terrainFactory) {
+        this.terrainFactory = terrainFactory;
+    }
+
+    /**
+     * @return a provider for the surface of {@link SimplexBaseSurfaceProvider}
+     */
+    public static TiledClimateProvider ofSimplexSurface() {
+        return new TiledClimateProvider((seed, seaLevel) -> {
+            BrownianNoise source = SpawnHeightSeedSearch.createSource(SpawnHeightSeedSearch.find(seed));
+            return (x, z) -> SimplexBaseSurfaceProvider.toElevation(
+                    source.noise(x * SimplexBaseSurfaceProvider.ZOOM.x(), z * SimplexBaseSurfaceProvider.ZOOM.y()), seaLevel);
+        });
+    }
+
+    @Override
+    public synchronized void setSeed(long seed) {
+        this.seed = seed;
+        simulator = null;
+    }
+
+    @Override
+    public void process(GeneratingRegion region) {
+        SeaLevelFacet seaLevelFacet = region.getRegionFacet(SeaLevelFacet.class);
+        TiledClimateSimulator climate = getSimulator(seaLevelFacet.getSeaLevel());
+
+        SurfaceTemperatureFacet temperatureFacet = new SurfaceTemperatureFacet(region.getRegion(),
+                region.getBorderForFacet(SurfaceTemperatureFacet.class));
+        float[] temperature = sample(climate, temperatureFacet.getWorldArea(), false);
+        for (int i = 0; i < temperature.length; ++i) {
+            temperature[i] = TeraMath.clamp(temperature[i]);
+        }
+        temperatureFacet.set(temperature);
+        region.setRegionFacet(SurfaceTemperatureFacet.class, temperatureFacet);
+
+        SurfaceHumidityFacet humidityFacet = new SurfaceHumidityFacet(region.getRegion(),
+                region.getBorderForFacet(SurfaceHumidityFacet.class));
+        float[] humidity = sample(climate, humidityFacet.getWorldArea(), true);
+        for (int i = 0; i < humidity.length; ++i) {
+            // the simulator yields the normalized distance from water, which is dry when far away
+            humidity[i] = TeraMath.clamp(1 - humidity[i]);
+        }
+        humidityFacet.set(humidity);
+        region.setRegionFacet(SurfaceHumidityFacet.class, humidityFacet);
+    }
+
+    /**
+     * Bilinear interpolation between the cells around the area. Cell (i, j) lies at block (i, j) * {@link #CELL_SIZE}.
+     */
+    private static float[] sample(TiledClimateSimulator climate, BlockAreac area, boolean humidity) {
+        int minCellX = Math.floorDiv(area.minX(), CELL_SIZE);
+        int minCellZ = Math.floorDiv(area.minY(), CELL_SIZE);
+        int cellsX = Math.floorDiv(area.maxX(), CELL_SIZE) + 2 - minCellX;
+        int cellsZ = Math.floorDiv(area.maxY(), CELL_SIZE) + 2 - minCellZ;
+        float[] cells = new float[cellsX * cellsZ];
+        for (int z = 0; z < cellsZ; z++) {
+            for (int x = 0; x < cellsX; x++) {
+                cells[z * cellsX + x] = humidity
+                        ? climate.getHumidity(minCellX + x, minCellZ + z)
+                        : climate.getClimate(minCellX + x, minCellZ + z);
+            }
+        }
+
+        float[] result = new float[area.getSizeX() * area.getSizeY()];
+        int i = 0;
+        for (int z = 0; z < area.getSizeY(); z++) {
+            int offsetZ = area.minY() + z - minCellZ * CELL_SIZE;
+            int row0 = offsetZ / CELL_SIZE * cellsX;
+            int row1 = row0 + cellsX;
+            float relZ = (offsetZ % CELL_SIZE) / (float) CELL_SIZE;
+            for (int x = 0; x < area.getSizeX(); x++) {
+                int offsetX = area.minX() + x - minCellX * CELL_SIZE;
+                int cell = offsetX / CELL_SIZE;
+                float relX = (offsetX % CELL_SIZE) / (float) CELL_SIZE;
+                float top = TeraMath.lerp(cells[row0 + cell], cells[row0 + cell + 1], relX);
+                float bottom = TeraMath.lerp(cells[row1 + cell], cells[row1 + cell + 1], relX);
+                result[i++] = TeraMath.lerp(top, bottom, relZ);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Creates the simulator for the current seed on first use and whenever the sea level changed.
+     * The simulator expects heights relative to the sea level, where values below 1 are water.
+     */
+    private synchronized TiledClimateSimulator getSimulator(float seaLevel) {
+        if (simulator == null || simulatorSeaLevel != seaLevel) {
+            Terrain terrain = terrainFactory.create(seed, seaLevel);
+            simulator = new TiledClimateSimulator((x, y) -> terrain.getElevation(x * CELL_SIZE, y * CELL_SIZE) / seaLevel,
+                    TILE_SIZE, HALO, LATITUDE_PERIOD, MAX_TILES);
+            simulatorSeaLevel = seaLevel;
+        }
+        return simulator;
+    }
+}
@@ -0,0 +1,141 @@
+// Copyright 2020 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.core.world.generator.facetProviders;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import org.terasology.core.world.generator.FloatGrid;
+
+/**
+ * Splits a heightmap into square tiles that are decoded the first time they are read. Only a bounded number of tiles
+ * is kept; the least recently used ones are dropped first and decoded again when needed.
+ * <p>
+ * The store is safe to use from several threads.
+ */
+public final class TiledHeightMapStore implements HeightMapStore {
+
+    /**
+     * Decodes a rectangle of the heightmap.
+     */
+    @FunctionalInterface
+    public interface TileLoader {
+
+        /**
+         * @return the heights of the rectangle, with <code>(0, 0)</code> at <code>(minX, minY)</code>
+         */
+        FloatGrid load(int minX, int minY, int width, int height);
+    }
+
+    private static final class Tile {
+        private final int tileX;
+        private final int tileY;
+        private final FloatGrid values;
+
+        Tile(int tileX, int tileY, FloatGrid values) {
+            this.tileX = tileX;
+            this.tileY = tileY;
+            this.values = values;
+        }
+    }
+
+    private final int width;
+    private final int height;
+    private final int tileSize;
+    private final int tilesX;
+    private final TileLoader loader;
+    private final LoadingCache<Integer, Tile> tiles;
+
+    /**
+     * The tile each thread read last, which is most likely its next one as well. Kept per thread so that threads
+     * working on different regions do not overwrite each other's.
+     */
+    private final ThreadLocal<Tile> lastTile = new ThreadLocal<>();
+
+    /**
+     * @param tileSize the width and height of a tile in pixels
+     * @param maxTiles the maximum number of tiles to keep
+     * @param loader decodes a tile, possibly from several threads at once
+     */
+    public TiledHeightMapStore(int width, int height, int tileSize, long maxTiles, TileLoader loader) {
+        Preconditions.checkArgument(width > 0 && height > 0, "Invalid height map size %sx%s", width, height);
+        Preconditions.checkArgument(tileSize > 0, "Tile size must be positive");
+        this.width = width;
+        this.height = height;
+        this.tileSize = tileSize;
+        this.tilesX = (width + tileSize - 1) / tileSize;
+        long tileCount = (long) tilesX * ((height + tileSize - 1) / tileSize);
+        Preconditions.checkArgument(tileCount <= Integer.MAX_VALUE, "Too many tiles for %sx%s", width, height);
+        this.loader = loader;
+        this.tiles = CacheBuilder.newBuilder()
+                .maximumSize(maxTiles)
+                .recordStats()
+                .build(new CacheLoader<Integer, Tile>() {
+                    @Override
+                    public Tile load(Integer key) {
+                        return loadTile(key % tilesX, key / tilesX);
+                    }
+                });
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    @Override
+    public float get(int x, int y) {
+        int tileX = x / tileSize;
+        int tileY = y / tileSize;
+        Tile tile = lastTile.get();
+        if (tile == null || tile.tileX != tileX || tile.tileY != tileY) {
+            tile = tiles.getUnchecked(tileY * tilesX + tileX);
+            lastTile.set(tile);
+        }
+        return tile.values.get(x - tileX * tileSize, y - tileY * tileSize);
+    }
+
+    /**
+     * @return the hits, misses and evictions of the tile cache so far; reads of the tile a thread used last are not
+     *         counted
+     */
+    public CacheStats getStats() {
+        return tiles.stats();
+    }
+
+    /**
+     * @return the number of tiles currently kept
+     */
+    public long getResidentTiles() {
+        return tiles.size();
+    }
+
+    private Tile loadTile(int tileX, int tileY) {
+        int minX = tileX * tileSize;
+        int minY = tileY * tileSize;
+        int tileWidth = Math.min(tileSize, width - minX);
+        int tileHeight = Math.min(tileSize, height - minY);
+        FloatGrid values = loader.load(minX, minY, tileWidth, tileHeight);
+        Preconditions.checkState(values.getWidth() == tileWidth && values.getHeight() == tileHeight,
+                "Expected a %sx%s tile, got %sx%s", tileWidth, tileHeight, values.getWidth(), values.getHeight());
+        return new Tile(tileX, tileY, values);
+    }
+
+    @Override
+    public String toString() {
+        CacheStats stats = getStats();
+        return String.format("%dx%d in %d px tiles: %d resident, %d hits, %d misses, %d evictions",
+                width, height, tileSize, getResidentTiles(), stats.hitCount(), stats.missCount(), stats.evictionCount());
+    }
+}
@@ -0,0 +1,119 @@
+// Copyright 2020 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.core.world.generator.facetProviders;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import org.terasology.core.world.generator.facetProviders.HeightMapSurfaceHeightProvider.InterpolationMode;
+import org.terasology.core.world.generator.facetProviders.HeightMapSurfaceHeightProvider.WrapMode;
+
+import java.util.Objects;
+
+/**
+ * Keeps heights that were interpolated at world resolution in square tiles, so generating an area again only copies
+ * them. The tiles depend on the heightmap and on every setting that affects the interpolation, which are all part of
+ * the key. The cache is bounded by the memory of the tiles; the least recently used ones are dropped first.
+ */
+final class UpsampledTileCache {
+
+    /**
+     * The width and height of a tile in blocks.
+     */
+    static final int TILE_SIZE = 64;
+
+    private static final class Key {
+        private final HeightMapStore map;
+        private final WrapMode wrapMode;
+        private final InterpolationMode mode;
+        private final int xzScale;
+        private final float offset;
+        private final float scale;
+        private final int tileX;
+        private final int tileZ;
+
+        Key(HeightMapStore map, WrapMode wrapMode, InterpolationMode mode, int xzScale, float offset, float scale, int tileX, int tileZ) {
+            this.map = map;
+            this.wrapMode = wrapMode;
+            this.mode = mode;
+            this.xzScale = xzScale;
+            this.offset = offset;
+            this.scale = scale;
+            this.tileX = tileX;
+            this.tileZ = tileZ;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return map == other.map && wrapMode == other.wrapMode && mode == other.mode && xzScale == other.xzScale
+                    && Float.compare(offset, other.offset) == 0 && Float.compare(scale, other.scale) == 0
+                    && tileX == other.tileX && tileZ == other.tileZ;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(System.identityHashCode(map), wrapMode, mode, xzScale, offset, scale, tileX, tileZ);
+        }
+    }
+
+    private final LoadingCache<Key, float[]> tiles;
+
+    /**
+     * @param maxBytes the memory the tiles may use
+     */
+    UpsampledTileCache(long maxBytes) {
+        tiles = CacheBuilder.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((Key key, float[] tile) -> tile.length * Float.BYTES)
+                .recordStats()
+                .build(new CacheLoader<Key, float[]>() {
+                    @Override
+                    public float[] load(Key key) {
+                        float[] tile = new float[TILE_SIZE * TILE_SIZE];
+                        HeightMapSurfaceHeightProvider.interpolate(key.map, key.wrapMode, key.mode, key.xzScale, key.offset,
+                                key.scale, key.tileX * TILE_SIZE, key.tileZ * TILE_SIZE, TILE_SIZE, TILE_SIZE, tile);
+                        return tile;
+                    }
+                });
+    }
+
+    /**
+     * Writes the interpolated heights of an area into <code>dest</code>, row by row, computing missing tiles.
+     */
+    void fill(HeightMapStore map, WrapMode wrapMode, InterpolationMode mode, int xzScale, float offset, float scale,
+              int minX, int minZ, int sizeX, int sizeZ, float[] dest) {
+        int maxX = minX + sizeX;
+        int maxZ = minZ + sizeZ;
+        for (int tileZ = Math.floorDiv(minZ, TILE_SIZE); tileZ * TILE_SIZE < maxZ; tileZ++) {
+            for (int tileX = Math.floorDiv(minX, TILE_SIZE); tileX * TILE_SIZE < maxX; tileX++) {
+                float[] tile = tiles.getUnchecked(new Key(map, wrapMode, mode, xzScale, offset, scale, tileX, tileZ));
+
+                // the part of the tile that lies within the area
+                int fromX = Math.max(minX, tileX * TILE_SIZE);
+                int toX = Math.min(maxX, (tileX + 1) * TILE_SIZE);
+                int fromZ = Math.max(minZ, tileZ * TILE_SIZE);
+                int toZ = Math.min(maxZ, (tileZ + 1) * TILE_SIZE);
+                for (int z = fromZ; z < toZ; z++) {
+                    System.arraycopy(tile, (z - tileZ * TILE_SIZE) * TILE_SIZE + fromX - tileX * TILE_SIZE,
+                            dest, (z - minZ) * sizeX + fromX - minX, toX - fromX);
+                }
+            }
+        }
+    }
+
+    void invalidateAll() {
+        tiles.invalidateAll();
+    }
+
+    CacheStats getStats() {
+        return tiles.stats();
+    }
+}
@@ -18,9 +18,8 @@ package org.terasology.core.world.generator.worldGenerators;
 import org.terasology.core.world.generator.facetProviders.BiomeProvider;
 import org.terasology.core.world.generator.facetProviders.DefaultFloraProvider;
 import org.terasology.core.world.generator.facetProviders.DefaultTreeProvider;
+import org.terasology.core.world.generator.facetProviders.HeightMapClimateProvider;
 import org.terasology.core.world.generator.facetProviders.HeightMapSurfaceHeightProvider;
-import org.terasology.core.world.generator.facetProviders.PerlinHumidityProvider;
-import org.terasology.core.world.generator.facetProviders.PerlinSurfaceTemperatureProvider;
 import org.terasology.core.world.generator.facetProviders.SeaLevelProvider;
 import org.terasology.core.world.generator.facetProviders.SimplexRoughnessProvider;
 import org.terasology.core.world.generator.facetProviders.SurfaceToDensityProvider;
@@ -48,12 +47,13 @@ public class HeightMapWorldGenerator extends BaseFacetedWorldGenerator {
 
     @Override
     protected WorldBuilder createWorld() {
+        HeightMapSurfaceHeightProvider surfaceHeightProvider = new HeightMapSurfaceHeightProvider();
+
         return new WorldBuilder(worldGeneratorPluginLibrary)
                 .setSeaLevel(16)
                 .addProvider(new SeaLevelProvider(16))
-                .addProvider(new HeightMapSurfaceHeightProvider())
-                .addProvider(new PerlinHumidityProvider())
-                .addProvider(new PerlinSurfaceTemperatureProvider())
+                .addProvider(surfaceHeightProvider)
+                .addProvider(new HeightMapClimateProvider(surfaceHeightProvider))
                 .addProvider(new SimplexRoughnessProvider())
                 .addProvider(new BiomeProvider())
                 .addProvider(new SurfaceToDensityProvider())
@@ -10,11 +10,9 @@ import org.terasology.core.world.generator.facetProviders.DefaultFloraProvider;
 import org.terasology.core.world.generator.facetProviders.DefaultTreeProvider;
 import org.terasology.core.world.generator.facetProviders.DensityNoiseProvider;
 import org.terasology.core.world.generator.facetProviders.SeaLevelProvider;
-import org.terasology.core.world.generator.facetProviders.SimplexBaseSurfaceProvider;
-import org.terasology.core.world.generator.facetProviders.SimplexHumidityProvider;
 import org.terasology.core.world.generator.facetProviders.SimplexRiverProvider;
 import org.terasology.core.world.generator.facetProviders.SimplexRoughnessProvider;
-import org.terasology.core.world.generator.facetProviders.SimplexSurfaceTemperatureProvider;
+import org.terasology.core.world.generator.facetProviders.SimplexSurfaceFieldsProvider;
 import org.terasology.core.world.generator.facetProviders.SpawnPlateauProvider;
 import org.terasology.core.world.generator.facetProviders.SurfaceToDensityProvider;
 import org.terasology.core.world.generator.rasterizers.FloraRasterizer;
@@ -57,9 +55,7 @@ public class SimplexFacetedWorldGenerator extends BaseFacetedWorldGenerator {
         return new WorldBuilder(worldGeneratorPluginLibrary)
                 .setSeaLevel(seaLevel)
                 .addProvider(new SeaLevelProvider(seaLevel))
-                .addProvider(new SimplexHumidityProvider())
-                .addProvider(new SimplexSurfaceTemperatureProvider())
-                .addProvider(new SimplexBaseSurfaceProvider())
+                .addProvider(new SimplexSurfaceFieldsProvider())
                 .addProvider(new SimplexRiverProvider())
                 .addProvider(new SimplexRoughnessProvider())
                 .addProvider(new BiomeProvider())
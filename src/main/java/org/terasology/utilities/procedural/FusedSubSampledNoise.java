@@ -0,0 +1,220 @@
+// Copyright 2020 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.utilities.procedural;
+
+import com.google.common.base.Preconditions;
+import com.google.common.math.IntMath;
+import org.joml.Vector2f;
+import org.joml.Vector2fc;
+import org.terasology.math.TeraMath;
+import org.terasology.world.block.BlockAreac;
+
+import java.util.Arrays;
+
+/**
+ * Samples several two-dimensional noise fields on one shared grid and interpolates them in between, like a
+ * {@link SubSampledNoise} per field but in a single pass. The grid points are every <code>sampleRate</code> blocks
+ * in world coordinates, so every field yields exactly the values its own {@link SubSampledNoise} would.
+ * <p>
+ * The grid covers the areas of all fields at once; the bilinear weights of a block are computed once and used for
+ * every field that covers that block.
+ * <p>
+ * Optionally, the grid points are kept in a {@link LatticeSampleCache}, so neighbouring and overlapping areas only
+ * evaluate the points they do not share.
+ */
+public class FusedSubSampledNoise {
+    private final Noise[] sources;
+    private final Vector2f[] zooms;
+    private final int sampleRate;
+    private final LatticeSampleCache cache;
+    private final int[] noiseIds;
+
+    /**
+     * @param sources the noise of each field
+     * @param zooms the factor from world to noise coordinates of each field
+     * @param sampleRate the distance between grid points in blocks
+     */
+    public FusedSubSampledNoise(Noise[] sources, Vector2fc[] zooms, int sampleRate) {
+        this(sources, zooms, sampleRate, null);
+    }
+
+    /**
+     * Samples a single field.
+     */
+    public FusedSubSampledNoise(Noise source, Vector2fc zoom, int sampleRate, LatticeSampleCache cache) {
+        this(new Noise[] {source}, new Vector2fc[] {zoom}, sampleRate, cache);
+    }
+
+    /**
+     * @param cache keeps the grid points, or null to evaluate them every time
+     */
+    public FusedSubSampledNoise(Noise[] sources, Vector2fc[] zooms, int sampleRate, LatticeSampleCache cache) {
+        Preconditions.checkArgument(sources.length == zooms.length, "Every field needs a source and a zoom");
+        Preconditions.checkArgument(sampleRate > 0, "Sample rate must be positive");
+        this.sources = sources.clone();
+        this.zooms = new Vector2f[zooms.length];
+        for (int i = 0; i < zooms.length; i++) {
+            this.zooms[i] = new Vector2f(zooms[i]);
+        }
+        this.sampleRate = sampleRate;
+        this.cache = cache;
+        this.noiseIds = new int[sources.length];
+        for (int i = 0; i < sources.length; i++) {
+            noiseIds[i] = LatticeSampleCache.newNoiseId();
+        }
+    }
+
+    /**
+     * @return the number of fields
+     */
+    public int getFieldCount() {
+        return sources.length;
+    }
+
+    /**
+     * @param areas the area of each field
+     * @return the values of each field, row by row over its area
+     */
+    public float[][] noise(BlockAreac... areas) {
+        Preconditions.checkArgument(areas.length == sources.length, "Expected %s areas, got %s", sources.length, areas.length);
+
+        // the grid points around all areas
+        int minX = Integer.MAX_VALUE;
+        int minY = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE;
+        int maxY = Integer.MIN_VALUE;
+        for (BlockAreac area : areas) {
+            minX = Math.min(minX, area.minX() - IntMath.mod(area.minX(), sampleRate));
+            minY = Math.min(minY, area.minY() - IntMath.mod(area.minY(), sampleRate));
+            maxX = Math.max(maxX, area.maxX() - IntMath.mod(area.maxX(), sampleRate) + sampleRate);
+            maxY = Math.max(maxY, area.maxY() - IntMath.mod(area.maxY(), sampleRate) + sampleRate);
+        }
+        int samplesX = (maxX - minX) / sampleRate + 1;
+        int samplesY = (maxY - minY) / sampleRate + 1;
+        float[][] samples = sample(minX, minY, samplesX, samplesY);
+
+        float[][] result = new float[areas.length][];
+        for (int field = 0; field < areas.length; field++) {
+            if (result[field] != null) {
+                continue;
+            }
+            // fields of the same area share one pass over it
+            int count = 0;
+            int[] group = new int[areas.length];
+            for (int other = field; other < areas.length; other++) {
+                if (sameArea(areas[field], areas[other])) {
+                    group[count++] = other;
+                    result[other] = new float[areas[other].getSizeX() * areas[other].getSizeY()];
+                }
+            }
+            expand(samples, minX, minY, samplesX, areas[field], group, count, result);
+        }
+        return result;
+    }
+
+    /**
+     * Evaluates one field only where it is needed. Grid points are only sampled for the cells that contain a block of
+     * the mask, so areas where the field does not matter cost next to nothing.
+     *
+     * @param field the index of the field
+     * @param mask whether each block of the area needs the field, row by row
+     * @return the values of the field row by row over the area, 0 where the mask is not set
+     */
+    public float[] noise(int field, BlockAreac area, boolean[] mask) {
+        Preconditions.checkArgument(mask.length == area.getSizeX() * area.getSizeY(), "Mask does not match the area");
+        int minX = area.minX() - IntMath.mod(area.minX(), sampleRate);
+        int minY = area.minY() - IntMath.mod(area.minY(), sampleRate);
+        int samplesX = (area.maxX() - IntMath.mod(area.maxX(), sampleRate) + sampleRate - minX) / sampleRate + 1;
+        int samplesY = (area.maxY() - IntMath.mod(area.maxY(), sampleRate) + sampleRate - minY) / sampleRate + 1;
+
+        // NaN marks grid points that have not been sampled yet
+        float[] samples = new float[samplesX * samplesY];
+        Arrays.fill(samples, Float.NaN);
+        float[] result = new float[mask.length];
+        int sizeX = area.getSizeX();
+        for (int y = area.minY(); y <= area.maxY(); y++) {
+            int cellY = (y - minY) / sampleRate;
+            float yScale = (float) (y - minY - cellY * sampleRate) / sampleRate;
+            for (int x = area.minX(); x <= area.maxX(); x++) {
+                int index = (x - area.minX()) + (y - area.minY()) * sizeX;
+                if (!mask[index]) {
+                    continue;
+                }
+                int cellX = (x - minX) / sampleRate;
+                float xScale = (float) (x - minX - cellX * sampleRate) / sampleRate;
+                int q11 = cellX + cellY * samplesX;
+                int actualX = cellX * sampleRate + minX;
+                int actualY = cellY * sampleRate + minY;
+                // corners may already have been sampled for a neighbouring cell
+                sampleOnce(samples, q11, field, actualX, actualY);
+                sampleOnce(samples, q11 + 1, field, actualX + sampleRate, actualY);
+                sampleOnce(samples, q11 + samplesX, field, actualX, actualY + sampleRate);
+                sampleOnce(samples, q11 + samplesX + 1, field, actualX + sampleRate, actualY + sampleRate);
+                result[index] = TeraMath.biLerp(samples[q11], samples[q11 + 1],
+                        samples[q11 + samplesX], samples[q11 + samplesX + 1], xScale, yScale);
+            }
+        }
+        return result;
+    }
+
+    private void sampleOnce(float[] samples, int index, int field, int actualX, int actualY) {
+        if (Float.isNaN(samples[index])) {
+            samples[index] = sample(field, actualX, actualY);
+        }
+    }
+
+    private float[][] sample(int minX, int minY, int samplesX, int samplesY) {
+        float[][] samples = new float[sources.length][samplesX * samplesY];
+        for (int y = 0; y < samplesY; y++) {
+            for (int x = 0; x < samplesX; x++) {
+                int actualX = x * sampleRate + minX;
+                int actualY = y * sampleRate + minY;
+                for (int field = 0; field < sources.length; field++) {
+                    samples[field][x + y * samplesX] = sample(field, actualX, actualY);
+                }
+            }
+        }
+        return samples;
+    }
+
+    private float sample(int field, int actualX, int actualY) {
+        if (cache == null) {
+            Vector2f zoom = zooms[field];
+            return sources[field].noise(zoom.x * actualX, zoom.y * actualY);
+        }
+        int latticeX = Math.floorDiv(actualX, sampleRate);
+        int latticeY = Math.floorDiv(actualY, sampleRate);
+        float value = cache.get(noiseIds[field], latticeX, latticeY);
+        if (Float.isNaN(value)) {
+            Vector2f zoom = zooms[field];
+            value = sources[field].noise(zoom.x * actualX, zoom.y * actualY);
+            cache.put(noiseIds[field], latticeX, latticeY, value);
+        }
+        return value;
+    }
+
+    private void expand(float[][] samples, int minX, int minY, int samplesX, BlockAreac area, int[] group, int count,
+                        float[][] result) {
+        int sizeX = area.getSizeX();
+        for (int y = area.minY(); y <= area.maxY(); y++) {
+            int cellY = (y - minY) / sampleRate;
+            float yScale = (float) (y - minY - cellY * sampleRate) / sampleRate;
+            for (int x = area.minX(); x <= area.maxX(); x++) {
+                int cellX = (x - minX) / sampleRate;
+                float xScale = (float) (x - minX - cellX * sampleRate) / sampleRate;
+                int q11 = cellX + cellY * samplesX;
+                int index = (x - area.minX()) + (y - area.minY()) * sizeX;
+                for (int i = 0; i < count; i++) {
+                    float[] values = samples[group[i]];
+                    result[group[i]][index] = TeraMath.biLerp(values[q11], values[q11 + 1],
+                            values[q11 + samplesX], values[q11 + samplesX + 1], xScale, yScale);
+                }
+            }
+        }
+    }
+
+    private static boolean sameArea(BlockAreac a, BlockAreac b) {
+        return a.minX() == b.minX() && a.minY() == b.minY() && a.maxX() == b.maxX() && a.maxY() == b.maxY();
+    }
+}
@@ -0,0 +1,107 @@
+// Copyright 2020 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.utilities.procedural;
+
+import com.google.common.base.Preconditions;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers noise samples at the points of a world-aligned sample grid, so neighbouring regions and the borders that
+ * other facets request do not evaluate the same expensive points again.
+ * <p>
+ * Each sample is identified by the id of the noise it was taken from and its grid coordinates. The cache is a fixed
+ * table in which every key has exactly one slot; a new sample simply replaces whatever was in its slot. Slots hold
+ * immutable samples, so the cache is safe to use from several threads without any locking. A sample may be lost when
+ * two threads write to the same slot at once, which only means it is computed again.
+ */
+public final class LatticeSampleCache {
+
+    private static final LatticeSampleCache SHARED = new LatticeSampleCache(1 << 18);
+
+    private static final AtomicInteger NEXT_NOISE_ID = new AtomicInteger();
+
+    private static final class Sample {
+        private final int noiseId;
+        private final int x;
+        private final int y;
+        private final float value;
+
+        Sample(int noiseId, int x, int y, float value) {
+            this.noiseId = noiseId;
+            this.x = x;
+            this.y = y;
+            this.value = value;
+        }
+    }
+
+    private final Sample[] slots;
+    private final int mask;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param capacity the number of slots, a power of two
+     */
+    public LatticeSampleCache(int capacity) {
+        Preconditions.checkArgument(capacity > 0 && Integer.bitCount(capacity) == 1, "Capacity must be a power of two: %s", capacity);
+        slots = new Sample[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * @return the cache that is shared by all noise of the process
+     */
+    public static LatticeSampleCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * @return an id that no other noise uses; a noise whose source or scale changes needs a new one
+     */
+    public static int newNoiseId() {
+        return NEXT_NOISE_ID.getAndIncrement();
+    }
+
+    /**
+     * @param x the grid column, not the world coordinate
+     * @param y the grid row, not the world coordinate
+     * @return the sample, or NaN if it is not cached
+     */
+    public float get(int noiseId, int x, int y) {
+        Sample sample = slots[slot(noiseId, x, y)];
+        if (sample != null && sample.noiseId == noiseId && sample.x == x && sample.y == y) {
+            hits.increment();
+            return sample.value;
+        }
+        misses.increment();
+        return Float.NaN;
+    }
+
+    public void put(int noiseId, int x, int y, float value) {
+        slots[slot(noiseId, x, y)] = new Sample(noiseId, x, y, value);
+    }
+
+    private int slot(int noiseId, int x, int y) {
+        int hash = noiseId * 0x9E3779B1 + x * 0x85EBCA6B + y * 0xC2B2AE35;
+        hash ^= hash >>> 15;
+        hash *= 0x2C1B3C6D;
+        hash ^= hash >>> 16;
+        return hash & mask;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d slots: %d hits, %d misses", slots.length, getHitCount(), getMissCount());
+    }
+}
@@ -0,0 +1,154 @@
+// Copyright 2020 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.core.world.generator;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+public class ClimateCacheTest {
+
+    private static final int SIZE = 32;
+
+    private Path directory;
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("climate");
+        file = directory.resolve("map.bin");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testLoadsStoredClimate() {
+        FloatGrid heightmap = heightmap(1);
+        ClimateSimulator computed = new ClimateCache(file).getOrCompute(heightmap, null);
+        Assert.assertTrue(computed.getMetrics().getCellVisits() > 0);
+        Assert.assertTrue(Files.isRegularFile(file));
+
+        ClimateSimulator loaded = new ClimateCache(file).getOrCompute(heightmap, null);
+        assertLoaded(loaded);
+        Assert.assertTrue(loaded.getClimate().isOffHeap());
+        assertGridEquals(computed.getClimate(), loaded.getClimate());
+        assertGridEquals(computed.getHumidity(), loaded.getHumidity());
+    }
+
+    @Test
+    public void testReadsLargeMapsIntoHeap() {
+        FloatGrid heightmap = heightmap(2);
+        ClimateSimulator computed = new ClimateCache(file).getOrCompute(heightmap, null);
+
+        // the maps count as too large to be mapped
+        ClimateSimulator loaded = new ClimateCache(file, SIZE).getOrCompute(heightmap, null);
+        assertLoaded(loaded);
+        Assert.assertFalse(loaded.getClimate().isOffHeap());
+        assertGridEquals(computed.getClimate(), loaded.getClimate());
+        assertGridEquals(computed.getHumidity(), loaded.getHumidity());
+    }
+
+    @Test
+    public void testRecomputesForOtherHeightmap() {
+        new ClimateCache(file).getOrCompute(heightmap(3), null);
+
+        FloatGrid other = heightmap(4);
+        ClimateSimulator recomputed = new ClimateCache(file).getOrCompute(other, null);
+        Assert.assertTrue(recomputed.getMetrics().getCellVisits() > 0);
+        // the file now holds the other heightmap
+        assertLoaded(new ClimateCache(file).getOrCompute(other, null));
+    }
+
+    @Test
+    public void testRecomputesForOtherVersion() throws IOException {
+        FloatGrid heightmap = heightmap(5);
+        new ClimateCache(file).getOrCompute(heightmap, null);
+        overwriteInt(4, ClimateCache.FORMAT_VERSION - 1);
+
+        ClimateSimulator recomputed = new ClimateCache(file).getOrCompute(heightmap, null);
+        Assert.assertTrue(recomputed.getMetrics().getCellVisits() > 0);
+        assertLoaded(new ClimateCache(file).getOrCompute(heightmap, null));
+    }
+
+    @Test
+    public void testRecomputesForCorruptFile() throws IOException {
+        FloatGrid heightmap = heightmap(6);
+        ClimateSimulator computed = new ClimateCache(file).getOrCompute(heightmap, null);
+        overwriteInt(0, 0);
+
+        ClimateSimulator recomputed = new ClimateCache(file).getOrCompute(heightmap, null);
+        Assert.assertTrue(recomputed.getMetrics().getCellVisits() > 0);
+        assertGridEquals(computed.getClimate(), recomputed.getClimate());
+    }
+
+    @Test
+    public void testRecomputesForTruncatedFile() throws IOException {
+        FloatGrid heightmap = heightmap(7);
+        new ClimateCache(file).getOrCompute(heightmap, null);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - Float.BYTES);
+        }
+
+        ClimateSimulator recomputed = new ClimateCache(file).getOrCompute(heightmap, null);
+        Assert.assertTrue(recomputed.getMetrics().getCellVisits() > 0);
+        assertLoaded(new ClimateCache(file).getOrCompute(heightmap, null));
+    }
+
+    @Test
+    public void testFailedStoreLeavesNoTemporaryFile() throws IOException {
+        // a directory that is not empty cannot be replaced by the cache file
+        Files.createDirectories(file.resolve("blocked"));
+
+        ClimateSimulator computed = new ClimateCache(file).getOrCompute(heightmap(8), null);
+        Assert.assertNotNull(computed.getClimate());
+        try (Stream<Path> files = Files.list(directory)) {
+            Assert.assertEquals(1, files.count());
+        }
+    }
+
+    private void overwriteInt(long position, int value) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN).putInt(value);
+        bytes.flip();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(bytes, position);
+        }
+    }
+
+    private static void assertLoaded(ClimateSimulator simulator) {
+        Assert.assertEquals(0, simulator.getMetrics().getCellVisits());
+    }
+
+    private static void assertGridEquals(FloatGrid expected, FloatGrid actual) {
+        Assert.assertEquals(expected.getWidth(), actual.getWidth());
+        for (int i = 0; i < expected.size(); i++) {
+            Assert.assertEquals(expected.get(i), actual.get(i), 0);
+        }
+    }
+
+    private static FloatGrid heightmap(long seed) {
+        Random random = new Random(seed);
+        FloatGrid heightmap = FloatGrid.onHeap(SIZE, SIZE);
+        for (int i = 0; i < heightmap.size(); i++) {
+            heightmap.set(i, 0.5f + random.nextFloat());
+        }
+        return heightmap;
+    }
+}
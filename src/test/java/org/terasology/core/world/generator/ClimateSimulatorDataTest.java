@@ -0,0 +1,233 @@
+// Copyright 2020 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.core.world.generator;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+public class ClimateSimulatorDataTest {
+
+    private static final String[] SOURCES = {"water", "poles", "equator"};
+
+    @Test
+    public void testQueuedMatchesSweepOnGentleTerrain() {
+        assertQueuedMatchesSweep(0.05f);
+    }
+
+    @Test
+    public void testQueuedMatchesSweepOnSteepTerrain() {
+        assertQueuedMatchesSweep(2f);
+    }
+
+    @Test
+    public void testBandedSweepMatchesSerialSweep() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Random random = new Random(7);
+            for (float amplitude : new float[] {0.01f, 0.04f, 2f}) {
+                int size = 16 + random.nextInt(32);
+                FloatGrid heightmap = randomHeightmap(random, size, amplitude);
+                ClimateSimulatorData serial = new ClimateSimulatorData(heightmap);
+                ClimateSimulatorData banded = new ClimateSimulatorData(heightmap, pool);
+                for (String source : SOURCES) {
+                    FloatGrid expected = serial.distanceFrom(source, 10, ClimateSimulatorData.Propagation.SWEEP);
+                    FloatGrid actual = banded.distanceFrom(source, 10, ClimateSimulatorData.Propagation.SWEEP);
+                    assertGridEquals(source, expected, actual);
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testRoundParallelQueueMatchesSerialQueue() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Random random = new Random(13);
+            // large enough for rounds with more cells than are processed on a single thread
+            for (float amplitude : new float[] {0.02f, 0.3f, 2f}) {
+                int size = 64 + random.nextInt(96);
+                FloatGrid heightmap = randomHeightmap(random, size, amplitude);
+                ClimateSimulatorData serial = new ClimateSimulatorData(heightmap);
+                ClimateSimulatorData parallel = new ClimateSimulatorData(heightmap, pool);
+                for (String source : SOURCES) {
+                    FloatGrid expected = serial.distanceFrom(source, 10, ClimateSimulatorData.Propagation.PRIORITY_QUEUE);
+                    FloatGrid actual = parallel.distanceFrom(source, 10, ClimateSimulatorData.Propagation.PRIORITY_QUEUE);
+                    assertGridEquals(amplitude + " " + source, expected, actual);
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testRoundParallelQueueMatchesSweepForFusedFields() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Random random = new Random(17);
+            ClimateSimulatorData.DistanceSpec[] specs = {
+                new ClimateSimulatorData.DistanceSpec(ClimateSimulatorData.DistanceSource.POLES, 10),
+                new ClimateSimulatorData.DistanceSpec(ClimateSimulatorData.DistanceSource.EQUATOR, 10),
+                new ClimateSimulatorData.DistanceSpec(ClimateSimulatorData.DistanceSource.WATER, 5)
+            };
+            for (float amplitude : new float[] {0.05f, 2f}) {
+                FloatGrid heightmap = randomHeightmap(random, 96, amplitude);
+                DistanceFields expected = new ClimateSimulatorData(heightmap).distanceFields(ClimateSimulatorData.Propagation.SWEEP, specs);
+                DistanceFields actual = new ClimateSimulatorData(heightmap, pool).distanceFields(ClimateSimulatorData.Propagation.PRIORITY_QUEUE,
+                        specs);
+                for (int channel = 0; channel < specs.length; channel++) {
+                    assertGridEquals(amplitude + " " + specs[channel], expected.getField(channel), actual.getField(channel));
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testParallelSimulatorMatchesSerial() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            FloatGrid heightmap = randomHeightmap(new Random(3), 40, 0.03f);
+            for (ClimateSimulatorData.Propagation propagation : ClimateSimulatorData.Propagation.values()) {
+                ClimateSimulator serial = new ClimateSimulator(heightmap, propagation, null);
+                ClimateSimulator parallel = new ClimateSimulator(heightmap, propagation, pool);
+                assertGridEquals("climate", serial.getClimate(), parallel.getClimate());
+                assertGridEquals("humidity", serial.getHumidity(), parallel.getHumidity());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testFusedFieldsMatchSingleFields() {
+        Random random = new Random(11);
+        for (float amplitude : new float[] {0.05f, 2f}) {
+            int size = 16 + random.nextInt(32);
+            ClimateSimulatorData data = new ClimateSimulatorData(randomHeightmap(random, size, amplitude));
+            ClimateSimulatorData.DistanceSpec[] specs = {
+                new ClimateSimulatorData.DistanceSpec(ClimateSimulatorData.DistanceSource.POLES, 10),
+                new ClimateSimulatorData.DistanceSpec(ClimateSimulatorData.DistanceSource.EQUATOR, 10),
+                new ClimateSimulatorData.DistanceSpec(ClimateSimulatorData.DistanceSource.WATER, 5)
+            };
+            for (ClimateSimulatorData.Propagation propagation : ClimateSimulatorData.Propagation.values()) {
+                DistanceFields fused = data.distanceFields(propagation, specs);
+                for (int channel = 0; channel < specs.length; channel++) {
+                    FloatGrid expected = data.distanceFrom(specs[channel].getSource().name(), specs[channel].getHeightInfluence(),
+                            ClimateSimulatorData.Propagation.SWEEP);
+                    assertGridEquals(propagation + " " + specs[channel], expected, fused.getField(channel));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSweepStopsWhenSettled() {
+        int size = 32;
+        FloatGrid land = FloatGrid.onHeap(size, size);
+        land.fill(1.5f);
+        ClimateSimulatorData data = new ClimateSimulatorData(land);
+        data.distanceFrom("water", 5, ClimateSimulatorData.Propagation.SWEEP);
+        // there is no water, so the first sweep shows that nothing can ever be reached
+        Assert.assertEquals(1, data.getMetrics().getSweeps());
+        Assert.assertEquals(0, data.getMetrics().getCellsUpdated());
+
+        data = new ClimateSimulatorData(land);
+        data.distanceFrom("poles", 10, ClimateSimulatorData.Propagation.SWEEP);
+        // the farthest row is half the map away, since the map wraps around
+        Assert.assertTrue(data.getMetrics().getSweeps() <= size / 2 + 1);
+        Assert.assertEquals(size * size - size, data.getMetrics().getCellsUpdated());
+    }
+
+    @Test
+    public void testQueuedMatchesSweepWithoutWater() {
+        int size = 32;
+        FloatGrid hills = FloatGrid.onHeap(size, size);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                hills.set(x, y, (float) (2 + 0.8 * Math.sin(x * 0.37) * Math.cos(y * 0.23 + 1)));
+            }
+        }
+        ClimateSimulatorData.DistanceSpec[] specs = {
+            new ClimateSimulatorData.DistanceSpec(ClimateSimulatorData.DistanceSource.POLES, 10),
+            new ClimateSimulatorData.DistanceSpec(ClimateSimulatorData.DistanceSource.WATER, 5)
+        };
+        DistanceFields expected = new ClimateSimulatorData(hills).distanceFields(ClimateSimulatorData.Propagation.SWEEP, specs);
+        ClimateSimulatorData data = new ClimateSimulatorData(hills);
+        DistanceFields actual = data.distanceFields(ClimateSimulatorData.Propagation.PRIORITY_QUEUE, specs);
+        for (int channel = 0; channel < specs.length; channel++) {
+            assertGridEquals(specs[channel].toString(), expected.getField(channel), actual.getField(channel));
+        }
+        // the cells the water never reaches are looked at once per round, not once per queued duplicate
+        Assert.assertTrue(data.getMetrics().getCellVisits() <= (long) size * size * size);
+    }
+
+    @Test
+    public void testPyramidIsExactOnSmallMaps() {
+        ClimateSimulatorData data = new ClimateSimulatorData(randomHeightmap(new Random(5), ClimatePyramid.MIN_SIZE, 0.2f));
+        ClimateSimulatorData.DistanceSpec spec = new ClimateSimulatorData.DistanceSpec(ClimateSimulatorData.DistanceSource.WATER, 5);
+        DistanceFields exact = data.distanceFields(ClimateSimulatorData.Propagation.PRIORITY_QUEUE, spec);
+        DistanceFields approximate = data.distanceFields(0.01f, spec);
+        assertGridEquals("water", exact.getField(0), approximate.getField(0));
+    }
+
+    @Test
+    public void testPyramidApproximatesSmoothTerrain() {
+        int size = ClimatePyramid.MIN_SIZE * 4;
+        FloatGrid heightmap = FloatGrid.onHeap(size, size);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                double angle = 2 * Math.PI / size;
+                heightmap.set(x, y, (float) (1 + 0.2 * Math.sin(x * angle * 3) * Math.cos(y * angle * 2)));
+            }
+        }
+        ClimateSimulator exact = new ClimateSimulator(heightmap);
+        ClimateSimulator approximate = new ClimateSimulator(heightmap, 0.01f, null);
+        Assert.assertTrue(meanDifference(exact.getClimate(), approximate.getClimate()) < 0.02);
+        Assert.assertTrue(meanDifference(exact.getHumidity(), approximate.getHumidity()) < 0.02);
+    }
+
+    private void assertQueuedMatchesSweep(float amplitude) {
+        Random random = new Random(42);
+        for (int run = 0; run < 10; run++) {
+            int size = 8 + random.nextInt(40);
+            ClimateSimulatorData data = new ClimateSimulatorData(randomHeightmap(random, size, amplitude));
+            for (String source : SOURCES) {
+                FloatGrid expected = data.distanceFrom(source, 10, ClimateSimulatorData.Propagation.SWEEP);
+                FloatGrid actual = data.distanceFrom(source, 10, ClimateSimulatorData.Propagation.PRIORITY_QUEUE);
+                assertGridEquals(source, expected, actual);
+            }
+        }
+    }
+
+    static FloatGrid randomHeightmap(Random random, int size, float amplitude) {
+        FloatGrid heightmap = FloatGrid.onHeap(size, size);
+        for (int i = 0; i < heightmap.size(); i++) {
+            heightmap.set(i, 1 + (random.nextFloat() - 0.5f) * amplitude);
+        }
+        return heightmap;
+    }
+
+    private static double meanDifference(FloatGrid expected, FloatGrid actual) {
+        double sum = 0;
+        for (int i = 0; i < expected.size(); i++) {
+            sum += Math.abs(expected.get(i) - actual.get(i));
+        }
+        return sum / expected.size();
+    }
+
+    static void assertGridEquals(String message, FloatGrid expected, FloatGrid actual) {
+        Assert.assertEquals(expected.getWidth(), actual.getWidth());
+        Assert.assertEquals(expected.getHeight(), actual.getHeight());
+        for (int i = 0; i < expected.size(); i++) {
+            Assert.assertEquals(message + " at " + i, expected.get(i), actual.get(i), 0f);
+        }
+    }
+}
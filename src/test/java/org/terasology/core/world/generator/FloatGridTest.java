@@ -0,0 +1,39 @@
+// Copyright 2020 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.core.world.generator;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FloatGridTest {
+
+    @Test
+    public void testOffHeapMatchesOnHeap() {
+        FloatGrid onHeap = FloatGrid.onHeap(7, 5);
+        FloatGrid offHeap = FloatGrid.offHeap(7, 5);
+        for (int i = 0; i < onHeap.size(); i++) {
+            onHeap.set(i, i * 0.5f);
+            offHeap.set(i, i * 0.5f);
+        }
+        Assert.assertEquals(onHeap.get(3, 4), offHeap.get(3, 4), 0);
+        Assert.assertEquals(4 * 7 + 3, offHeap.index(3, 4));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsTooManyCells() {
+        // wraps around to a small positive count in int arithmetic
+        FloatGrid.onHeap(65536, 65537);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsTooManyBytesOffHeap() {
+        // fits into an array, but its size in bytes does not fit into a direct buffer
+        FloatGrid.offHeap(32768, 32768);
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void testRejectsTooManyDistanceValues() {
+        new DistanceFields(32768, 3);
+    }
+}
@@ -0,0 +1,96 @@
+// Copyright 2020 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.core.world.generator;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class TiledClimateSimulatorTest {
+
+    private static final int MAP_SIZE = 128;
+    private static final int TILE_SIZE = 32;
+    private static final int HALO = 24;
+
+    @Test
+    public void testWaterDistanceMatchesWrappedMap() {
+        FloatGrid heightmap = lakes(new Random(3), MAP_SIZE);
+        TiledClimateSimulator tiled = new TiledClimateSimulator(heightmap::getWrapped, TILE_SIZE, HALO, MAP_SIZE, 16);
+
+        // the distances of the full simulation before they are normalized
+        ClimateSimulatorData data = new ClimateSimulatorData(heightmap);
+        float[] dist = new float[MAP_SIZE * MAP_SIZE];
+        for (int i = 0; i < dist.length; i++) {
+            dist[i] = heightmap.get(i) - 1 < 0 ? 0 : MAP_SIZE;
+        }
+        data.propagate(ClimateSimulatorData.Propagation.PRIORITY_QUEUE, dist, new float[] {ClimateSimulator.WATER_HEIGHT_INFLUENCE},
+                MAP_SIZE, MAP_SIZE);
+
+        // two periods, so the tiles and their seams also cover the wrap-around of the map
+        for (int y = -MAP_SIZE; y < MAP_SIZE; y++) {
+            for (int x = -MAP_SIZE; x < MAP_SIZE; x++) {
+                float expected = dist[heightmap.index(Math.floorMod(x, MAP_SIZE), Math.floorMod(y, MAP_SIZE))];
+                float actual = tiled.getHumidity(x, y);
+                if (expected < HALO) {
+                    Assert.assertEquals(x + ", " + y, expected, actual * HALO, 1e-4f);
+                } else {
+                    // capped at the halo
+                    Assert.assertEquals(x + ", " + y, 1, actual, 1e-6f);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testClimateMatchesWrappedMapOnFlatTerrain() {
+        FloatGrid heightmap = FloatGrid.onHeap(MAP_SIZE, MAP_SIZE);
+        for (int i = 0; i < heightmap.size(); i++) {
+            heightmap.set(i, 1.2f);
+        }
+        ClimateSimulator full = new ClimateSimulator(heightmap);
+        TiledClimateSimulator tiled = new TiledClimateSimulator(heightmap::getWrapped, TILE_SIZE, HALO, MAP_SIZE, 16);
+
+        for (int y = -MAP_SIZE; y < MAP_SIZE; y++) {
+            for (int x = -MAP_SIZE; x < MAP_SIZE; x++) {
+                float expected = full.getClimate().get(Math.floorMod(x, MAP_SIZE), Math.floorMod(y, MAP_SIZE));
+                Assert.assertEquals(x + ", " + y, expected, tiled.getClimate(x, y), 1e-6f);
+            }
+        }
+    }
+
+    @Test
+    public void testTilesAreBounded() {
+        FloatGrid heightmap = lakes(new Random(7), MAP_SIZE);
+        TiledClimateSimulator tiled = new TiledClimateSimulator(heightmap::getWrapped, TILE_SIZE, HALO, MAP_SIZE, 4);
+        for (int tile = 0; tile < 10; tile++) {
+            tiled.getTile(tile, 0);
+        }
+        Assert.assertTrue(tiled.getCachedTileCount() <= 4);
+
+        TiledClimateSimulator.Tile tile = tiled.getTileAt(-1, 40);
+        Assert.assertEquals(-TILE_SIZE, tile.getMinX());
+        Assert.assertEquals(TILE_SIZE, tile.getMinY());
+    }
+
+    /**
+     * Dry land at one height with square lakes
+     */
+    private static FloatGrid lakes(Random random, int size) {
+        FloatGrid heightmap = FloatGrid.onHeap(size, size);
+        for (int i = 0; i < heightmap.size(); i++) {
+            heightmap.set(i, 1.2f);
+        }
+        for (int lake = 0; lake < 12; lake++) {
+            int centerX = random.nextInt(size);
+            int centerY = random.nextInt(size);
+            for (int y = -2; y <= 2; y++) {
+                for (int x = -2; x <= 2; x++) {
+                    heightmap.set(Math.floorMod(centerX + x, size), Math.floorMod(centerY + y, size), 0.8f);
+                }
+            }
+        }
+        return heightmap;
+    }
+}
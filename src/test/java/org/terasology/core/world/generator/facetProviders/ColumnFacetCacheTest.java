@@ -0,0 +1,96 @@
+// Copyright 2020 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.core.world.generator.facetProviders;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.terasology.world.block.BlockArea;
+import org.terasology.world.block.BlockAreac;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ColumnFacetCacheTest {
+
+    private static final BlockAreac AREA = new BlockArea(-4, -4, 35, 35);
+
+    @Test
+    public void testComputesEachAreaOnce() {
+        ColumnFacetCache<float[]> cache = ColumnFacetCache.ofField();
+        AtomicInteger computations = new AtomicInteger();
+        float[] first = cache.get(AREA, () -> values(computations.incrementAndGet()));
+        float[] second = cache.get(new BlockArea(-4, -4, 35, 35), () -> values(computations.incrementAndGet()));
+        Assert.assertSame(first, second);
+        Assert.assertEquals(1, computations.get());
+
+        // the same corner with another border is another area
+        cache.get(new BlockArea(-4, -4, 36, 35), () -> values(computations.incrementAndGet()));
+        Assert.assertEquals(2, computations.get());
+    }
+
+    @Test
+    public void testInvalidateDropsValues() {
+        ColumnFacetCache<float[]> cache = ColumnFacetCache.ofField();
+        cache.get(AREA, () -> values(1));
+        cache.invalidate();
+        Assert.assertEquals(2, cache.get(AREA, () -> values(2))[0], 0);
+    }
+
+    @Test
+    public void testLateComputationIsNotServedAfterInvalidate() throws Exception {
+        ColumnFacetCache<float[]> cache = ColumnFacetCache.ofField();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch invalidated = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            // computed with the old settings, but only finished after they changed
+            Future<float[]> late = executor.submit(() -> cache.get(AREA, () -> {
+                started.countDown();
+                try {
+                    invalidated.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return values(1);
+            }));
+            Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+            cache.invalidate();
+            invalidated.countDown();
+            Assert.assertEquals(1, late.get(10, TimeUnit.SECONDS)[0], 0);
+        } finally {
+            executor.shutdown();
+        }
+
+        Assert.assertEquals(2, cache.get(AREA, () -> values(2))[0], 0);
+    }
+
+    @Test
+    public void testFieldsAreKeyedByAllAreas() {
+        ColumnFacetCache<float[][]> cache = ColumnFacetCache.ofFields();
+        BlockAreac wider = new BlockArea(-6, -6, 37, 37);
+        cache.get(new BlockAreac[] {AREA, AREA}, () -> new float[][] {values(1), values(1)});
+        float[][] other = cache.get(new BlockAreac[] {AREA, wider}, () -> new float[][] {values(2), values(2)});
+        Assert.assertEquals(2, other[1][0], 0);
+    }
+
+    @Test
+    public void testMemoryIsBounded() {
+        ColumnFacetCache<float[]> cache = ColumnFacetCache.ofField();
+        // a megabyte per value, more than the cache holds
+        for (int i = 0; i < 32; i++) {
+            cache.get(new BlockArea(i * 512, 0, i * 512 + 511, 511), () -> new float[512 * 512]);
+        }
+        Assert.assertTrue(cache.getStats().evictionCount() > 0);
+    }
+
+    private static float[] values(int value) {
+        float[] values = new float[AREA.getSizeX() * AREA.getSizeY()];
+        values[0] = value;
+        return values;
+    }
+}
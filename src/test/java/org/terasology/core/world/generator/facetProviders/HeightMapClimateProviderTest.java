@@ -0,0 +1,306 @@
+// Copyright 2020 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.core.world.generator.facetProviders;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.terasology.core.world.generator.ClimateCache;
+import org.terasology.core.world.generator.ClimateSimulator;
+import org.terasology.core.world.generator.FloatGrid;
+import org.terasology.engine.paths.PathManager;
+import org.terasology.math.TeraMath;
+import org.terasology.world.block.BlockRegion;
+import org.terasology.world.generation.Border3D;
+import org.terasology.world.generation.GeneratingRegion;
+import org.terasology.world.generation.WorldFacet;
+import org.terasology.world.generation.facets.SeaLevelFacet;
+import org.terasology.world.generation.facets.SurfaceHumidityFacet;
+import org.terasology.world.generation.facets.SurfaceTemperatureFacet;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class HeightMapClimateProviderTest {
+
+    private static final int SEA_LEVEL = 32;
+    private static final String ISLANDS = "climate_islands";
+    private static final int ISLANDS_SIZE = 32;
+    private static final String NON_SQUARE = "wide_heightmap";
+
+    private Path home;
+    private Path directory;
+
+    @Before
+    public void setup() throws IOException {
+        home = Files.createTempDirectory("home");
+        PathManager.getInstance().useOverrideHomePath(home);
+        Path folder = Files.createDirectories(home.resolve("heightmaps"));
+        writeIslands(folder.resolve(ISLANDS + ".r32"));
+        writeNpy(folder.resolve(NON_SQUARE + ".npy"), 32, 16);
+        directory = Files.createDirectories(home.resolve("climate"));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(home)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testSamplesClimateOfRelativeHeights() {
+        HeightMapSurfaceHeightProvider heights = heights(ISLANDS, 12);
+        HeightMapClimateProvider provider = new HeightMapClimateProvider(heights, directory);
+        // one block per texel, and the region wraps around the map
+        GeneratingRegion region = region(-8, 20, 24, 24, SEA_LEVEL);
+        provider.process(region);
+
+        ClimateSimulator expected = ClimateCache.inDirectory(directory, relativeHeights(heights, SEA_LEVEL))
+                .getOrCompute(relativeHeights(heights, SEA_LEVEL), null);
+        // the provider stored the climate under the name of the relative heights
+        Assert.assertEquals(0, expected.getMetrics().getCellVisits());
+
+        SurfaceTemperatureFacet temperature = facet(region, SurfaceTemperatureFacet.class);
+        SurfaceHumidityFacet humidity = facet(region, SurfaceHumidityFacet.class);
+        for (int z = 20; z < 44; z++) {
+            for (int x = -8; x < 16; x++) {
+                int texelX = Math.floorMod(x, ISLANDS_SIZE);
+                int texelY = Math.floorMod(z, ISLANDS_SIZE);
+                Assert.assertEquals(temperature(expected, texelX, texelY), temperature.getWorld(x, z), 0);
+                Assert.assertEquals(TeraMath.clamp(1 - expected.getHumidity().get(texelX, texelY)), humidity.getWorld(x, z), 0);
+            }
+        }
+    }
+
+    @Test
+    public void testCacheFileFollowsHeights() throws IOException {
+        new HeightMapClimateProvider(heights(ISLANDS, 12), directory).process(region(SEA_LEVEL));
+        new HeightMapClimateProvider(heights(ISLANDS, 12), directory).process(region(SEA_LEVEL));
+        Assert.assertEquals(1, cacheFileCount());
+
+        // both the height settings and the sea level change what is water
+        new HeightMapClimateProvider(heights(ISLANDS, 20), directory).process(region(SEA_LEVEL));
+        Assert.assertEquals(2, cacheFileCount());
+        new HeightMapClimateProvider(heights(ISLANDS, 12), directory).process(region(SEA_LEVEL + 8));
+        Assert.assertEquals(3, cacheFileCount());
+
+        HeightMapSurfaceHeightProvider heights = heights(ISLANDS, 12);
+        Path expected = ClimateCache.inDirectory(directory, relativeHeights(heights, SEA_LEVEL)).getFile();
+        Assert.assertTrue(Files.isRegularFile(expected));
+    }
+
+    @Test
+    public void testChangedSettingsReplaceClimate() throws Exception {
+        HeightMapSurfaceHeightProvider heights = heights(ISLANDS, 12);
+        HeightMapClimateProvider provider = new HeightMapClimateProvider(heights, directory);
+        GeneratingRegion before = region(SEA_LEVEL);
+        provider.process(before);
+
+        HeightMapSurfaceHeightProvider.HeightMapConfiguration configuration = new HeightMapSurfaceHeightProvider.HeightMapConfiguration();
+        configuration.heightMap = ISLANDS;
+        configuration.heightOffset = 40;
+        configuration.terrainScale = 1;
+        heights.setConfiguration(configuration);
+        heights.getHeightmapReload().get(10, TimeUnit.SECONDS);
+        // served from the previous climate or the new one, depending on how fast it is computed
+        provider.process(region(SEA_LEVEL));
+        provider.getClimateComputation().get(10, TimeUnit.SECONDS);
+
+        GeneratingRegion after = region(SEA_LEVEL);
+        provider.process(after);
+        ClimateSimulator expected = ClimateCache.inDirectory(directory, relativeHeights(heights, SEA_LEVEL))
+                .getOrCompute(relativeHeights(heights, SEA_LEVEL), null);
+        Assert.assertEquals(temperature(expected, 3, 5), facet(after, SurfaceTemperatureFacet.class).getWorld(3, 5), 0);
+        // everything is above the sea level now, so it is drier than before
+        Assert.assertTrue(facet(after, SurfaceHumidityFacet.class).getWorld(3, 5) <= facet(before, SurfaceHumidityFacet.class).getWorld(3, 5));
+    }
+
+    @Test
+    public void testTerrainScaleOnlyChangesLookup() throws Exception {
+        HeightMapSurfaceHeightProvider heights = heights(ISLANDS, 12);
+        HeightMapClimateProvider provider = new HeightMapClimateProvider(heights, directory);
+        provider.process(region(SEA_LEVEL));
+        Object computation = provider.getClimateComputation();
+
+        HeightMapSurfaceHeightProvider.HeightMapConfiguration configuration = new HeightMapSurfaceHeightProvider.HeightMapConfiguration();
+        configuration.heightMap = ISLANDS;
+        configuration.heightOffset = 12;
+        configuration.terrainScale = 2;
+        heights.setConfiguration(configuration);
+        heights.getHeightmapReload().get(10, TimeUnit.SECONDS);
+        GeneratingRegion region = region(0, 0, 32, 32, SEA_LEVEL);
+        provider.process(region);
+
+        // the climate is kept, but looked up with the new scale
+        Assert.assertSame(computation, provider.getClimateComputation());
+        ClimateSimulator expected = ClimateCache.inDirectory(directory, relativeHeights(heights, SEA_LEVEL))
+                .getOrCompute(relativeHeights(heights, SEA_LEVEL), null);
+        SurfaceTemperatureFacet temperature = facet(region, SurfaceTemperatureFacet.class);
+        for (int z = 0; z < 32; z += 2) {
+            for (int x = 0; x < 32; x += 2) {
+                Assert.assertEquals(temperature(expected, x / 2, z / 2), temperature.getWorld(x, z), 1e-6f);
+            }
+        }
+    }
+
+    @Test
+    public void testTemperatureFitsBiomes() {
+        HeightMapClimateProvider provider = new HeightMapClimateProvider(heights(ISLANDS, 12), directory);
+        GeneratingRegion region = region(0, 0, ISLANDS_SIZE, ISLANDS_SIZE, SEA_LEVEL);
+        provider.process(region);
+
+        // BiomeProvider turns everything at or below 0.3 into snow, which only the coldest land and the polar sea reach
+        SurfaceTemperatureFacet temperature = facet(region, SurfaceTemperatureFacet.class);
+        int snow = 0;
+        for (float value : temperature.getInternal()) {
+            Assert.assertTrue(value >= 0 && value <= 1);
+            if (value <= 0.3f) {
+                snow++;
+            }
+        }
+        Assert.assertTrue(snow < temperature.getInternal().length / 4);
+        // the equator is in the middle of the map
+        Assert.assertTrue(temperature.getWorld(5, ISLANDS_SIZE / 2) > temperature.getWorld(5, 0));
+    }
+
+    @Test
+    public void testSimulatesNonSquareHeightmap() throws Exception {
+        HeightMapSurfaceHeightProvider heights = heights(ISLANDS, 12);
+        HeightMapClimateProvider provider = new HeightMapClimateProvider(heights, directory);
+        provider.process(region(SEA_LEVEL));
+
+        HeightMapSurfaceHeightProvider.HeightMapConfiguration configuration = new HeightMapSurfaceHeightProvider.HeightMapConfiguration();
+        configuration.heightMap = NON_SQUARE;
+        configuration.terrainScale = 1;
+        heights.setConfiguration(configuration);
+        heights.getHeightmapReload().get(10, TimeUnit.SECONDS);
+        // the previous climate is served until the new one is ready
+        provider.process(region(SEA_LEVEL));
+        provider.getClimateComputation().get(10, TimeUnit.SECONDS);
+
+        // the climate of the 32x16 map is simulated on a 32x32 grid, two cells per texel along z
+        GeneratingRegion region = region(0, 0, 32, 16, SEA_LEVEL);
+        provider.process(region);
+        ClimateSimulator expected = ClimateCache.inDirectory(directory, relativeHeights(heights, SEA_LEVEL))
+                .getOrCompute(relativeHeights(heights, SEA_LEVEL), null);
+        Assert.assertEquals(0, expected.getMetrics().getCellVisits());
+        SurfaceTemperatureFacet temperature = facet(region, SurfaceTemperatureFacet.class);
+        SurfaceHumidityFacet humidity = facet(region, SurfaceHumidityFacet.class);
+        for (int z = 0; z < 16; z++) {
+            for (int x = 0; x < 32; x++) {
+                Assert.assertEquals(temperature(expected, x, z * 2), temperature.getWorld(x, z), 1e-6f);
+                Assert.assertEquals(TeraMath.clamp(1 - expected.getHumidity().get(x, z * 2)), humidity.getWorld(x, z), 1e-6f);
+            }
+        }
+        // the lake on the left is wet, the far side of the map is not
+        Assert.assertEquals(1, humidity.getWorld(2, 8), 0);
+        Assert.assertTrue(humidity.getWorld(20, 8) < 1);
+    }
+
+    private long cacheFileCount() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.toString().endsWith(".bin")).collect(Collectors.toList()).size();
+        }
+    }
+
+    private static GeneratingRegion region(int seaLevel) {
+        return region(0, 0, 16, 16, seaLevel);
+    }
+
+    private static GeneratingRegion region(int minX, int minZ, int sizeX, int sizeZ, int seaLevel) {
+        BlockRegion blocks = new BlockRegion(minX, 0, minZ, minX + sizeX - 1, 63, minZ + sizeZ - 1);
+        SeaLevelFacet seaLevelFacet = new SeaLevelFacet(blocks, new Border3D(0, 0, 0));
+        seaLevelFacet.setSeaLevel(seaLevel);
+        GeneratingRegion region = Mockito.mock(GeneratingRegion.class);
+        Mockito.when(region.getRegion()).thenReturn(blocks);
+        Mockito.when(region.getBorderForFacet(ArgumentMatchers.any())).thenReturn(new Border3D(0, 0, 0));
+        Mockito.when(region.getRegionFacet(SeaLevelFacet.class)).thenReturn(seaLevelFacet);
+        return region;
+    }
+
+    private static <T extends WorldFacet> T facet(GeneratingRegion region, Class<T> type) {
+        ArgumentCaptor<T> facet = ArgumentCaptor.forClass(type);
+        Mockito.verify(region).setRegionFacet(ArgumentMatchers.eq(type), facet.capture());
+        return facet.getValue();
+    }
+
+    private static HeightMapSurfaceHeightProvider heights(String name, float heightOffset) {
+        HeightMapSurfaceHeightProvider provider = new HeightMapSurfaceHeightProvider();
+        HeightMapSurfaceHeightProvider.HeightMapConfiguration configuration = new HeightMapSurfaceHeightProvider.HeightMapConfiguration();
+        configuration.heightMap = name;
+        configuration.heightOffset = heightOffset;
+        configuration.terrainScale = 1;
+        provider.setConfiguration(configuration);
+        return provider;
+    }
+
+    private static float temperature(ClimateSimulator climate, int x, int y) {
+        return TeraMath.clamp((climate.getClimate().get(x, y) + 1) / 2);
+    }
+
+    /**
+     * @return the heights relative to the sea level, on a square grid as wide as the longer side of the heightmap
+     */
+    private static FloatGrid relativeHeights(HeightMapSurfaceHeightProvider provider, int seaLevel) {
+        HeightMapSurfaceHeightProvider.Snapshot heights = provider.getSnapshot();
+        HeightMapStore heightmap = heights.getHeightmap();
+        int size = Math.max(heightmap.getWidth(), heightmap.getHeight());
+        FloatGrid grid = FloatGrid.onHeap(size, size);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                float height = heightmap.get(x * heightmap.getWidth() / size, y * heightmap.getHeight() / size);
+                grid.set(x, y, (heights.getHeightOffset() + heights.getHeightScale() * height) / seaLevel);
+            }
+        }
+        return grid;
+    }
+
+    /**
+     * Writes islands that rise from below the sea level in the corners to above it in the middle.
+     */
+    private static void writeIslands(Path file) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(ISLANDS_SIZE * ISLANDS_SIZE * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        for (int y = 0; y < ISLANDS_SIZE; y++) {
+            for (int x = 0; x < ISLANDS_SIZE; x++) {
+                bytes.putFloat((float) (0.5 + 0.4 * Math.sin(x * 0.37) * Math.cos(y * 0.23 + 1)));
+            }
+        }
+        Files.write(file, bytes.array());
+    }
+
+    /**
+     * Writes a heightmap as a NumPy array of little-endian floats, with a lake along the left edge and land elsewhere.
+     */
+    private static void writeNpy(Path file, int width, int height) throws IOException {
+        StringBuilder header = new StringBuilder("{'descr': '<f4', 'fortran_order': False, 'shape': (" + height + ", " + width + "), }");
+        // the header is padded so that the data is aligned to 64 bytes
+        while ((10 + header.length() + 1) % 64 != 0) {
+            header.append(' ');
+        }
+        header.append('\n');
+        ByteBuffer bytes = ByteBuffer.allocate(10 + header.length() + width * height * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        bytes.put((byte) 0x93).put("NUMPY".getBytes(StandardCharsets.ISO_8859_1)).put((byte) 1).put((byte) 0);
+        bytes.putShort((short) header.length());
+        bytes.put(header.toString().getBytes(StandardCharsets.ISO_8859_1));
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                bytes.putFloat(x < 4 ? 0 : 0.5f);
+            }
+        }
+        Files.write(file, bytes.array());
+    }
+}
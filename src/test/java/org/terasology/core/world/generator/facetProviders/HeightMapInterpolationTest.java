@@ -0,0 +1,190 @@
+// Copyright 2020 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.core.world.generator.facetProviders;
+
+import com.google.common.math.IntMath;
+import org.junit.Assert;
+import org.junit.Test;
+import org.terasology.core.world.generator.FloatGrid;
+import org.terasology.core.world.generator.facetProviders.HeightMapSurfaceHeightProvider.InterpolationMode;
+import org.terasology.core.world.generator.facetProviders.HeightMapSurfaceHeightProvider.WrapMode;
+import org.terasology.math.TeraMath;
+
+import java.util.Random;
+
+public class HeightMapInterpolationTest {
+
+    private static final float OFFSET = 12;
+    private static final float SCALE = 70;
+
+    @Test
+    public void testRowsMatchPerBlockSampling() {
+        // not square, so the axes cannot be mixed up
+        HeightMapStore map = HeightMapStore.of(randomGrid(new Random(11), 23, 17));
+        for (WrapMode wrapMode : WrapMode.values()) {
+            for (int xzScale : new int[] {1, 3, 8}) {
+                // inside the map, and across its edges on both sides
+                assertMatchesPerBlock(map, wrapMode, xzScale, 5, 7, 20, 12);
+                assertMatchesPerBlock(map, wrapMode, xzScale, -40, -33, 64, 48);
+                assertMatchesPerBlock(map, wrapMode, xzScale, 23 * xzScale - 10, 17 * xzScale - 6, 30, 20);
+            }
+        }
+    }
+
+    @Test
+    public void testBicubicAtEdges() {
+        HeightMapStore map = HeightMapStore.of(randomGrid(new Random(13), 19, 14));
+        int xzScale = 4;
+        for (WrapMode wrapMode : WrapMode.values()) {
+            // the corners of the map, where the kernel reaches beyond it on two sides
+            int[][] corners = {{-12, -12}, {19 * xzScale - 12, -12}, {-12, 14 * xzScale - 12}, {19 * xzScale - 12, 14 * xzScale - 12}};
+            for (int[] corner : corners) {
+                float[] heights = bicubic(map, wrapMode, xzScale, corner[0], corner[1], 24, 24);
+                for (int z = 0; z < 24; z++) {
+                    for (int x = 0; x < 24; x++) {
+                        int worldX = corner[0] + x;
+                        int worldZ = corner[1] + z;
+                        Assert.assertEquals(wrapMode + ": " + worldX + ", " + worldZ, bicubicPerBlock(map, wrapMode, xzScale, worldX, worldZ),
+                                heights[z * 24 + x], 1e-4f);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testBicubicPassesThroughTexels() {
+        HeightMapStore map = HeightMapStore.of(randomGrid(new Random(17), 16, 16));
+        float[] heights = bicubic(map, WrapMode.CLAMP, 4, 0, 0, 64, 64);
+        for (int y = 0; y < 16; y++) {
+            for (int x = 0; x < 16; x++) {
+                Assert.assertEquals(OFFSET + SCALE * map.get(x, y), heights[y * 4 * 64 + x * 4], 1e-4f);
+            }
+        }
+    }
+
+    @Test
+    public void testBicubicKeepsFlatEdges() {
+        FloatGrid flat = FloatGrid.onHeap(8, 8);
+        flat.fill(0.25f);
+        for (WrapMode wrapMode : WrapMode.values()) {
+            // the weights add up to one, also where texels are repeated at the edges
+            for (float height : bicubic(HeightMapStore.of(flat), wrapMode, 3, -10, -10, 44, 44)) {
+                Assert.assertEquals(OFFSET + SCALE * 0.25f, height, 1e-4f);
+            }
+        }
+    }
+
+    @Test
+    public void testBicubicRepeatsSeamlessly() {
+        HeightMapStore map = HeightMapStore.of(randomGrid(new Random(19), 12, 12));
+        int period = 12 * 4;
+        float[] first = bicubic(map, WrapMode.REPEAT, 4, -6, -6, 12, 12);
+        float[] second = bicubic(map, WrapMode.REPEAT, 4, period - 6, -6 - period, 12, 12);
+        Assert.assertArrayEquals(first, second, 0);
+    }
+
+    private static float[] bicubic(HeightMapStore map, WrapMode wrapMode, int xzScale, int minX, int minZ, int sizeX, int sizeZ) {
+        float[] heights = new float[sizeX * sizeZ];
+        HeightMapSurfaceHeightProvider.interpolate(map, wrapMode, InterpolationMode.BICUBIC, xzScale, OFFSET, SCALE,
+                minX, minZ, sizeX, sizeZ, heights);
+        return heights;
+    }
+
+    /**
+     * Catmull-Rom interpolation of a single block from the 4x4 texels around it, with coordinates outside of the map
+     * clamped or wrapped.
+     */
+    private static float bicubicPerBlock(HeightMapStore map, WrapMode wrapMode, int xzScale, int x, int z) {
+        int texelX = Math.floorDiv(wrapMode == WrapMode.CLAMP ? TeraMath.clamp(x, 0, map.getWidth() * xzScale - 1) : x, xzScale);
+        int texelZ = Math.floorDiv(wrapMode == WrapMode.CLAMP ? TeraMath.clamp(z, 0, map.getHeight() * xzScale - 1) : z, xzScale);
+        double[] weightsX = catmullRom(IntMath.mod(x, xzScale) / (double) xzScale);
+        double[] weightsZ = catmullRom(IntMath.mod(z, xzScale) / (double) xzScale);
+        double height = 0;
+        for (int j = 0; j < 4; j++) {
+            for (int i = 0; i < 4; i++) {
+                int mapX = texel(texelX + i - 1, map.getWidth(), wrapMode);
+                int mapZ = texel(texelZ + j - 1, map.getHeight(), wrapMode);
+                height += weightsX[i] * weightsZ[j] * map.get(mapX, mapZ);
+            }
+        }
+        return (float) (OFFSET + SCALE * height);
+    }
+
+    private static int texel(int texel, int mapSize, WrapMode wrapMode) {
+        return wrapMode == WrapMode.CLAMP ? TeraMath.clamp(texel, 0, mapSize - 1) : IntMath.mod(texel, mapSize);
+    }
+
+    private static double[] catmullRom(double t) {
+        return new double[] {
+            0.5 * (-t * t * t + 2 * t * t - t),
+            0.5 * (3 * t * t * t - 5 * t * t + 2),
+            0.5 * (-3 * t * t * t + 4 * t * t + t),
+            0.5 * (t * t * t - t * t)
+        };
+    }
+
+    private static void assertMatchesPerBlock(HeightMapStore map, WrapMode wrapMode, int xzScale, int minX, int minZ, int sizeX, int sizeZ) {
+        float[] rows = new float[sizeX * sizeZ];
+        HeightMapSurfaceHeightProvider.interpolate(map, wrapMode, InterpolationMode.BILINEAR_FADE, xzScale, OFFSET, SCALE,
+                minX, minZ, sizeX, sizeZ, rows);
+        for (int z = 0; z < sizeZ; z++) {
+            for (int x = 0; x < sizeX; x++) {
+                float expected = perBlock(map, wrapMode, xzScale, minX + x, minZ + z);
+                Assert.assertEquals(wrapMode + " " + xzScale + ": " + (minX + x) + ", " + (minZ + z), expected, rows[z * sizeX + x], 1e-4f);
+            }
+        }
+    }
+
+    /**
+     * The sampling of a single block as the provider did it before it sampled whole rows.
+     */
+    private static float perBlock(HeightMapStore map, WrapMode wrapMode, int xzScale, int x, int z) {
+        int mapWidth = map.getWidth();
+        int mapHeight = map.getHeight();
+        int mapX0;
+        int mapZ0;
+        int mapX1;
+        int mapZ1;
+        switch (wrapMode) {
+            case CLAMP:
+                mapX0 = TeraMath.clamp(x, 0, mapWidth * xzScale - 1) / xzScale;
+                mapZ0 = TeraMath.clamp(z, 0, mapHeight * xzScale - 1) / xzScale;
+                mapX1 = TeraMath.clamp(mapX0 + 1, 0, mapWidth - 1);
+                mapZ1 = TeraMath.clamp(mapZ0 + 1, 0, mapHeight - 1);
+                break;
+            case REPEAT:
+                mapX0 = IntMath.mod(x, mapWidth * xzScale) / xzScale;
+                mapZ0 = IntMath.mod(z, mapHeight * xzScale) / xzScale;
+                mapX1 = IntMath.mod(mapX0 + 1, mapWidth);
+                mapZ1 = IntMath.mod(mapZ0 + 1, mapHeight);
+                break;
+            default:
+                throw new UnsupportedOperationException("Not supported: " + wrapMode);
+        }
+        double p00 = map.get(mapX0, mapZ0);
+        double p10 = map.get(mapX1, mapZ0);
+        double p11 = map.get(mapX1, mapZ1);
+        double p01 = map.get(mapX0, mapZ1);
+
+        float relX = IntMath.mod(x, xzScale) / (float) xzScale;
+        float relZ = IntMath.mod(z, xzScale) / (float) xzScale;
+
+        float interpolatedHeight = (float) lerp(relX, lerp(relZ, p00, p01), lerp(relZ, p10, p11));
+        return OFFSET + SCALE * interpolatedHeight;
+    }
+
+    private static double lerp(double t, double a, double b) {
+        double fade = t * t * (3 - 2 * t);
+        return a + fade * (b - a);
+    }
+
+    private static FloatGrid randomGrid(Random random, int width, int height) {
+        FloatGrid grid = FloatGrid.onHeap(width, height);
+        for (int i = 0; i < grid.size(); i++) {
+            grid.set(i, random.nextFloat());
+        }
+        return grid;
+    }
+}
@@ -0,0 +1,230 @@
+// Copyright 2020 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.core.world.generator.facetProviders;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.terasology.core.world.generator.FloatGrid;
+import org.terasology.engine.paths.PathManager;
+import org.terasology.world.block.BlockRegion;
+import org.terasology.world.generation.Border3D;
+import org.terasology.world.generation.GeneratingRegion;
+import org.terasology.world.generation.facets.ElevationFacet;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+public class HeightMapRangePyramidTest {
+
+    private static final float EPSILON = 1e-4f;
+    private static final String HILLS = "range_hills";
+    private static final String CHECKERED = "range_checkered";
+    private static final String HALF_FLAT = "range_half_flat";
+
+    private Path home;
+
+    @Before
+    public void setup() throws IOException {
+        home = Files.createTempDirectory("home");
+        PathManager.getInstance().useOverrideHomePath(home);
+        Path folder = Files.createDirectories(home.resolve("heightmaps"));
+        writeHeightmap(folder.resolve(HILLS + ".r32"), 32, false);
+        writeHeightmap(folder.resolve(CHECKERED + ".r32"), 16, true);
+        writeHalfFlatHeightmap(folder.resolve(HALF_FLAT + ".r32"), 32);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(home)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testRangeContainsArea() {
+        // not a power of two, so the last blocks of each level are cut off
+        FloatGrid grid = FloatGrid.onHeap(37, 29);
+        Random random = new Random(5);
+        for (int i = 0; i < grid.size(); i++) {
+            grid.set(i, random.nextFloat());
+        }
+        HeightMapRangePyramid pyramid = new HeightMapRangePyramid(HeightMapStore.of(grid));
+
+        for (int area = 0; area < 500; area++) {
+            int minX = random.nextInt(grid.getWidth());
+            int minY = random.nextInt(grid.getHeight());
+            int maxX = minX + random.nextInt(grid.getWidth() - minX);
+            int maxY = minY + random.nextInt(grid.getHeight() - minY);
+            float min = Float.POSITIVE_INFINITY;
+            float max = Float.NEGATIVE_INFINITY;
+            for (int y = minY; y <= maxY; y++) {
+                for (int x = minX; x <= maxX; x++) {
+                    min = Math.min(min, grid.get(x, y));
+                    max = Math.max(max, grid.get(x, y));
+                }
+            }
+            HeightMapRangePyramid.Range range = pyramid.getRange(minX, minY, maxX, maxY);
+            Assert.assertTrue(range.getMin() <= min && range.getMax() >= max);
+            if (maxX - minX < 4 && maxY - minY < 4) {
+                // small areas are read from the map itself
+                Assert.assertEquals(min, range.getMin(), 0);
+                Assert.assertEquals(max, range.getMax(), 0);
+            }
+        }
+
+        HeightMapRangePyramid.Range whole = pyramid.getRange();
+        HeightMapRangePyramid.Range exact = pyramid.getRange(0, 0, 3, 3);
+        for (int y = 0; y < grid.getHeight(); y += 4) {
+            for (int x = 0; x < grid.getWidth(); x += 4) {
+                exact = exact.union(pyramid.getRange(x, y, Math.min(x + 3, grid.getWidth() - 1), Math.min(y + 3, grid.getHeight() - 1)));
+            }
+        }
+        Assert.assertEquals(exact.getMin(), whole.getMin(), 0);
+        Assert.assertEquals(exact.getMax(), whole.getMax(), 0);
+    }
+
+    @Test
+    public void testKeepsFewValues() {
+        FloatGrid grid = FloatGrid.onHeap(256, 192);
+        HeightMapRangePyramid pyramid = new HeightMapRangePyramid(HeightMapStore.of(grid));
+        // blocks of 8x8 up to 256x256 pixels
+        Assert.assertEquals(6, pyramid.getLevels());
+        Assert.assertTrue(pyramid.getSize() + " values", pyramid.getSize() * 20 < grid.size());
+    }
+
+    @Test
+    public void testFillsFlatRegionsWithoutInterpolating() {
+        HeightMapSurfaceHeightProvider provider = provider(HALF_FLAT,
+                HeightMapSurfaceHeightProvider.InterpolationMode.BILINEAR_FADE, HeightMapSurfaceHeightProvider.WrapMode.REPEAT);
+        HeightMapSurfaceHeightProvider.Snapshot snapshot = provider.getSnapshot();
+        // waits for the pyramid, which the regions only use once it is built
+        provider.getElevationRange(0, 0, 1, 1);
+
+        // the texels 1 to 11 of both axes, all in the flat half
+        for (float height : elevation(provider, 4, 4, 16, 16)) {
+            Assert.assertEquals(snapshot.getHeightOffset() + snapshot.getHeightScale() * 0.25f, height, 0);
+        }
+        Assert.assertEquals(1, provider.getFlatRegions());
+
+        // across the edge of the flat half
+        float[] heights = elevation(provider, 20, 4, 16, 16);
+        float[] expected = new float[heights.length];
+        HeightMapSurfaceHeightProvider.interpolate(snapshot.getHeightmap(), snapshot.getWrapMode(), snapshot.getInterpolation(),
+                snapshot.getTerrainScale(), snapshot.getHeightOffset(), snapshot.getHeightScale(), 20, 4, 16, 16, expected);
+        Assert.assertArrayEquals(expected, heights, 0);
+        Assert.assertEquals(1, provider.getFlatRegions());
+
+        // bicubic interpolation of equal texels is not exact, so it is not skipped
+        HeightMapSurfaceHeightProvider bicubic = provider(HALF_FLAT,
+                HeightMapSurfaceHeightProvider.InterpolationMode.BICUBIC, HeightMapSurfaceHeightProvider.WrapMode.REPEAT);
+        bicubic.getElevationRange(0, 0, 1, 1);
+        elevation(bicubic, 4, 4, 16, 16);
+        Assert.assertEquals(0, bicubic.getFlatRegions());
+    }
+
+    @Test
+    public void testElevationRangeBoundsInterpolation() {
+        for (HeightMapSurfaceHeightProvider.InterpolationMode interpolation : HeightMapSurfaceHeightProvider.InterpolationMode.values()) {
+            for (HeightMapSurfaceHeightProvider.WrapMode wrapMode : HeightMapSurfaceHeightProvider.WrapMode.values()) {
+                HeightMapSurfaceHeightProvider provider = provider(HILLS, interpolation, wrapMode);
+                // inside the map, across its edges and larger than the map
+                assertBounded(provider, 5, 9, 12, 7);
+                assertBounded(provider, -20, 250, 40, 24);
+                assertBounded(provider, -300, -300, 600, 600);
+            }
+        }
+    }
+
+    @Test
+    public void testBicubicOvershootIsBounded() {
+        HeightMapSurfaceHeightProvider provider = provider(CHECKERED,
+                HeightMapSurfaceHeightProvider.InterpolationMode.BICUBIC, HeightMapSurfaceHeightProvider.WrapMode.REPEAT);
+        HeightMapSurfaceHeightProvider.Snapshot snapshot = provider.getSnapshot();
+        HeightMapRangePyramid.Range range = provider.getElevationRange(0, 0, 16, 16);
+        assertBounded(provider, 0, 0, 16, 16);
+
+        // halfway between the texels 1 and 2 of both axes, with two blocks per texel, the overshoot is the largest
+        float[] peak = elevation(provider, 3, 3, 1, 1);
+        Assert.assertEquals(snapshot.getHeightOffset() + snapshot.getHeightScale() * 1.28125f, peak[0], EPSILON);
+        Assert.assertEquals(range.getMax(), peak[0], EPSILON);
+        // and it dips as far below the lowest texel between the texels 3 and 4
+        float[] dip = elevation(provider, 7, 3, 1, 1);
+        Assert.assertEquals(snapshot.getHeightOffset() - snapshot.getHeightScale() * 0.28125f, dip[0], EPSILON);
+        Assert.assertEquals(range.getMin(), dip[0], EPSILON);
+    }
+
+    private static void assertBounded(HeightMapSurfaceHeightProvider provider, int minX, int minZ, int sizeX, int sizeZ) {
+        HeightMapRangePyramid.Range range = provider.getElevationRange(minX, minZ, sizeX, sizeZ);
+        for (float height : elevation(provider, minX, minZ, sizeX, sizeZ)) {
+            Assert.assertTrue(height + " not in " + range, height >= range.getMin() - EPSILON && height <= range.getMax() + EPSILON);
+        }
+    }
+
+    private static float[] elevation(HeightMapSurfaceHeightProvider provider, int minX, int minZ, int sizeX, int sizeZ) {
+        GeneratingRegion region = Mockito.mock(GeneratingRegion.class);
+        Mockito.when(region.getRegion()).thenReturn(new BlockRegion(minX, 0, minZ, minX + sizeX - 1, 63, minZ + sizeZ - 1));
+        Mockito.when(region.getBorderForFacet(ArgumentMatchers.any())).thenReturn(new Border3D(0, 0, 0));
+        provider.process(region);
+        ArgumentCaptor<ElevationFacet> facet = ArgumentCaptor.forClass(ElevationFacet.class);
+        Mockito.verify(region).setRegionFacet(ArgumentMatchers.eq(ElevationFacet.class), facet.capture());
+        return facet.getValue().getInternal();
+    }
+
+    private static HeightMapSurfaceHeightProvider provider(String name, HeightMapSurfaceHeightProvider.InterpolationMode interpolation,
+                                                           HeightMapSurfaceHeightProvider.WrapMode wrapMode) {
+        HeightMapSurfaceHeightProvider provider = new HeightMapSurfaceHeightProvider();
+        HeightMapSurfaceHeightProvider.HeightMapConfiguration configuration = new HeightMapSurfaceHeightProvider.HeightMapConfiguration();
+        configuration.heightMap = name;
+        configuration.interpolation = interpolation;
+        configuration.wrapMode = wrapMode;
+        configuration.terrainScale = 2;
+        provider.setConfiguration(configuration);
+        return provider;
+    }
+
+    /**
+     * Writes a heightmap that is flat at 0.25 in its left half and has hills in its right half.
+     */
+    private static void writeHalfFlatHeightmap(Path file, int size) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(size * size * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                bytes.putFloat(x < size / 2 ? 0.25f : (float) (0.5 + 0.4 * Math.sin(x * 0.37) * Math.cos(y * 0.23 + 1)));
+            }
+        }
+        Files.write(file, bytes.array());
+    }
+
+    /**
+     * Writes smooth hills, or blocks of 2x2 texels that are high where both or neither of the coordinates are in the
+     * middle of a period of 4: bicubic interpolation overshoots those the most halfway between the texels 1 and 2 of
+     * both axes.
+     */
+    private static void writeHeightmap(Path file, int size, boolean checkered) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(size * size * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                if (checkered) {
+                    boolean middleX = x % 4 == 1 || x % 4 == 2;
+                    boolean middleY = y % 4 == 1 || y % 4 == 2;
+                    bytes.putFloat(middleX == middleY ? 1 : 0);
+                } else {
+                    bytes.putFloat((float) (0.5 + 0.4 * Math.sin(x * 0.37) * Math.cos(y * 0.23 + 1)));
+                }
+            }
+        }
+        Files.write(file, bytes.array());
+    }
+}
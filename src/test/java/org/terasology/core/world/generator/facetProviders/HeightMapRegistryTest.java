@@ -0,0 +1,140 @@
+// Copyright 2020 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.core.world.generator.facetProviders;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.terasology.assets.ResourceUrn;
+import org.terasology.core.world.generator.FloatGrid;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class HeightMapRegistryTest {
+
+    private static final String FORMAT = "test";
+
+    @Test
+    public void testLeasesShareOneLoad() {
+        ResourceUrn urn = new ResourceUrn("test", "shared");
+        AtomicInteger loads = new AtomicInteger();
+        HeightMapRegistry.Lease first = HeightMapRegistry.acquire(urn, FORMAT, () -> load(loads));
+        HeightMapRegistry.Lease second = HeightMapRegistry.acquire(urn, FORMAT, () -> load(loads));
+
+        Assert.assertEquals(1, loads.get());
+        Assert.assertSame(first.getStore(), second.getStore());
+        Assert.assertEquals(2, HeightMapRegistry.getReferences(urn, FORMAT));
+        // the format is part of the key
+        HeightMapRegistry.Lease other = HeightMapRegistry.acquire(urn, "other", () -> load(loads));
+        Assert.assertNotSame(first.getStore(), other.getStore());
+
+        first.close();
+        second.close();
+        other.close();
+    }
+
+    @Test
+    public void testLastReleaseDropsHeightMap() {
+        ResourceUrn urn = new ResourceUrn("test", "released");
+        AtomicInteger loads = new AtomicInteger();
+        HeightMapRegistry.Lease first = HeightMapRegistry.acquire(urn, FORMAT, () -> load(loads));
+        HeightMapRegistry.Lease second = HeightMapRegistry.acquire(urn, FORMAT, () -> load(loads));
+
+        first.close();
+        Assert.assertEquals(1, HeightMapRegistry.getReferences(urn, FORMAT));
+        // releasing twice has no effect
+        first.close();
+        Assert.assertEquals(1, HeightMapRegistry.getReferences(urn, FORMAT));
+
+        second.close();
+        Assert.assertEquals(0, HeightMapRegistry.getReferences(urn, FORMAT));
+        HeightMapRegistry.Lease third = HeightMapRegistry.acquire(urn, FORMAT, () -> load(loads));
+        Assert.assertEquals(2, loads.get());
+        Assert.assertNotSame(second.getStore(), third.getStore());
+        third.close();
+    }
+
+    @Test
+    public void testDroppedLeaseLetsHeightMapGo() throws InterruptedException {
+        ResourceUrn urn = new ResourceUrn("test", "dropped");
+        AtomicInteger loads = new AtomicInteger();
+        HeightMapRegistry.acquire(urn, FORMAT, () -> load(loads));
+        Assert.assertEquals(1, HeightMapRegistry.getReferences(urn, FORMAT));
+
+        // the lease is never released, as if its provider was discarded with the world
+        for (int i = 0; i < 100 && HeightMapRegistry.getReferences(urn, FORMAT) > 0; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(0, HeightMapRegistry.getReferences(urn, FORMAT));
+        HeightMapRegistry.acquire(urn, FORMAT, () -> load(loads)).close();
+        Assert.assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testFailedLoadIsRetried() {
+        ResourceUrn urn = new ResourceUrn("test", "failing");
+        try {
+            HeightMapRegistry.acquire(urn, FORMAT, () -> {
+                throw new IllegalStateException("broken");
+            });
+            Assert.fail("The exception of the loader was swallowed");
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("broken", e.getMessage());
+        }
+        Assert.assertEquals(0, HeightMapRegistry.getReferences(urn, FORMAT));
+
+        AtomicInteger loads = new AtomicInteger();
+        HeightMapRegistry.acquire(urn, FORMAT, () -> load(loads)).close();
+        Assert.assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testLoadDoesNotBlockOtherHeightMaps() throws Exception {
+        ResourceUrn slow = new ResourceUrn("test", "slow");
+        ResourceUrn fast = new ResourceUrn("test", "fast");
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<HeightMapRegistry.Lease> slowLease = executor.submit(() -> HeightMapRegistry.acquire(slow, FORMAT, () -> {
+                loading.countDown();
+                try {
+                    finish.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return load(loads);
+            }));
+            Assert.assertTrue(loading.await(10, TimeUnit.SECONDS));
+            // a second request for the slow map waits for the first load instead of loading again
+            Future<HeightMapRegistry.Lease> waiting = executor.submit(() -> HeightMapRegistry.acquire(slow, FORMAT, () -> load(loads)));
+
+            HeightMapRegistry.Lease fastLease = HeightMapRegistry.acquire(fast, FORMAT, () -> load(loads));
+            Assert.assertFalse(slowLease.isDone());
+            fastLease.close();
+
+            finish.countDown();
+            HeightMapRegistry.Lease first = slowLease.get(10, TimeUnit.SECONDS);
+            HeightMapRegistry.Lease second = waiting.get(10, TimeUnit.SECONDS);
+            Assert.assertSame(first.getStore(), second.getStore());
+            Assert.assertEquals(2, loads.get());
+            first.close();
+            second.close();
+        } finally {
+            finish.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    private static HeightMapStore load(AtomicInteger loads) {
+        loads.incrementAndGet();
+        return HeightMapStore.of(FloatGrid.onHeap(4, 4));
+    }
+}
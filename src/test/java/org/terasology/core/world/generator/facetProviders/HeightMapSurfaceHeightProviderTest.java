@@ -0,0 +1,173 @@
+// Copyright 2020 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.core.world.generator.facetProviders;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.terasology.engine.paths.PathManager;
+import org.terasology.world.block.BlockRegion;
+import org.terasology.world.generation.Border3D;
+import org.terasology.world.generation.GeneratingRegion;
+import org.terasology.world.generation.facets.ElevationFacet;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+public class HeightMapSurfaceHeightProviderTest {
+
+    private static final String FIRST = "platec_heightmap";
+    private static final int FIRST_SIZE = 32;
+    private static final String SECOND = "opposing_islands";
+    private static final int SECOND_SIZE = 48;
+    private static final String IMAGE = "grey_hills";
+
+    private Path home;
+
+    @Before
+    public void setup() throws IOException {
+        home = Files.createTempDirectory("home");
+        PathManager.getInstance().useOverrideHomePath(home);
+        Path folder = Files.createDirectories(home.resolve("heightmaps"));
+        writeHeightmap(folder.resolve(FIRST + ".r32"), FIRST_SIZE, 1);
+        writeHeightmap(folder.resolve(SECOND + ".r32"), SECOND_SIZE, 2);
+        writeImage(folder.resolve(IMAGE + ".png"), 300, 40);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(home)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testSnapshotKeepsItsSettings() {
+        HeightMapSurfaceHeightProvider provider = new HeightMapSurfaceHeightProvider();
+        HeightMapSurfaceHeightProvider.HeightMapConfiguration configuration = new HeightMapSurfaceHeightProvider.HeightMapConfiguration();
+        provider.setConfiguration(configuration);
+        HeightMapSurfaceHeightProvider.Snapshot before = provider.getSnapshot();
+
+        // changing the component in place does not reach the provider until it is applied
+        configuration.heightScale = 100;
+        configuration.terrainScale = 4;
+        Assert.assertSame(before, provider.getSnapshot());
+
+        provider.setConfiguration(configuration);
+        HeightMapSurfaceHeightProvider.Snapshot after = provider.getSnapshot();
+        Assert.assertEquals(70, before.getHeightScale(), 0);
+        Assert.assertEquals(8, before.getTerrainScale());
+        Assert.assertEquals(100, after.getHeightScale(), 0);
+        Assert.assertEquals(4, after.getTerrainScale());
+        // the heightmap did not change, so it is not loaded again
+        Assert.assertSame(before.getHeightmap(), after.getHeightmap());
+    }
+
+    @Test
+    public void testReloadSwapsHeightmapAndSettingsTogether() throws Exception {
+        HeightMapSurfaceHeightProvider provider = new HeightMapSurfaceHeightProvider();
+        provider.setConfiguration(new HeightMapSurfaceHeightProvider.HeightMapConfiguration());
+        HeightMapSurfaceHeightProvider.Snapshot before = provider.getSnapshot();
+        Assert.assertEquals(FIRST, before.getHeightMapName());
+
+        HeightMapSurfaceHeightProvider.HeightMapConfiguration configuration = new HeightMapSurfaceHeightProvider.HeightMapConfiguration();
+        configuration.heightMap = SECOND;
+        configuration.heightOffset = 20;
+        provider.setConfiguration(configuration);
+        // until the new heightmap is loaded, the previous one is served with its own settings
+        HeightMapSurfaceHeightProvider.Snapshot during = provider.getSnapshot();
+        if (during != before) {
+            Assert.assertEquals(SECOND, during.getHeightMapName());
+        }
+
+        // settings that change while the heightmap is loading are applied with it
+        HeightMapSurfaceHeightProvider.HeightMapConfiguration changed = new HeightMapSurfaceHeightProvider.HeightMapConfiguration();
+        changed.heightMap = SECOND;
+        changed.heightOffset = 30;
+        provider.setConfiguration(changed);
+        provider.getHeightmapReload().get(10, TimeUnit.SECONDS);
+
+        HeightMapSurfaceHeightProvider.Snapshot after = provider.getSnapshot();
+        Assert.assertEquals(SECOND, after.getHeightMapName());
+        Assert.assertEquals(SECOND_SIZE, after.getHeightmap().getWidth());
+        Assert.assertEquals(30, after.getHeightOffset(), 0);
+        Assert.assertEquals(12, before.getHeightOffset(), 0);
+        Assert.assertEquals(FIRST_SIZE, before.getHeightmap().getWidth());
+    }
+
+    @Test
+    public void testProcessUsesOneSnapshot() {
+        HeightMapSurfaceHeightProvider provider = new HeightMapSurfaceHeightProvider();
+        HeightMapSurfaceHeightProvider.HeightMapConfiguration configuration = new HeightMapSurfaceHeightProvider.HeightMapConfiguration();
+        configuration.terrainScale = 1;
+        provider.setConfiguration(configuration);
+
+        GeneratingRegion region = Mockito.mock(GeneratingRegion.class);
+        Mockito.when(region.getRegion()).thenReturn(new BlockRegion(0, 0, 0, 15, 63, 15));
+        Mockito.when(region.getBorderForFacet(ArgumentMatchers.any())).thenReturn(new Border3D(0, 0, 0));
+        provider.process(region);
+
+        // at scale 1 every block sits on a texel
+        ArgumentCaptor<ElevationFacet> facet = ArgumentCaptor.forClass(ElevationFacet.class);
+        Mockito.verify(region).setRegionFacet(ArgumentMatchers.eq(ElevationFacet.class), facet.capture());
+        for (int z = 0; z < 16; z++) {
+            for (int x = 0; x < 16; x++) {
+                float expected = 12 + 70 * value(1, x, z);
+                Assert.assertEquals(expected, facet.getValue().getWorld(x, z), 1e-4f);
+            }
+        }
+    }
+
+    @Test
+    public void testReadsImageInTiles() {
+        HeightMapSurfaceHeightProvider provider = new HeightMapSurfaceHeightProvider();
+        HeightMapSurfaceHeightProvider.HeightMapConfiguration configuration = new HeightMapSurfaceHeightProvider.HeightMapConfiguration();
+        configuration.heightMap = IMAGE;
+        provider.setConfiguration(configuration);
+
+        HeightMapStore heightmap = provider.getSnapshot().getHeightmap();
+        Assert.assertTrue(heightmap instanceof TiledHeightMapStore);
+        Assert.assertEquals(300, heightmap.getWidth());
+        Assert.assertEquals(40, heightmap.getHeight());
+        // the grey value (290 + 3) % 256 becomes the most significant byte, like in a texture
+        Assert.assertEquals(((long) 37 << 24 | 37 << 16 | 37 << 8 | 255) / (256 * 256 * 256 * 256f), heightmap.get(290, 3), 0);
+        Assert.assertEquals(1, ((TiledHeightMapStore) heightmap).getResidentTiles());
+    }
+
+    private static float value(int variant, int x, int y) {
+        return (float) (0.5 + 0.4 * Math.sin(x * 0.37 * variant) * Math.cos(y * 0.23 + variant));
+    }
+
+    private static void writeHeightmap(Path file, int size, int variant) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(size * size * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                bytes.putFloat(value(variant, x, y));
+            }
+        }
+        Files.write(file, bytes.array());
+    }
+
+    private static void writeImage(Path file, int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.getRaster().setSample(x, y, 0, (x + y) % 256);
+            }
+        }
+        ImageIO.write(image, "png", file.toFile());
+    }
+}
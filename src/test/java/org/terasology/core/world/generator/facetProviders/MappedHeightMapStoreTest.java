@@ -0,0 +1,198 @@
+// Copyright 2020 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.core.world.generator.facetProviders;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+public class MappedHeightMapStoreTest {
+
+    private static final int WIDTH = 7;
+    private static final int HEIGHT = 5;
+
+    private Path directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("heightmaps");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testReadsUnsigned16() throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(WIDTH * HEIGHT * Short.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < WIDTH * HEIGHT; i++) {
+            bytes.putShort((short) unsigned16(i));
+        }
+        Path file = write("map.r16", bytes);
+
+        MappedHeightMapStore store = MappedHeightMapStore.open(file, WIDTH, HEIGHT, MappedHeightMapStore.Format.UNSIGNED_16,
+                ByteOrder.LITTLE_ENDIAN);
+        Assert.assertEquals(WIDTH, store.getWidth());
+        Assert.assertEquals(HEIGHT, store.getHeight());
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                Assert.assertEquals(unsigned16(y * WIDTH + x) / 65535f, store.get(x, y), 0);
+            }
+        }
+    }
+
+    @Test
+    public void testReadsFloat32AfterOffset() throws IOException {
+        int header = 12;
+        ByteBuffer bytes = ByteBuffer.allocate(header + WIDTH * HEIGHT * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        bytes.position(header);
+        for (int i = 0; i < WIDTH * HEIGHT; i++) {
+            bytes.putFloat(float32(i));
+        }
+        Path file = write("map.r32", bytes);
+
+        MappedHeightMapStore store = MappedHeightMapStore.open(file, header, WIDTH, HEIGHT, MappedHeightMapStore.Format.FLOAT_32,
+                ByteOrder.LITTLE_ENDIAN);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                Assert.assertEquals(float32(y * WIDTH + x), store.get(x, y), 0);
+            }
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testRejectsShortFile() throws IOException {
+        Path file = write("short.r32", ByteBuffer.allocate(WIDTH * HEIGHT * Float.BYTES - 1));
+        MappedHeightMapStore.open(file, WIDTH, HEIGHT, MappedHeightMapStore.Format.FLOAT_32, ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Test
+    public void testOpensSquareFileBySize() throws IOException {
+        int size = 6;
+        ByteBuffer bytes = ByteBuffer.allocate(size * size * Short.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < size * size; i++) {
+            bytes.putShort((short) unsigned16(i));
+        }
+        Path file = write("square.raw", bytes);
+
+        MappedHeightMapStore store = MappedHeightMapStore.openSquare(file, MappedHeightMapStore.Format.UNSIGNED_16, ByteOrder.LITTLE_ENDIAN);
+        Assert.assertEquals(size, store.getWidth());
+        Assert.assertEquals(size, store.getHeight());
+        Assert.assertEquals(unsigned16(size * 3 + 4) / 65535f, store.get(4, 3), 0);
+    }
+
+    @Test(expected = IOException.class)
+    public void testRejectsNonSquareFile() throws IOException {
+        Path file = write("wide.r32", ByteBuffer.allocate(WIDTH * HEIGHT * Float.BYTES));
+        MappedHeightMapStore.openSquare(file, MappedHeightMapStore.Format.FLOAT_32, ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Test
+    public void testReadsNpyFloat32() throws IOException {
+        ByteBuffer data = ByteBuffer.allocate(WIDTH * HEIGHT * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < WIDTH * HEIGHT; i++) {
+            data.putFloat(float32(i));
+        }
+        Path file = npy(1, "{'descr': '<f4', 'fortran_order': False, 'shape': (" + HEIGHT + ", " + WIDTH + "), }", data);
+
+        MappedHeightMapStore store = MappedHeightMapStore.openNpy(file);
+        Assert.assertEquals(MappedHeightMapStore.Format.FLOAT_32, store.getFormat());
+        // the first dimension is the height
+        Assert.assertEquals(WIDTH, store.getWidth());
+        Assert.assertEquals(HEIGHT, store.getHeight());
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                Assert.assertEquals(float32(y * WIDTH + x), store.get(x, y), 0);
+            }
+        }
+    }
+
+    @Test
+    public void testReadsBigEndianNpyWithLongHeader() throws IOException {
+        ByteBuffer data = ByteBuffer.allocate(WIDTH * HEIGHT * Short.BYTES).order(ByteOrder.BIG_ENDIAN);
+        for (int i = 0; i < WIDTH * HEIGHT; i++) {
+            data.putShort((short) unsigned16(i));
+        }
+        // version 2 has a four byte header length; the keys may come in any order
+        Path file = npy(2, "{'shape': (" + HEIGHT + ", " + WIDTH + "), 'fortran_order': False, 'descr': '>u2'}", data);
+
+        MappedHeightMapStore store = MappedHeightMapStore.openNpy(file);
+        Assert.assertEquals(MappedHeightMapStore.Format.UNSIGNED_16, store.getFormat());
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                Assert.assertEquals(unsigned16(y * WIDTH + x) / 65535f, store.get(x, y), 0);
+            }
+        }
+    }
+
+    @Test
+    public void testRejectsUnsupportedNpy() throws IOException {
+        ByteBuffer data = ByteBuffer.allocate(WIDTH * HEIGHT * 8);
+        assertNotReadable(npy(1, "{'descr': '<f4', 'fortran_order': True, 'shape': (" + HEIGHT + ", " + WIDTH + "), }", data));
+        assertNotReadable(npy(1, "{'descr': '<f8', 'fortran_order': False, 'shape': (" + HEIGHT + ", " + WIDTH + "), }", data));
+        assertNotReadable(npy(1, "{'descr': '<f4', 'fortran_order': False, 'shape': (" + HEIGHT + ", " + WIDTH + ", 3), }", data));
+        assertNotReadable(write("plain.npy", ByteBuffer.allocate(64)));
+    }
+
+    private static void assertNotReadable(Path file) {
+        try {
+            MappedHeightMapStore.openNpy(file);
+            Assert.fail("Expected " + file + " to be rejected");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Writes a NumPy file with the given header, padded like NumPy does so that the data is aligned to 64 bytes.
+     */
+    private Path npy(int version, String header, ByteBuffer data) throws IOException {
+        int prefix = version == 1 ? 10 : 12;
+        StringBuilder padded = new StringBuilder(header);
+        while ((prefix + padded.length() + 1) % 64 != 0) {
+            padded.append(' ');
+        }
+        padded.append('\n');
+        ByteBuffer bytes = ByteBuffer.allocate(prefix + padded.length() + data.capacity()).order(ByteOrder.LITTLE_ENDIAN);
+        bytes.put((byte) 0x93).put("NUMPY".getBytes(StandardCharsets.ISO_8859_1)).put((byte) version).put((byte) 0);
+        if (version == 1) {
+            bytes.putShort((short) padded.length());
+        } else {
+            bytes.putInt(padded.length());
+        }
+        bytes.put(padded.toString().getBytes(StandardCharsets.ISO_8859_1));
+        bytes.put(data.array());
+        return write("array" + directory.toFile().list().length + ".npy", bytes);
+    }
+
+    private Path write(String name, ByteBuffer bytes) throws IOException {
+        Path file = directory.resolve(name);
+        Files.write(file, bytes.array());
+        return file;
+    }
+
+    /**
+     * @return values that use the high byte, so that a wrong byte order or sign is noticed
+     */
+    private static int unsigned16(int i) {
+        return (i * 1877 + 40000) & 0xFFFF;
+    }
+
+    private static float float32(int i) {
+        return i * 0.37f - 3;
+    }
+}
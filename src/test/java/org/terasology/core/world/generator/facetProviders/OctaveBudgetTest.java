@@ -0,0 +1,100 @@
+// Copyright 2020 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.core.world.generator.facetProviders;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.terasology.utilities.procedural.BrownianNoise;
+import org.terasology.utilities.procedural.Noise;
+import org.terasology.utilities.procedural.SimplexNoise;
+
+public class OctaveBudgetTest {
+
+    private static final int MAX_OCTAVES = 8;
+
+    @Test
+    public void testZeroEpsilonKeepsAllOctaves() {
+        for (float gain : new float[] {0.01f, 1f, 1000f}) {
+            Assert.assertEquals(MAX_OCTAVES, OctaveBudget.octaves(OctaveBudgetTest.class, MAX_OCTAVES, gain, 0));
+        }
+    }
+
+    @Test
+    public void testLargeEpsilonKeepsOneOctave() {
+        Assert.assertEquals(1, OctaveBudget.octaves(OctaveBudgetTest.class, MAX_OCTAVES, 1f, 1000f));
+        Assert.assertEquals(1, OctaveBudget.octaves(OctaveBudgetTest.class, 1, 1f, 0));
+    }
+
+    @Test
+    public void testOctavesShrinkAsEpsilonGrows() {
+        for (float gain : new float[] {0.5f, 1f, 20f, 500f}) {
+            int previous = MAX_OCTAVES;
+            for (float epsilon = 0; epsilon < 1000; epsilon = epsilon * 1.5f + 0.001f) {
+                int octaves = OctaveBudget.octaves(OctaveBudgetTest.class, MAX_OCTAVES, gain, epsilon);
+                Assert.assertTrue(gain + " @ " + epsilon, octaves <= previous);
+                Assert.assertTrue(octaves >= 1);
+                previous = octaves;
+            }
+        }
+    }
+
+    @Test
+    public void testOctavesGrowWithGain() {
+        int previous = 1;
+        for (float gain = 0.01f; gain < 10000; gain *= 2) {
+            int octaves = OctaveBudget.octaves(OctaveBudgetTest.class, MAX_OCTAVES, gain, 0.5f);
+            Assert.assertTrue(gain + "", octaves >= previous);
+            previous = octaves;
+        }
+        Assert.assertEquals(MAX_OCTAVES, previous);
+    }
+
+    @Test
+    public void testReportHoldsLastResult() {
+        int octaves = OctaveBudget.octaves(OctaveBudgetTest.class, MAX_OCTAVES, 1f, 0.05f);
+        Assert.assertEquals(Integer.valueOf(octaves), OctaveBudget.getReport().get(OctaveBudgetTest.class.getSimpleName()));
+    }
+
+    @Test
+    public void testTruncatedNoiseStaysWithinEpsilon() {
+        Noise source = new SimplexNoise(3);
+        Noise full = new BrownianNoise(source, MAX_OCTAVES);
+        for (float gain : new float[] {1f, 20f}) {
+            for (float epsilon : new float[] {0.01f, 0.05f, 0.2f, 1f}) {
+                int octaves = OctaveBudget.octaves(OctaveBudgetTest.class, MAX_OCTAVES, gain, epsilon);
+                Noise truncated = OctaveBudget.truncated(source, MAX_OCTAVES, octaves);
+                for (int y = 0; y < 64; y++) {
+                    for (int x = 0; x < 64; x++) {
+                        float change = gain * Math.abs(truncated.noise(x * 0.37f, y * 0.37f) - full.noise(x * 0.37f, y * 0.37f));
+                        Assert.assertTrue(octaves + " octaves changed " + change + " > " + epsilon, change <= epsilon + 1e-5f);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testBoundIsReachedByConstantNoise() {
+        // every octave at its maximum, so the octaves that are left out change the noise the most
+        Noise source = new Noise() {
+            @Override
+            public float noise(float x, float y) {
+                return 1;
+            }
+
+            @Override
+            public float noise(float x, float y, float z) {
+                return 1;
+            }
+        };
+        float full = new BrownianNoise(source, MAX_OCTAVES).noise(0, 0);
+        float epsilon = 0.02f;
+        int octaves = OctaveBudget.octaves(OctaveBudgetTest.class, MAX_OCTAVES, 1f, epsilon);
+        Assert.assertTrue(octaves < MAX_OCTAVES);
+        Assert.assertTrue(full - OctaveBudget.truncated(source, MAX_OCTAVES, octaves).noise(0, 0) < epsilon);
+        // one octave less would go over the epsilon
+        Assert.assertTrue(full - OctaveBudget.truncated(source, MAX_OCTAVES, octaves - 1).noise(0, 0) >= epsilon);
+        Assert.assertEquals(full, OctaveBudget.truncated(source, MAX_OCTAVES, MAX_OCTAVES).noise(0, 0), 0);
+    }
+}
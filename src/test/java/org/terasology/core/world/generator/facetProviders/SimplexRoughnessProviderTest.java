@@ -0,0 +1,104 @@
+// Copyright 2020 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.core.world.generator.facetProviders;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.terasology.core.world.generator.facets.SurfaceRoughnessFacet;
+import org.terasology.utilities.procedural.BrownianNoise;
+import org.terasology.utilities.procedural.Noise;
+import org.terasology.utilities.procedural.SimplexNoise;
+import org.terasology.world.block.BlockAreac;
+import org.terasology.world.block.BlockRegion;
+import org.terasology.world.generation.Border3D;
+import org.terasology.world.generation.GeneratingRegion;
+import org.terasology.world.generation.facets.ElevationFacet;
+import org.terasology.world.generation.facets.SeaLevelFacet;
+
+import java.util.Random;
+
+public class SimplexRoughnessProviderTest {
+
+    private static final long SEED = 42;
+    private static final int SEA_LEVEL = 32;
+
+    @Test
+    public void testRowsMatchPerPositionLookup() {
+        SimplexRoughnessProvider provider = new SimplexRoughnessProvider();
+        provider.setSeed(SEED);
+        Noise noise = new BrownianNoise(new SimplexNoise(SEED + 92658), 3);
+
+        // the elevation is wider than the roughness, so the rows of both arrays are offset differently
+        for (int roughnessBorder : new int[] {0, 3}) {
+            GeneratingRegion region = region(-40, 72, 6, roughnessBorder);
+            provider.process(region);
+
+            ElevationFacet elevation = region.getRegionFacet(ElevationFacet.class);
+            SurfaceRoughnessFacet roughness = roughness(region);
+            BlockAreac area = roughness.getWorldArea();
+            for (int z = area.minY(); z <= area.maxY(); z++) {
+                for (int x = area.minX(); x <= area.maxX(); x++) {
+                    float height = elevation.getWorld(x, z) - SEA_LEVEL;
+                    float expected = 0.25f + height * 0.007f + noise.noise(x / 500f, z / 500f) * 1.5f;
+                    Assert.assertEquals(x + ", " + z, expected, roughness.getWorld(x, z), 0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSubsamplingIsOptIn() {
+        SimplexRoughnessProvider exact = new SimplexRoughnessProvider();
+        exact.setSeed(SEED);
+        SimplexRoughnessProvider subsampled = new SimplexRoughnessProvider();
+        SimplexRoughnessProvider.Configuration configuration = new SimplexRoughnessProvider.Configuration();
+        configuration.subsampled = true;
+        subsampled.setConfiguration(configuration);
+        subsampled.setSeed(SEED);
+        Assert.assertFalse(((SimplexRoughnessProvider.Configuration) exact.getConfiguration()).subsampled);
+
+        GeneratingRegion exactRegion = region(16, -32, 2, 0);
+        GeneratingRegion subsampledRegion = region(16, -32, 2, 0);
+        exact.process(exactRegion);
+        subsampled.process(subsampledRegion);
+
+        float[] expected = roughness(exactRegion).getInternal();
+        float[] actual = roughness(subsampledRegion).getInternal();
+        boolean differs = false;
+        for (int i = 0; i < expected.length; i++) {
+            // the noise varies over hundreds of blocks, so interpolating between samples 4 blocks apart is close
+            Assert.assertEquals(expected[i], actual[i], 0.01f);
+            differs |= expected[i] != actual[i];
+        }
+        Assert.assertTrue(differs);
+    }
+
+    private static GeneratingRegion region(int minX, int minZ, int elevationBorder, int roughnessBorder) {
+        BlockRegion blocks = new BlockRegion(minX, 0, minZ, minX + 31, 63, minZ + 31);
+        SeaLevelFacet seaLevel = new SeaLevelFacet(blocks, new Border3D(0, 0, 0));
+        seaLevel.setSeaLevel(SEA_LEVEL);
+        ElevationFacet elevation = new ElevationFacet(blocks, new Border3D(0, 0, elevationBorder));
+        Random random = new Random(minX * 31 + minZ);
+        float[] heights = elevation.getInternal();
+        for (int i = 0; i < heights.length; i++) {
+            heights[i] = random.nextFloat() * 100;
+        }
+
+        GeneratingRegion region = Mockito.mock(GeneratingRegion.class);
+        Mockito.when(region.getRegion()).thenReturn(blocks);
+        Mockito.when(region.getBorderForFacet(SurfaceRoughnessFacet.class)).thenReturn(new Border3D(0, 0, roughnessBorder));
+        Mockito.when(region.getRegionFacet(SeaLevelFacet.class)).thenReturn(seaLevel);
+        Mockito.when(region.getRegionFacet(ElevationFacet.class)).thenReturn(elevation);
+        return region;
+    }
+
+    private static SurfaceRoughnessFacet roughness(GeneratingRegion region) {
+        ArgumentCaptor<SurfaceRoughnessFacet> facet = ArgumentCaptor.forClass(SurfaceRoughnessFacet.class);
+        Mockito.verify(region).setRegionFacet(ArgumentMatchers.eq(SurfaceRoughnessFacet.class), facet.capture());
+        return facet.getValue();
+    }
+}
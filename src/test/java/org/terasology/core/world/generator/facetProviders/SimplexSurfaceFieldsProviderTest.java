@@ -0,0 +1,107 @@
+// Copyright 2020 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.core.world.generator.facetProviders;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.terasology.world.block.BlockRegion;
+import org.terasology.world.generation.Border3D;
+import org.terasology.world.generation.GeneratingRegion;
+import org.terasology.world.generation.WorldFacet;
+import org.terasology.world.generation.facets.ElevationFacet;
+import org.terasology.world.generation.facets.SeaLevelFacet;
+import org.terasology.world.generation.facets.SurfaceHumidityFacet;
+import org.terasology.world.generation.facets.SurfaceTemperatureFacet;
+import org.terasology.world.generation.facets.base.BaseFieldFacet2D;
+
+public class SimplexSurfaceFieldsProviderTest {
+
+    private static final long SEED = 42;
+    private static final int SEA_LEVEL = 32;
+
+    @Test
+    public void testMatchesSeparateProviders() {
+        SimplexSurfaceFieldsProvider fused = new SimplexSurfaceFieldsProvider();
+        fused.setSeed(SEED);
+        SimplexBaseSurfaceProvider surface = new SimplexBaseSurfaceProvider();
+        surface.setSeed(SEED);
+        SimplexHumidityProvider humidity = new SimplexHumidityProvider();
+        humidity.setSeed(SEED);
+        SimplexSurfaceTemperatureProvider temperature = new SimplexSurfaceTemperatureProvider();
+        temperature.setSeed(SEED);
+
+        // the same column with different borders, so the cached fields of one must not be served for the other
+        int[][] borders = {{0, 0, 0}, {4, 0, 0}, {4, 2, 0}, {4, 2, 6}};
+        for (int[] border : borders) {
+            GeneratingRegion expected = region(border);
+            surface.process(expected);
+            humidity.process(expected);
+            temperature.process(expected);
+            GeneratingRegion actual = region(border);
+            fused.process(actual);
+
+            assertFacetEquals(facet(expected, ElevationFacet.class), facet(actual, ElevationFacet.class));
+            assertFacetEquals(facet(expected, SurfaceHumidityFacet.class), facet(actual, SurfaceHumidityFacet.class));
+            assertFacetEquals(facet(expected, SurfaceTemperatureFacet.class),
+                    facet(actual, SurfaceTemperatureFacet.class));
+        }
+    }
+
+    @Test
+    public void testTemperatureDropsOctavesByDefault() {
+        SimplexSurfaceFieldsProvider fused = new SimplexSurfaceFieldsProvider();
+        fused.setSeed(SEED);
+        Assert.assertEquals(Integer.valueOf(6), OctaveBudget.getReport().get(SimplexSurfaceFieldsProvider.class.getSimpleName()));
+
+        SimplexSurfaceTemperatureProvider allOctaves = new SimplexSurfaceTemperatureProvider();
+        SimplexSurfaceTemperatureProvider.Configuration config = new SimplexSurfaceTemperatureProvider.Configuration();
+        config.octaveEpsilon = 0;
+        allOctaves.setConfiguration(config);
+        allOctaves.setSeed(SEED);
+
+        int[] border = {0, 0, 0};
+        GeneratingRegion expected = region(border);
+        allOctaves.process(expected);
+        GeneratingRegion actual = region(border);
+        fused.process(actual);
+        float[] expectedValues = facet(expected, SurfaceTemperatureFacet.class).getInternal();
+        float[] actualValues = facet(actual, SurfaceTemperatureFacet.class).getInternal();
+        float epsilon = new SimplexSurfaceFieldsProvider.Configuration().temperatureOctaveEpsilon;
+        for (int i = 0; i < expectedValues.length; i++) {
+            Assert.assertEquals(expectedValues[i], actualValues[i], epsilon);
+        }
+    }
+
+    private static GeneratingRegion region(int[] border) {
+        BlockRegion blocks = new BlockRegion(-24, 0, 40, 7, 63, 71);
+        SeaLevelFacet seaLevel = new SeaLevelFacet(blocks, new Border3D(0, 0, 0));
+        seaLevel.setSeaLevel(SEA_LEVEL);
+        GeneratingRegion region = Mockito.mock(GeneratingRegion.class);
+        Mockito.when(region.getRegion()).thenReturn(blocks);
+        Mockito.when(region.getBorderForFacet(ElevationFacet.class)).thenReturn(new Border3D(0, 0, border[0]));
+        Mockito.when(region.getBorderForFacet(SurfaceHumidityFacet.class)).thenReturn(new Border3D(0, 0, border[1]));
+        Mockito.when(region.getBorderForFacet(SurfaceTemperatureFacet.class)).thenReturn(new Border3D(0, 0, border[2]));
+        Mockito.when(region.getRegionFacet(SeaLevelFacet.class)).thenReturn(seaLevel);
+        return region;
+    }
+
+    private static <T extends WorldFacet> T facet(GeneratingRegion region, Class<T> type) {
+        ArgumentCaptor<T> facet = ArgumentCaptor.forClass(type);
+        Mockito.verify(region).setRegionFacet(ArgumentMatchers.eq(type), facet.capture());
+        return facet.getValue();
+    }
+
+    private static void assertFacetEquals(BaseFieldFacet2D expected, BaseFieldFacet2D actual) {
+        Assert.assertEquals(expected.getWorldArea(), actual.getWorldArea());
+        float[] expectedValues = expected.getInternal();
+        float[] actualValues = actual.getInternal();
+        Assert.assertEquals(expectedValues.length, actualValues.length);
+        for (int i = 0; i < expectedValues.length; i++) {
+            Assert.assertEquals(expectedValues[i], actualValues[i], 0);
+        }
+    }
+}
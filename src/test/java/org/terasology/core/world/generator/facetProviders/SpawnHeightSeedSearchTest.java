@@ -0,0 +1,46 @@
+// Copyright 2020 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.core.world.generator.facetProviders;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.terasology.utilities.procedural.BrownianNoise;
+import org.terasology.utilities.procedural.SimplexNoise;
+import org.terasology.utilities.procedural.SubSampledNoise;
+
+public class SpawnHeightSeedSearchTest {
+
+    @Test
+    public void testFindsSameSeedsAsSubSampledSearch() {
+        // even, odd, negative and large world seeds
+        long[] seeds = {0, 1, 2, 42, 1337, -5, -1000, 123456789012L, Long.MAX_VALUE / 7};
+        for (long seed : seeds) {
+            Assert.assertEquals("world seed " + seed, subSampledSearch(seed), SpawnHeightSeedSearch.find(seed));
+        }
+    }
+
+    @Test
+    public void testSpawnIsJustAboveSeaLevel() {
+        for (long seed = 100; seed < 110; seed++) {
+            float spawnHeight = SpawnHeightSeedSearch.createSource(SpawnHeightSeedSearch.find(seed)).noise(0, 0);
+            Assert.assertTrue(spawnHeight >= 0 && spawnHeight <= 0.2);
+        }
+    }
+
+    /**
+     * The search as the surface providers did it before, through the subsampled noise at the spawn point.
+     */
+    private static long subSampledSearch(long seed) {
+        float spawnHeight = -1;
+        long currentSeed = (seed % 2 == 0) ? seed - 1 : seed;
+        long found = currentSeed;
+        while (spawnHeight < 0 || spawnHeight > 0.2) {
+            BrownianNoise source = new BrownianNoise(new SimplexNoise(currentSeed), 8);
+            spawnHeight = new SubSampledNoise(source, SimplexBaseSurfaceProvider.ZOOM, 4).noise(0, 0);
+            found = currentSeed;
+            currentSeed *= 3;
+        }
+        return found;
+    }
+}
@@ -0,0 +1,104 @@
+// Copyright 2020 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.core.world.generator.facetProviders;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.terasology.world.block.BlockRegion;
+import org.terasology.world.generation.Border3D;
+import org.terasology.world.generation.GeneratingRegion;
+import org.terasology.world.generation.WorldFacet;
+import org.terasology.world.generation.facets.SeaLevelFacet;
+import org.terasology.world.generation.facets.SurfaceHumidityFacet;
+import org.terasology.world.generation.facets.SurfaceTemperatureFacet;
+
+public class TiledClimateProviderTest {
+
+    private static final int SEA_LEVEL = 32;
+
+    /**
+     * Dry land with a lake of 256 blocks around the origin
+     */
+    private static final TiledClimateProvider.TerrainFactory LAKE = (seed, seaLevel) ->
+            (x, z) -> Math.abs(x) < 128 && Math.abs(z) < 128 ? 0 : seaLevel + 10;
+
+    @Test
+    public void testNeighbouringRegionsAgree() {
+        TiledClimateProvider provider = new TiledClimateProvider(LAKE);
+        provider.setSeed(1);
+
+        // the second region overlaps the first and crosses a seam between climate tiles
+        int tileWidth = 64 * TiledClimateProvider.CELL_SIZE;
+        GeneratingRegion first = region(tileWidth - 40, -20, 48, 48);
+        Mockito.when(first.getBorderForFacet(SurfaceHumidityFacet.class)).thenReturn(new Border3D(0, 0, 4));
+        GeneratingRegion second = region(tileWidth - 16, -8, 48, 48);
+        provider.process(first);
+        provider.process(second);
+
+        SurfaceTemperatureFacet firstTemperature = facet(first, SurfaceTemperatureFacet.class);
+        SurfaceTemperatureFacet secondTemperature = facet(second, SurfaceTemperatureFacet.class);
+        SurfaceHumidityFacet firstHumidity = facet(first, SurfaceHumidityFacet.class);
+        SurfaceHumidityFacet secondHumidity = facet(second, SurfaceHumidityFacet.class);
+        for (int z = -8; z < 28; z++) {
+            for (int x = tileWidth - 16; x < tileWidth + 8; x++) {
+                Assert.assertEquals(firstTemperature.getWorld(x, z), secondTemperature.getWorld(x, z), 0);
+                Assert.assertEquals(firstHumidity.getWorld(x, z), secondHumidity.getWorld(x, z), 0);
+            }
+        }
+    }
+
+    @Test
+    public void testHumidityFollowsWater() {
+        TiledClimateProvider provider = new TiledClimateProvider(LAKE);
+        provider.setSeed(1);
+
+        GeneratingRegion lake = region(-16, -16, 32, 32);
+        GeneratingRegion shore = region(192, -16, 32, 32);
+        GeneratingRegion inland = region(4096, -16, 32, 32);
+        provider.process(lake);
+        provider.process(shore);
+        provider.process(inland);
+
+        float lakeHumidity = facet(lake, SurfaceHumidityFacet.class).getWorld(0, 0);
+        float shoreHumidity = facet(shore, SurfaceHumidityFacet.class).getWorld(192, 0);
+        float inlandHumidity = facet(inland, SurfaceHumidityFacet.class).getWorld(4096, 0);
+        Assert.assertEquals(1, lakeHumidity, 0);
+        Assert.assertTrue(shoreHumidity < lakeHumidity && shoreHumidity > inlandHumidity);
+        Assert.assertEquals(0, inlandHumidity, 0);
+    }
+
+    @Test
+    public void testSeedSelectsTerrain() {
+        TiledClimateProvider provider = new TiledClimateProvider((seed, seaLevel) -> (x, z) -> seed == 1 ? 0 : seaLevel + 10);
+        provider.setSeed(1);
+        GeneratingRegion wet = region(0, 0, 16, 16);
+        provider.process(wet);
+        provider.setSeed(2);
+        GeneratingRegion dry = region(0, 0, 16, 16);
+        provider.process(dry);
+
+        Assert.assertEquals(1, facet(wet, SurfaceHumidityFacet.class).getWorld(8, 8), 0);
+        Assert.assertEquals(0, facet(dry, SurfaceHumidityFacet.class).getWorld(8, 8), 0);
+    }
+
+    private static GeneratingRegion region(int minX, int minZ, int sizeX, int sizeZ) {
+        BlockRegion blocks = new BlockRegion(minX, 0, minZ, minX + sizeX - 1, 63, minZ + sizeZ - 1);
+        SeaLevelFacet seaLevel = new SeaLevelFacet(blocks, new Border3D(0, 0, 0));
+        seaLevel.setSeaLevel(SEA_LEVEL);
+        GeneratingRegion region = Mockito.mock(GeneratingRegion.class);
+        Mockito.when(region.getRegion()).thenReturn(blocks);
+        Mockito.when(region.getBorderForFacet(ArgumentMatchers.any())).thenReturn(new Border3D(0, 0, 0));
+        Mockito.when(region.getRegionFacet(SeaLevelFacet.class)).thenReturn(seaLevel);
+        return region;
+    }
+
+    private static <T extends WorldFacet> T facet(GeneratingRegion region, Class<T> type) {
+        ArgumentCaptor<T> facet = ArgumentCaptor.forClass(type);
+        Mockito.verify(region).setRegionFacet(ArgumentMatchers.eq(type), facet.capture());
+        return facet.getValue();
+    }
+}
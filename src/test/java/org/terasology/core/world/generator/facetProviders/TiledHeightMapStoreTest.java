@@ -0,0 +1,148 @@
+// Copyright 2020 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.core.world.generator.facetProviders;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+public class TiledHeightMapStoreTest {
+
+    private static final int WIDTH = 20;
+    private static final int HEIGHT = 13;
+    private static final int TILE_SIZE = 8;
+
+    private Path directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("heightmaps");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testReadsGreyImageLikeTexture() throws IOException {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_BYTE_GRAY);
+        Random random = new Random(5);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                image.getRaster().setSample(x, y, 0, random.nextInt(256));
+            }
+        }
+        TiledHeightMapStore store = open(write("grey.png", image), 100);
+
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int grey = image.getRaster().getSample(x, y, 0);
+                Assert.assertEquals(texture(grey, grey, grey, 255), store.get(x, y), 0);
+            }
+        }
+    }
+
+    @Test
+    public void testReadsColourImageLikeTexture() throws IOException {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        Random random = new Random(7);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+        TiledHeightMapStore store = open(write("colour.png", image), 100);
+
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int argb = image.getRGB(x, y);
+                float expected = texture(argb >> 16 & 0xFF, argb >> 8 & 0xFF, argb & 0xFF, argb >>> 24);
+                Assert.assertEquals(expected, store.get(x, y), 0);
+            }
+        }
+    }
+
+    @Test
+    public void testDecodesOnlyTilesThatAreRead() throws IOException {
+        TiledHeightMapStore store = open(write("grey.png", new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_BYTE_GRAY)), 100);
+        Assert.assertEquals(WIDTH, store.getWidth());
+        Assert.assertEquals(HEIGHT, store.getHeight());
+        Assert.assertEquals(0, store.getResidentTiles());
+
+        store.get(3, 2);
+        store.get(7, 7);
+        Assert.assertEquals(1, store.getResidentTiles());
+        Assert.assertEquals(1, store.getStats().missCount());
+
+        // the last tile at the edge of the image is smaller
+        store.get(WIDTH - 1, HEIGHT - 1);
+        store.get(3, 2);
+        Assert.assertEquals(2, store.getResidentTiles());
+        Assert.assertEquals(2, store.getStats().missCount());
+        Assert.assertEquals(1, store.getStats().hitCount());
+    }
+
+    @Test
+    public void testMemoryIsBounded() throws IOException {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_BYTE_GRAY);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                image.getRaster().setSample(x, y, 0, (x * 7 + y * 11) & 0xFF);
+            }
+        }
+        TiledHeightMapStore store = open(write("grey.png", image), 2);
+
+        // every tile twice, so the evicted ones are decoded again
+        for (int pass = 0; pass < 2; pass++) {
+            for (int y = 0; y < HEIGHT; y += TILE_SIZE) {
+                for (int x = 0; x < WIDTH; x += TILE_SIZE) {
+                    int grey = image.getRaster().getSample(x, y, 0);
+                    Assert.assertEquals(texture(grey, grey, grey, 255), store.get(x, y), 0);
+                }
+            }
+        }
+        Assert.assertTrue(store.getResidentTiles() <= 2);
+        Assert.assertEquals(12, store.getStats().missCount());
+        Assert.assertEquals(10, store.getStats().evictionCount());
+    }
+
+    @Test(expected = IOException.class)
+    public void testRejectsOtherFiles() throws IOException {
+        Path file = directory.resolve("plain.png");
+        Files.write(file, new byte[64]);
+        ImageTileLoader.open(file);
+    }
+
+    private static TiledHeightMapStore open(Path file, int maxTiles) throws IOException {
+        ImageTileLoader loader = ImageTileLoader.open(file);
+        return new TiledHeightMapStore(loader.getWidth(), loader.getHeight(), TILE_SIZE, maxTiles, loader);
+    }
+
+    private Path write(String name, BufferedImage image) throws IOException {
+        Path file = directory.resolve(name);
+        ImageIO.write(image, "png", file.toFile());
+        return file;
+    }
+
+    /**
+     * @return the height a texture heightmap reads from the pixel
+     */
+    private static float texture(int red, int green, int blue, int alpha) {
+        long value = (long) red << 24 | green << 16 | blue << 8 | alpha;
+        return value / (256 * 256 * 256 * 256f);
+    }
+}
@@ -0,0 +1,91 @@
+// Copyright 2020 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.core.world.generator.facetProviders;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.terasology.core.world.generator.FloatGrid;
+import org.terasology.core.world.generator.facetProviders.HeightMapSurfaceHeightProvider.InterpolationMode;
+import org.terasology.core.world.generator.facetProviders.HeightMapSurfaceHeightProvider.WrapMode;
+
+import java.util.Random;
+
+public class UpsampledTileCacheTest {
+
+    private static final long MAX_BYTES = 1 << 20;
+
+    private final HeightMapStore map = randomMap(new Random(3));
+
+    @Test
+    public void testFillMatchesInterpolation() {
+        UpsampledTileCache cache = new UpsampledTileCache(MAX_BYTES);
+        // within one tile, and across the seams of several tiles at negative coordinates
+        assertFilled(cache, map, WrapMode.REPEAT, InterpolationMode.BILINEAR_FADE, 4, 12, 3, 40, 30);
+        assertFilled(cache, map, WrapMode.REPEAT, InterpolationMode.BILINEAR_FADE, 4, -80, -20, 100, 90);
+        long misses = cache.getStats().missCount();
+
+        // tiles that are all cached by now
+        assertFilled(cache, map, WrapMode.REPEAT, InterpolationMode.BILINEAR_FADE, 4, -70, -10, 60, 40);
+        Assert.assertEquals(misses, cache.getStats().missCount());
+    }
+
+    @Test
+    public void testChangedSettingsAreNotServedFromCache() {
+        UpsampledTileCache cache = new UpsampledTileCache(MAX_BYTES);
+        assertFilled(cache, map, WrapMode.CLAMP, InterpolationMode.BILINEAR_FADE, 4, 0, 0, 32, 32);
+        long misses = cache.getStats().missCount();
+
+        // every setting that changes the heights leads to other tiles
+        assertFilled(cache, map, WrapMode.REPEAT, InterpolationMode.BILINEAR_FADE, 4, 0, 0, 32, 32);
+        assertFilled(cache, map, WrapMode.REPEAT, InterpolationMode.BICUBIC, 4, 0, 0, 32, 32);
+        assertFilled(cache, map, WrapMode.REPEAT, InterpolationMode.BICUBIC, 2, 0, 0, 32, 32);
+        float[] offset = new float[32 * 32];
+        cache.fill(map, WrapMode.REPEAT, InterpolationMode.BICUBIC, 2, 20, 70, 0, 0, 32, 32, offset);
+        float[] scaled = new float[32 * 32];
+        cache.fill(map, WrapMode.REPEAT, InterpolationMode.BICUBIC, 2, 20, 90, 0, 0, 32, 32, scaled);
+        assertFilled(cache, randomMap(new Random(4)), WrapMode.REPEAT, InterpolationMode.BICUBIC, 2, 0, 0, 32, 32);
+        Assert.assertEquals(misses + 6, cache.getStats().missCount());
+
+        float[] expected = new float[32 * 32];
+        HeightMapSurfaceHeightProvider.interpolate(map, WrapMode.REPEAT, InterpolationMode.BICUBIC, 2, 20, 90, 0, 0, 32, 32, expected);
+        Assert.assertArrayEquals(expected, scaled, 0);
+    }
+
+    @Test
+    public void testInvalidateAllDropsTiles() {
+        UpsampledTileCache cache = new UpsampledTileCache(MAX_BYTES);
+        assertFilled(cache, map, WrapMode.REPEAT, InterpolationMode.BILINEAR_FADE, 4, 0, 0, 32, 32);
+        cache.invalidateAll();
+        assertFilled(cache, map, WrapMode.REPEAT, InterpolationMode.BILINEAR_FADE, 4, 0, 0, 32, 32);
+        Assert.assertEquals(0, cache.getStats().hitCount());
+        Assert.assertEquals(2, cache.getStats().missCount());
+    }
+
+    @Test
+    public void testMemoryIsBounded() {
+        int tileBytes = UpsampledTileCache.TILE_SIZE * UpsampledTileCache.TILE_SIZE * Float.BYTES;
+        UpsampledTileCache cache = new UpsampledTileCache(4L * tileBytes);
+        for (int tile = 0; tile < 16; tile++) {
+            assertFilled(cache, map, WrapMode.REPEAT, InterpolationMode.BILINEAR_FADE, 4, tile * UpsampledTileCache.TILE_SIZE, 0, 8, 8);
+        }
+        Assert.assertTrue(cache.getStats().evictionCount() >= 12);
+    }
+
+    private static void assertFilled(UpsampledTileCache cache, HeightMapStore map, WrapMode wrapMode, InterpolationMode mode,
+                                     int xzScale, int minX, int minZ, int sizeX, int sizeZ) {
+        float[] expected = new float[sizeX * sizeZ];
+        HeightMapSurfaceHeightProvider.interpolate(map, wrapMode, mode, xzScale, 12, 70, minX, minZ, sizeX, sizeZ, expected);
+        float[] actual = new float[sizeX * sizeZ];
+        cache.fill(map, wrapMode, mode, xzScale, 12, 70, minX, minZ, sizeX, sizeZ, actual);
+        Assert.assertArrayEquals(expected, actual, 0);
+    }
+
+    private static HeightMapStore randomMap(Random random) {
+        FloatGrid grid = FloatGrid.onHeap(24, 24);
+        for (int i = 0; i < grid.size(); i++) {
+            grid.set(i, random.nextFloat());
+        }
+        return HeightMapStore.of(grid);
+    }
+}
@@ -0,0 +1,107 @@
+// Copyright 2020 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.utilities.procedural;
+
+import org.joml.Vector2f;
+import org.joml.Vector2fc;
+import org.junit.Assert;
+import org.junit.Test;
+import org.terasology.world.block.BlockArea;
+import org.terasology.world.block.BlockAreac;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class FusedSubSampledNoiseTest {
+
+    private static final int SAMPLE_RATE = 4;
+    private static final BlockAreac AREA = new BlockArea(-13, 6, 22, 33);
+
+    @Test
+    public void testMaskedMatchesUnmaskedWhereSet() {
+        Noise[] sources = {new SimplexNoise(1), new SimplexNoise(2)};
+        Vector2fc[] zooms = {new Vector2f(0.01f, 0.02f), new Vector2f(0.03f, 0.01f)};
+        FusedSubSampledNoise noise = new FusedSubSampledNoise(sources, zooms, SAMPLE_RATE);
+        float[][] unmasked = noise.noise(AREA, AREA);
+
+        Random random = new Random(3);
+        for (float density : new float[] {0, 0.05f, 0.5f, 1}) {
+            boolean[] mask = new boolean[AREA.getSizeX() * AREA.getSizeY()];
+            for (int i = 0; i < mask.length; i++) {
+                mask[i] = random.nextFloat() < density;
+            }
+            for (int field = 0; field < sources.length; field++) {
+                float[] masked = noise.noise(field, AREA, mask);
+                for (int i = 0; i < mask.length; i++) {
+                    Assert.assertEquals(mask[i] ? unmasked[field][i] : 0, masked[i], 0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testMaskedSamplesOnlyNeededCells() {
+        CountingNoise source = new CountingNoise(new SimplexNoise(4));
+        FusedSubSampledNoise noise = new FusedSubSampledNoise(source, new Vector2f(0.01f, 0.01f), SAMPLE_RATE, null);
+        noise.noise(AREA);
+        int unmaskedSamples = source.count;
+
+        // a single block needs the four corners of its cell
+        source.count = 0;
+        boolean[] mask = new boolean[AREA.getSizeX() * AREA.getSizeY()];
+        mask[5 * AREA.getSizeX() + 7] = true;
+        noise.noise(0, AREA, mask);
+        Assert.assertEquals(4, source.count);
+
+        source.count = 0;
+        noise.noise(0, AREA, new boolean[mask.length]);
+        Assert.assertEquals(0, source.count);
+
+        // with every block set, no corner is sampled twice
+        source.count = 0;
+        Arrays.fill(mask, true);
+        noise.noise(0, AREA, mask);
+        Assert.assertTrue(source.count <= unmaskedSamples);
+    }
+
+    @Test
+    public void testMaskedUsesCache() {
+        LatticeSampleCache cache = new LatticeSampleCache(1 << 12);
+        FusedSubSampledNoise cached = new FusedSubSampledNoise(new SimplexNoise(5), new Vector2f(0.01f, 0.01f), SAMPLE_RATE, cache);
+        FusedSubSampledNoise uncached = new FusedSubSampledNoise(new SimplexNoise(5), new Vector2f(0.01f, 0.01f), SAMPLE_RATE, null);
+        boolean[] mask = new boolean[AREA.getSizeX() * AREA.getSizeY()];
+        for (int i = 0; i < mask.length; i += 3) {
+            mask[i] = true;
+        }
+        float[] first = cached.noise(0, AREA, mask);
+        long hits = cache.getHitCount();
+        float[] second = cached.noise(0, AREA, mask);
+        Assert.assertArrayEquals(uncached.noise(0, AREA, mask), first, 0);
+        Assert.assertArrayEquals(first, second, 0);
+        Assert.assertTrue(cache.getHitCount() > hits);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsMaskOfOtherSize() {
+        new FusedSubSampledNoise(new SimplexNoise(6), new Vector2f(0.01f, 0.01f), SAMPLE_RATE, null).noise(0, AREA, new boolean[10]);
+    }
+
+    /**
+     * Counts the points the noise is evaluated at.
+     */
+    private static final class CountingNoise extends AbstractNoise {
+        private final Noise source;
+        private int count;
+
+        CountingNoise(Noise source) {
+            this.source = source;
+        }
+
+        @Override
+        public float noise(float x, float y, float z) {
+            count++;
+            return source.noise(x, y, z);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+// Copyright 2020 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.utilities.procedural;
+
+import org.joml.Vector2f;
+import org.joml.Vector2fc;
+import org.junit.Assert;
+import org.junit.Test;
+import org.terasology.world.block.BlockArea;
+import org.terasology.world.block.BlockAreac;
+
+public class LatticeSampleCacheTest {
+
+    @Test
+    public void testSamplesAreKeyedByNoise() {
+        // a single slot, so every key shares it
+        LatticeSampleCache cache = new LatticeSampleCache(1);
+        int first = LatticeSampleCache.newNoiseId();
+        int second = LatticeSampleCache.newNoiseId();
+        Assert.assertNotEquals(first, second);
+
+        cache.put(first, 3, -7, 0.5f);
+        Assert.assertEquals(0.5f, cache.get(first, 3, -7), 0);
+        Assert.assertTrue(Float.isNaN(cache.get(second, 3, -7)));
+        Assert.assertTrue(Float.isNaN(cache.get(first, -7, 3)));
+
+        // the newer sample replaces the older one
+        cache.put(second, 3, -7, 0.25f);
+        Assert.assertTrue(Float.isNaN(cache.get(first, 3, -7)));
+        Assert.assertEquals(0.25f, cache.get(second, 3, -7), 0);
+        Assert.assertEquals(2, cache.getHitCount());
+        Assert.assertEquals(3, cache.getMissCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsCapacityThatIsNoPowerOfTwo() {
+        new LatticeSampleCache(12);
+    }
+
+    @Test
+    public void testSharedCacheKeepsNoisesApart() {
+        // fewer slots than samples, so the samples of both noises replace each other
+        LatticeSampleCache cache = new LatticeSampleCache(128);
+        Noise[] sources = {new SimplexNoise(1), new SimplexNoise(2)};
+        Vector2fc[] zooms = {new Vector2f(0.01f, 0.01f), new Vector2f(0.01f, 0.01f)};
+        FusedSubSampledNoise uncached = new FusedSubSampledNoise(sources, zooms, 4);
+        // the same sources and zooms, as two noises that share the cache
+        FusedSubSampledNoise first = new FusedSubSampledNoise(sources[0], zooms[0], 4, cache);
+        FusedSubSampledNoise second = new FusedSubSampledNoise(sources[1], zooms[1], 4, cache);
+
+        BlockAreac area = new BlockArea(-10, 6, 21, 37);
+        BlockAreac overlapping = new BlockArea(-2, 14, 29, 45);
+        float[][] expected = uncached.noise(area, area);
+        float[][] expectedOverlapping = uncached.noise(overlapping, overlapping);
+        for (int pass = 0; pass < 2; pass++) {
+            Assert.assertArrayEquals(expected[0], first.noise(area)[0], 0);
+            Assert.assertArrayEquals(expected[1], second.noise(area)[0], 0);
+            Assert.assertArrayEquals(expectedOverlapping[0], first.noise(overlapping)[0], 0);
+            Assert.assertArrayEquals(expectedOverlapping[1], second.noise(overlapping)[0], 0);
+        }
+        Assert.assertTrue(cache.getHitCount() > 0);
+    }
+}